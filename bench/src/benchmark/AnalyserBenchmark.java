@@ -0,0 +1,82 @@
+package benchmark;
+
+import analyser.SpectrumAnalyser;
+import detector.SpikeFeatureDetector;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@link SpectrumAnalyser#samples(float[], float[])}, the whole
+ * analysis path from the sample blocks to the published frames.
+ * <p>
+ * Each operation passes one block of samples to the analyser, the synthetic
+ * signal is repeated endlessly. With 44.1 kHz and 200 analysis steps per second,
+ * a block of 1024 samples results in about 4.6 frames.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyserBenchmark
+{
+    /**
+     * Number of samples per block.
+     */
+    @Param({"256", "1024", "4096"})
+    public int blockSize;
+
+    /**
+     * Number of spike feature detectors.
+     */
+    @Param({"0", "3"})
+    public int detectors;
+
+    @Setup
+    public void setup()
+    {
+        Logger.getLogger(SpectrumAnalyser.class.getName()).setLevel(Level.WARNING);
+
+        analyser = new SpectrumAnalyser(200, 2048);
+        if ( detectors > 0 )
+        {
+            analyser.registerFeatureDetector(new SpikeFeatureDetector("Bass",  0, 50, 100, 10, 50));
+            analyser.registerFeatureDetector(new SpikeFeatureDetector("Snare", 1, 2000, 7000, 15, 100));
+            analyser.registerFeatureDetector(new SpikeFeatureDetector("Cymbal", 2, 7000, 10000, 20, 100));
+        }
+        analyser.attachToStream(SyntheticAudio.SAMPLE_RATE, blockSize, -1);
+
+        // ten seconds of audio
+        left   = SyntheticAudio.blocks(SyntheticAudio.create((int) (SyntheticAudio.SAMPLE_RATE * 10), 1), blockSize);
+        right  = SyntheticAudio.blocks(SyntheticAudio.create((int) (SyntheticAudio.SAMPLE_RATE * 10), 2), blockSize);
+        blockIdx = 0;
+    }
+
+    @Benchmark
+    public long samples()
+    {
+        analyser.samples(left[blockIdx], right[blockIdx]);
+        blockIdx = (blockIdx + 1) % left.length;
+        return analyser.getFrameCount();
+    }
+
+    private SpectrumAnalyser analyser;
+    private float[][]        left, right;
+    private int              blockIdx;
+}
@@ -0,0 +1,85 @@
+package benchmark;
+
+import analyser.Channel;
+import analyser.FFTEngine;
+import analyser.MaxFFT;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the FFT engines and of {@link MaxFFT#calcAvg(float, float)}
+ * with the settings of the analyser (2048 samples, 8 bands per octave).
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FFTBenchmark
+{
+    /**
+     * FFT engine (see {@link FFTEngine.Type}).
+     */
+    @Param({"MINIM", "NATIVE"})
+    public String engine;
+
+    /**
+     * Analysed channels: <code>LEFT</code> or <code>ALL</code>.
+     */
+    @Param({"LEFT", "ALL"})
+    public String channels;
+
+    @Setup
+    public void setup()
+    {
+        fft = FFTEngine.Type.valueOf(engine).create(TIME_SIZE, SyntheticAudio.SAMPLE_RATE, 100, 8);
+        channelSet = channels.equals("ALL") ? EnumSet.allOf(Channel.class) : EnumSet.of(Channel.LEFT);
+        sourceL = SyntheticAudio.create(TIME_SIZE, 1);
+        sourceR = SyntheticAudio.create(TIME_SIZE, 2);
+        left    = new float[TIME_SIZE];
+        right   = new float[TIME_SIZE];
+
+        maxFft = new MaxFFT(TIME_SIZE, SyntheticAudio.SAMPLE_RATE);
+        maxFft.logAverages(100, 8);
+        maxFft.forward(sourceL.clone(), sourceR.clone(), EnumSet.of(Channel.LEFT));
+    }
+
+    @Benchmark
+    public float forward()
+    {
+        // the engines may modify the buffers (window)
+        System.arraycopy(sourceL, 0, left,  0, TIME_SIZE);
+        System.arraycopy(sourceR, 0, right, 0, TIME_SIZE);
+        fft.forward(left, right, channelSet);
+        return fft.getSpectrum(Channel.LEFT)[1];
+    }
+
+    @Benchmark
+    public float calcAvg()
+    {
+        return maxFft.calcAvg(50, 10000);
+    }
+
+    private static final int TIME_SIZE = 2048;
+
+    private FFTEngine    fft;
+    private MaxFFT       maxFft;
+    private Set<Channel> channelSet;
+    private float[]      sourceL, sourceR, left, right;
+}
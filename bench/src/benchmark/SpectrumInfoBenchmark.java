@@ -0,0 +1,84 @@
+package benchmark;
+
+import analyser.SpectrumAnalyser;
+import analyser.SpectrumInfo;
+import analyser.SpectrumShaper;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@link SpectrumInfo#copySpectrumData(int, float, SpectrumAnalyser)},
+ * the shaping and copying of the FFT results into a frame, for each spectrum shaper.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpectrumInfoBenchmark
+{
+    /**
+     * Spectrum shaper: <code>LINEAR</code>, <code>SQUARE_ROOT</code> or <code>LOGARITHMIC</code>.
+     */
+    @Param({"LINEAR", "SQUARE_ROOT", "LOGARITHMIC"})
+    public String shaper;
+
+    /**
+     * <code>true</code> to shape the raw spectrum only when it is read.
+     */
+    @Param({"false", "true"})
+    public boolean onDemand;
+
+    @Setup
+    public void setup()
+    {
+        Logger.getLogger(SpectrumAnalyser.class.getName()).setLevel(Level.WARNING);
+
+        analyser = new SpectrumAnalyser(200, 16);
+        analyser.attachToStream(SyntheticAudio.SAMPLE_RATE, 4096, -1);
+        analyser.setSpectrumShaper(shaperFor(shaper));
+        analyser.setRawSpectrumShapedOnDemand(onDemand);
+        // analyse a few frames, so the FFT engine has results
+        float[] samples = SyntheticAudio.create(4096, 1);
+        analyser.samples(samples, samples);
+
+        info = new SpectrumInfo();
+    }
+
+    private static SpectrumShaper shaperFor(String name)
+    {
+        switch ( name )
+        {
+            case "LINEAR"      : return SpectrumShaper.LINEAR;
+            case "SQUARE_ROOT" : return SpectrumShaper.SQUARE_ROOT;
+            case "LOGARITHMIC" : return SpectrumShaper.LOGARITHMIC;
+            default            : throw new IllegalArgumentException("Unknown spectrum shaper " + name);
+        }
+    }
+
+    @Benchmark
+    public float copySpectrumData()
+    {
+        info.copySpectrumData(0, 0, analyser);
+        return info.getIntensity(0);
+    }
+
+    private SpectrumAnalyser analyser;
+    private SpectrumInfo     info;
+}
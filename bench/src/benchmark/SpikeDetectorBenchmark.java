@@ -0,0 +1,103 @@
+package benchmark;
+
+import analyser.SpectrumAnalyser;
+import detector.SpikeFeatureDetector;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of {@link SpikeFeatureDetector#detectFeature(SpectrumAnalyser)}.
+ * <p>
+ * <code>perFrame</code> runs the detector once for every new frame, as in the analysis,
+ * so it measures the incremental update. The new frame is analysed before each call
+ * (invocation level setup, which is not part of the measured time, but adds
+ * some timing overhead to the short calls).
+ * <code>sameFrame</code> runs the detector repeatedly on the same frame, so it has to
+ * fill its windows from the history every time, the cost after missed frames.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpikeDetectorBenchmark
+{
+    /**
+     * Analyser with a history beyond the windows of the detector.
+     */
+    @State(Scope.Thread)
+    public static class DetectorState
+    {
+        @Setup(Level.Trial)
+        public void setup()
+        {
+            Logger.getLogger(SpectrumAnalyser.class.getName()).setLevel(java.util.logging.Level.WARNING);
+
+            analyser = new SpectrumAnalyser(200, 2048);
+            analyser.attachToStream(SyntheticAudio.SAMPLE_RATE, STEP, -1);
+            detector = new SpikeFeatureDetector("Snare", 1, 2000, 7000, 15, 100);
+            blocks   = SyntheticAudio.blocks(SyntheticAudio.create((int) (SyntheticAudio.SAMPLE_RATE * 10), 1), STEP);
+            blockIdx = 0;
+            for ( int i = 0 ; i < 200 ; i++ )
+            {
+                analyseFrame();
+            }
+        }
+
+        /**
+         * Analyses the next frame (one block per analysis step).
+         */
+        void analyseFrame()
+        {
+            analyser.samples(blocks[blockIdx], blocks[blockIdx]);
+            blockIdx = (blockIdx + 1) % blocks.length;
+        }
+
+        SpectrumAnalyser     analyser;
+        SpikeFeatureDetector detector;
+        private float[][]    blocks;
+        private int          blockIdx;
+    }
+
+    /**
+     * Analyser that moves on by one frame before each call.
+     */
+    @State(Scope.Thread)
+    public static class PerFrameState extends DetectorState
+    {
+        @Setup(Level.Invocation)
+        public void nextFrame()
+        {
+            analyseFrame();
+        }
+    }
+
+    @Benchmark
+    public boolean perFrame(PerFrameState state)
+    {
+        return state.detector.detectFeature(state.analyser);
+    }
+
+    @Benchmark
+    public boolean sameFrame(DetectorState state)
+    {
+        return state.detector.detectFeature(state.analyser);
+    }
+
+    // samples per analysis step with 200 steps per second
+    private static final int STEP = (int) (SyntheticAudio.SAMPLE_RATE / 200);
+}
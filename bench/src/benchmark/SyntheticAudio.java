@@ -0,0 +1,67 @@
+package benchmark;
+
+import java.util.Random;
+
+/**
+ * Synthetic audio signals for the benchmarks.
+ * <p>
+ * The signal is a mix of a few sine waves with a short noise burst on every beat,
+ * so the spectrum has stable peaks as well as onsets for the feature detectors.
+ * The random generator has a fixed seed, so every run gets the same samples.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public class SyntheticAudio
+{
+    /**
+     * Sample rate of the synthetic signals.
+     */
+    public static final float SAMPLE_RATE = 44100;
+
+    /**
+     * Creates the samples of a synthetic signal.
+     *
+     * @param length  the number of samples
+     * @param seed    the seed of the noise generator
+     * @return the samples (-1...1)
+     */
+    public static float[] create(int length, long seed)
+    {
+        Random  random  = new Random(seed);
+        float[] samples = new float[length];
+        int     beat    = (int) (SAMPLE_RATE * 60 / 120); // 120 BPM
+        for ( int i = 0 ; i < length ; i++ )
+        {
+            double t = i / SAMPLE_RATE;
+            double s = 0.3 * Math.sin(2 * Math.PI *   55 * t) +
+                       0.2 * Math.sin(2 * Math.PI *  440 * t) +
+                       0.1 * Math.sin(2 * Math.PI * 3520 * t);
+            int sinceBeat = i % beat;
+            if ( sinceBeat < beat / 8 )
+            {
+                s += 0.4 * (random.nextFloat() * 2 - 1) * (1 - 8.0 * sinceBeat / beat);
+            }
+            samples[i] = (float) s;
+        }
+        return samples;
+    }
+
+    /**
+     * Splits samples into blocks of a fixed size.
+     * The last incomplete block is dropped.
+     *
+     * @param samples    the samples
+     * @param blockSize  the number of samples per block
+     * @return the blocks
+     */
+    public static float[][] blocks(float[] samples, int blockSize)
+    {
+        float[][] blocks = new float[samples.length / blockSize][blockSize];
+        for ( int b = 0 ; b < blocks.length ; b++ )
+        {
+            System.arraycopy(samples, b * blockSize, blocks[b], 0, blockSize);
+        }
+        return blocks;
+    }
+}
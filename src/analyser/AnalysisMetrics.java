@@ -0,0 +1,200 @@
+package analyser;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Run time metrics of the analysis thread of a spectrum analyser.
+ * <p>
+ * For each analysis step (hop), the analyser measures the time of each stage
+ * (see {@link Stage}) and of each listener, and records it in a {@link LatencyHistogram}.
+ * A step that takes longer than the hop period, i.e., the time between the starts
+ * of two analysis windows, is an overrun: in a live stream, the analysis falls behind.
+ * The run times of the single detectors are part of the
+ * {@link DetectorStage.Statistics statistics of the detector stage}.
+ * <p>
+ * The metrics are always recorded and can be read by any thread at any time.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public class AnalysisMetrics
+{
+    /**
+     * Stages of an analysis step.
+     */
+    public enum Stage
+    {
+        COPY("Sample copy"),
+        FFT("FFT"),
+        SPECTRUM("Spectrum copy"),
+        DETECTORS("Detectors"),
+        LISTENERS("Listeners"),
+        STEP("Analysis step");
+
+        private Stage(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+
+        private final String name;
+    }
+
+    /**
+     * Creates the metrics of an analyser.
+     *
+     * @param analyser   the analyser
+     * @param listeners  the listeners of the analyser with their run times
+     */
+    AnalysisMetrics(SpectrumAnalyser analyser, Map<SpectrumAnalyser.Listener, LatencyHistogram> listeners)
+    {
+        this.analyser  = analyser;
+        this.listeners = listeners;
+        stages = new EnumMap<Stage, LatencyHistogram>(Stage.class);
+        for ( Stage stage : Stage.values() )
+        {
+            stages.put(stage, new LatencyHistogram(stage.toString()));
+        }
+    }
+
+    /**
+     * Gets the run times of a stage of the analysis steps.
+     *
+     * @param stage  the stage
+     * @return the histogram of the run times
+     */
+    public LatencyHistogram getHistogram(Stage stage)
+    {
+        return stages.get(stage);
+    }
+
+    /**
+     * Gets the run times of the listeners of the analyser.
+     *
+     * @return the histograms of the run times by listener
+     */
+    public Map<SpectrumAnalyser.Listener, LatencyHistogram> getListenerHistograms()
+    {
+        return Collections.unmodifiableMap(listeners);
+    }
+
+    /**
+     * Gets the run time statistics of the feature detectors.
+     *
+     * @return the statistics in the order of the detectors
+     */
+    public List<DetectorStage.Statistics> getDetectorStatistics()
+    {
+        return analyser.getDetectorStage().getStatistics();
+    }
+
+    /**
+     * Gets the number of analysis steps.
+     *
+     * @return the number of hops
+     */
+    public long getHopCount()
+    {
+        return hops;
+    }
+
+    /**
+     * Gets the number of analysis steps that took longer than the hop period.
+     *
+     * @return the number of overruns
+     */
+    public long getOverrunCount()
+    {
+        return overruns;
+    }
+
+    /**
+     * Gets the time between the starts of two analysis windows.
+     *
+     * @return the hop period in ms or 0 if the analyser is not attached to an audio stream
+     */
+    public double getHopPeriod()
+    {
+        float rate = analyser.getSampleRate();
+        return (rate > 0) ? analyser.getAnalysisStep() * 1000.0 / rate : 0;
+    }
+
+    /**
+     * Discards the recorded stage and listener run times and the counters.
+     * The detector statistics are not affected.
+     */
+    public void reset()
+    {
+        for ( LatencyHistogram histogram : stages.values() )
+        {
+            histogram.reset();
+        }
+        for ( LatencyHistogram histogram : listeners.values() )
+        {
+            histogram.reset();
+        }
+        hops     = 0;
+        overruns = 0;
+    }
+
+    /**
+     * Prints the metrics.
+     *
+     * @param out  the stream to print to
+     */
+    public void dump(PrintStream out)
+    {
+        out.print(toString());
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb  = new StringBuilder();
+        String        eol = System.lineSeparator();
+        sb.append(String.format("%d hops, %d overruns (hop period %.3f ms)", hops, overruns, getHopPeriod())).append(eol);
+        for ( LatencyHistogram histogram : stages.values() )
+        {
+            sb.append("  ").append(histogram).append(eol);
+        }
+        for ( DetectorStage.Statistics statistics : getDetectorStatistics() )
+        {
+            sb.append("  Detector ").append(statistics.getTimeHistogram()).append(eol);
+        }
+        for ( LatencyHistogram histogram : new ArrayList<LatencyHistogram>(listeners.values()) )
+        {
+            sb.append("  Listener ").append(histogram).append(eol);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Records an analysis step.
+     *
+     * @param start  the time the step started
+     * @param end    the time the step finished
+     * @param hop    the hop period in ns
+     */
+    void recordStep(long start, long end, long hop)
+    {
+        stages.get(Stage.STEP).record(end - start);
+        if ( end - start > hop ) overruns++;
+        hops++;
+    }
+
+    private final SpectrumAnalyser                                  analyser;
+    private final Map<Stage, LatencyHistogram>                      stages;
+    private final Map<SpectrumAnalyser.Listener, LatencyHistogram>  listeners;
+    // single writer: the analysis thread
+    private volatile long                                           hops, overruns;
+}
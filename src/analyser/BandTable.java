@@ -0,0 +1,202 @@
+package analyser;
+
+/**
+ * Table with the spectrum bin ranges of frequency bands.
+ * <p>
+ * The table is calculated once for a specific FFT size and sample rate,
+ * so reducing a spectrum to its bands does not need any frequency to index
+ * conversion. Band ranges are stored as pairs of inclusive bin indices in one
+ * integer array. They are ordered by frequency, so a reduction of all bands
+ * walks through the spectrum once, plus the bins that neighbouring bands share.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public class BandTable
+{
+    /**
+     * Functions for reducing the bins of a band to a single value.
+     */
+    public enum Reduction
+    {
+        MAX("Maximum"),
+        MEAN("Mean"),
+        RMS("RMS");
+
+        private Reduction(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+
+        private final String name;
+    }
+
+    /**
+     * Creates a table of logarithmic bands with the same layout
+     * as minim's <code>FourierTransform.logAverages()</code>.
+     *
+     * @param timeSize        the length of the FFT sample buffer
+     * @param sampleRate      the sample rate of the audio
+     * @param minBandwidth    the minimum bandwidth of an octave in Hz
+     * @param bandsPerOctave  the number of bands per octave
+     * @return the band table
+     */
+    public static BandTable createLogarithmic(int timeSize, float sampleRate, int minBandwidth, int bandsPerOctave)
+    {
+        int   rate = (int) sampleRate;
+        float nyq  = (float) rate / 2f;
+        int octaves = 1;
+        while ( (nyq /= 2) > minBandwidth )
+        {
+            octaves++;
+        }
+
+        BandTable table = new BandTable(octaves * bandsPerOctave);
+        for ( int i = 0 ; i < octaves ; i++ )
+        {
+            float lowFreq  = (i == 0) ? 0 : (rate / 2) / (float) Math.pow(2, octaves - i);
+            float hiFreq   = (rate / 2) / (float) Math.pow(2, octaves - i - 1);
+            float freqStep = (hiFreq - lowFreq) / bandsPerOctave;
+            float f = lowFreq;
+            for ( int j = 0 ; j < bandsPerOctave ; j++ )
+            {
+                int b = j + i * bandsPerOctave;
+                table.ranges[2 * b]     = freqToIndex(f, timeSize, rate);
+                table.ranges[2 * b + 1] = freqToIndex(f + freqStep, timeSize, rate);
+                table.centre[b]         = (lowFreq + j * freqStep) + freqStep / 2;
+                f += freqStep;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Converts a frequency into a spectrum bin index,
+     * identical to minim's <code>FourierTransform.freqToIndex()</code>.
+     *
+     * @param freq        the frequency in Hz
+     * @param timeSize    the length of the FFT sample buffer
+     * @param sampleRate  the sample rate of the audio
+     * @return the index of the spectrum bin
+     */
+    public static int freqToIndex(float freq, int timeSize, int sampleRate)
+    {
+        float bandWidth = (2f / timeSize) * ((float) sampleRate / 2f);
+        if ( freq < bandWidth / 2 ) return 0;
+        if ( freq > sampleRate / 2 - bandWidth / 2 ) return timeSize / 2;
+        float fraction = freq / (float) sampleRate;
+        return Math.round(timeSize * fraction);
+    }
+
+    private BandTable(int bands)
+    {
+        ranges = new int[2 * bands];
+        centre = new float[bands];
+    }
+
+    /**
+     * Gets the number of bands in the table.
+     *
+     * @return the number of bands
+     */
+    public int getBandCount()
+    {
+        return centre.length;
+    }
+
+    /**
+     * Gets the index of the lowest spectrum bin of a band.
+     *
+     * @param band  the band index
+     * @return the index of the lowest bin of the band
+     */
+    public int getLowIndex(int band)
+    {
+        return ranges[2 * band];
+    }
+
+    /**
+     * Gets the index of the highest spectrum bin of a band (inclusive).
+     *
+     * @param band  the band index
+     * @return the index of the highest bin of the band
+     */
+    public int getHighIndex(int band)
+    {
+        return ranges[2 * band + 1];
+    }
+
+    /**
+     * Gets the centre frequency of a band.
+     *
+     * @param band  the band index
+     * @return the centre frequency of the band in Hz
+     */
+    public float getCenterFrequency(int band)
+    {
+        return centre[band];
+    }
+
+    /**
+     * Reduces a spectrum to its band values.
+     *
+     * @param spectrum   the spectrum amplitudes
+     * @param bands      the array to store the band values in
+     * @param reduction  the function to combine the bins of a band with
+     */
+    public void reduce(float[] spectrum, float[] bands, Reduction reduction)
+    {
+        switch ( reduction )
+        {
+            case MEAN:
+                for ( int b = 0, r = 0 ; b < centre.length ; b++, r += 2 )
+                {
+                    int   lo  = ranges[r], hi = ranges[r + 1];
+                    float sum = 0;
+                    for ( int i = lo ; i <= hi ; i++ )
+                    {
+                        sum += spectrum[i];
+                    }
+                    bands[b] = sum / (hi - lo + 1);
+                }
+                break;
+
+            case RMS:
+                for ( int b = 0, r = 0 ; b < centre.length ; b++, r += 2 )
+                {
+                    int   lo  = ranges[r], hi = ranges[r + 1];
+                    float sum = 0;
+                    for ( int i = lo ; i <= hi ; i++ )
+                    {
+                        sum += spectrum[i] * spectrum[i];
+                    }
+                    bands[b] = (float) Math.sqrt(sum / (hi - lo + 1));
+                }
+                break;
+
+            default:
+                for ( int b = 0, r = 0 ; b < centre.length ; b++, r += 2 )
+                {
+                    int   hi  = ranges[r + 1];
+                    float max = 0;
+                    for ( int i = ranges[r] ; i <= hi ; i++ )
+                    {
+                        max = Math.max(spectrum[i], max);
+                    }
+                    bands[b] = max;
+                }
+                break;
+        }
+    }
+
+    // pairs of inclusive bin indices (low, high) per band
+    private final int[]   ranges;
+    // centre frequencies of the bands
+    private final float[] centre;
+}
@@ -0,0 +1,38 @@
+package analyser;
+
+/**
+ * Audio channels that the spectrum analyser can produce a spectrum for.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public enum Channel
+{
+    LEFT("Left"),
+    RIGHT("Right"),
+    MID("Mid"),     // (L + R) / 2
+    SIDE("Side");   // (L - R) / 2
+
+    private Channel(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Gets the name of the channel.
+     *
+     * @return the name of the channel
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+
+    private final String name;
+}
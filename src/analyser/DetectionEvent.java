@@ -0,0 +1,40 @@
+package analyser;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a feature detected by a detector of the {@link DetectorStage}.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+@Name("AudioSpectrumAnalyser.Detection")
+@Label("Feature Detection")
+@Description("A feature detector detected its feature")
+@Category({"Audio Spectrum Analyser", "Analysis"})
+@StackTrace(false)
+class DetectionEvent extends Event
+{
+    @Label("Feature")
+    String  feature;
+
+    @Label("Bit Number")
+    int     bitNumber;
+
+    @Label("Frame")
+    @Description("Frame that the feature is set in")
+    long    frame;
+
+    @Label("Delay")
+    @Description("Number of frames between the feature and its detection")
+    int     delay;
+
+    @Label("Set")
+    @Description("The frame was still in the history and the feature has been set")
+    boolean set;
+}
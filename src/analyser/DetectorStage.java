@@ -0,0 +1,956 @@
+package analyser;
+
+import detector.Feature;
+import detector.FeatureDetector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stage of the spectrum analyser that runs the feature detectors.
+ * <p>
+ * The detectors run in the order in which they were registered.
+ * For each frame, the stage calculates the prefix sums of the shaped raw spectrum
+ * of the primary channel once. Detectors get the sum over any range of FFT bins
+ * from these prefix sums in constant time (see {@link #getBandSum(long, int, int)}),
+ * so the cost per analysis step does not grow with the width of the ranges
+ * when many detectors observe the spectrum. In the same way, the stage provides
+ * the spectral flux between consecutive frames over any range of FFT bins
+ * (see {@link #getBandFlux(long, int, int)}).
+ * <p>
+ * By default, the detectors run in the analysis thread before a new frame is published.
+ * With worker threads (see {@link #setWorkerCount(int)}), the analysis thread only
+ * hands the number of each published frame to the workers through bounded queues
+ * and never waits for the detectors. Each detector belongs to one worker,
+ * so it sees the frames in order. When the queue of a worker is full,
+ * its detectors skip the frame (see {@link Statistics#getDroppedFrames()}).
+ * Detectors that use {@link #getFrame()} see the same frames as in the analysis thread,
+ * the features are set in the same frames. Because the workers fall behind the analysis,
+ * listeners that need the final features of a frame check how far the detection
+ * is complete (see {@link #getCompletedFrame()}).
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ * @version 1.1 - 17.10.2026: Worker threads and detector statistics
+ *                            Feature bits beyond 63
+ *                            Spectral flux
+ *                            Run time histograms
+ *                            Flight recorder events of the detections
+ *                            Completed frame of the worker threads
+ */
+public class DetectorStage
+{
+    /**
+     * Number of frames that can wait for a worker thread.
+     */
+    public static final int QUEUE_CAPACITY = 64;
+
+    /**
+     * Run time statistics of a detector.
+     * The values are updated by the thread that runs the detector
+     * and can be read by any thread.
+     */
+    public static class Statistics
+    {
+        Statistics(FeatureDetector detector)
+        {
+            this.detector = detector;
+            timeHistogram = new LatencyHistogram(detector.getFeature().getName());
+        }
+
+        /**
+         * Gets the detector.
+         *
+         * @return the detector
+         */
+        public FeatureDetector getDetector()
+        {
+            return detector;
+        }
+
+        /**
+         * Gets the number of frames the detector has run for.
+         *
+         * @return the number of runs
+         */
+        public long getRunCount()
+        {
+            return runs;
+        }
+
+        /**
+         * Gets the number of detected features.
+         *
+         * @return the number of detections
+         */
+        public long getDetectionCount()
+        {
+            return detections;
+        }
+
+        /**
+         * Gets the total run time of the detector.
+         *
+         * @return the total run time in ms
+         */
+        public double getTotalTime()
+        {
+            return totalTime / 1e6;
+        }
+
+        /**
+         * Gets the average run time of the detector.
+         *
+         * @return the average run time in ms
+         */
+        public double getAverageTime()
+        {
+            long n = runs;
+            return (n > 0) ? totalTime / 1e6 / n : 0;
+        }
+
+        /**
+         * Gets the maximum run time of the detector.
+         *
+         * @return the maximum run time in ms
+         */
+        public double getMaxTime()
+        {
+            return maxTime / 1e6;
+        }
+
+        /**
+         * Gets the distribution of the run times of the detector.
+         *
+         * @return the histogram of the run times
+         */
+        public LatencyHistogram getTimeHistogram()
+        {
+            return timeHistogram;
+        }
+
+        /**
+         * Gets the average latency of the detector,
+         * i.e., the time from the analysis of a frame until the detector has run for it,
+         * including the time in the queue and the other detectors of the same thread.
+         *
+         * @return the average latency in ms
+         */
+        public double getAverageLatency()
+        {
+            long n = runs;
+            return (n > 0) ? totalLatency / 1e6 / n : 0;
+        }
+
+        /**
+         * Gets the maximum latency of the detector.
+         *
+         * @return the maximum latency in ms
+         */
+        public double getMaxLatency()
+        {
+            return maxLatency / 1e6;
+        }
+
+        /**
+         * Gets the number of frames that the detector skipped
+         * because the queue of its worker thread was full
+         * or because the worker threads were being replaced.
+         *
+         * @return the number of dropped frames
+         */
+        public long getDroppedFrames()
+        {
+            return dropped + skipped;
+        }
+
+        /**
+         * Gets the number of detected features that could not be set because
+         * their frame was not in the history (any more).
+         *
+         * @return the number of lost features
+         */
+        public long getLostFeatures()
+        {
+            return lost;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s: %d runs, %d detections, time %.3f/%.3f ms, latency %.3f/%.3f ms, %d dropped, %d lost",
+                                 detector.getFeature().getName(), runs, detections,
+                                 getAverageTime(), getMaxTime(), getAverageLatency(), getMaxLatency(),
+                                 getDroppedFrames(), lost);
+        }
+
+        /**
+         * Records a run of the detector.
+         *
+         * @param start     the time the detector started
+         * @param end       the time the detector finished
+         * @param analysed  the time the frame was analysed
+         * @param detected  <code>true</code> if the feature was detected
+         */
+        void record(long start, long end, long analysed, boolean detected)
+        {
+            long time    = end - start;
+            long latency = end - analysed;
+            totalTime    += time;
+            maxTime       = Math.max(maxTime, time);
+            timeHistogram.record(time);
+            totalLatency += latency;
+            maxLatency    = Math.max(maxLatency, latency);
+            if ( detected ) detections++;
+            runs++;
+        }
+
+        private final FeatureDetector  detector;
+        private final LatencyHistogram timeHistogram;
+        // each counter has a single writer: the thread that runs the detector,
+        // or the analysis thread for dropped frames, or the thread that replaces the workers
+        private volatile long          runs, detections, totalTime, maxTime, totalLatency, maxLatency;
+        private volatile long          dropped, skipped, lost;
+    }
+
+    /**
+     * Creates a detector stage.
+     *
+     * @param analyser  the analyser that the stage belongs to
+     * @param history   the spectrum history of the analyser
+     */
+    DetectorStage(SpectrumAnalyser analyser, SpectrumHistory history)
+    {
+        this.analyser   = analyser;
+        this.history    = history;
+        entries         = new CopyOnWriteArrayList<Statistics>();
+        workers         = new Worker[0];
+        stoppingWorkers = workers;
+        workerLock      = new Object();
+        analysedTimes   = new long[QUEUE_CAPACITY * 2];
+        ringSize        = 1;
+        context = new ThreadLocal<Context>()
+        {
+            @Override
+            protected Context initialValue()
+            {
+                return new Context();
+            }
+        };
+    }
+
+    /**
+     * Gets the analyser that the stage belongs to.
+     *
+     * @return the spectrum analyser
+     */
+    public SpectrumAnalyser getAnalyser()
+    {
+        return analyser;
+    }
+
+    /**
+     * Gets the detectors of the stage.
+     *
+     * @return the detectors in the order in which they are run
+     */
+    public List<FeatureDetector> getDetectors()
+    {
+        List<FeatureDetector> detectors = new ArrayList<FeatureDetector>(entries.size());
+        for ( Statistics entry : entries )
+        {
+            detectors.add(entry.getDetector());
+        }
+        return Collections.unmodifiableList(detectors);
+    }
+
+    /**
+     * Gets the run time statistics of the detectors.
+     *
+     * @return the statistics in the order of the detectors
+     */
+    public List<Statistics> getStatistics()
+    {
+        return Collections.unmodifiableList(new ArrayList<Statistics>(entries));
+    }
+
+    /**
+     * Adds a detector to the end of the stage.
+     *
+     * @param detector  the detector to add
+     * @return <code>true</code> if the detector was added,
+     *         <code>false</code> if it is part of the stage already
+     */
+    boolean add(FeatureDetector detector)
+    {
+        // make room for the feature bit before the detector can set it
+        // (outside of the lock, the analysis thread may be waiting for it while writing a frame)
+        history.setFeatureWords(detector.getFeature().getWordIndex() + 1);
+        return addEntry(detector);
+    }
+
+    private synchronized boolean addEntry(FeatureDetector detector)
+    {
+        if ( find(detector) != null ) return false;
+        Statistics entry = new Statistics(detector);
+        entries.add(entry);
+        if ( workers.length > 0 )
+        {
+            // the worker with the fewest detectors takes the new one
+            Worker worker = workers[0];
+            for ( Worker w : workers )
+            {
+                if ( w.entries.size() < worker.entries.size() ) worker = w;
+            }
+            worker.entries.add(entry);
+        }
+        updateRingSize();
+        return true;
+    }
+
+    /**
+     * Removes a detector from the stage.
+     *
+     * @param detector  the detector to remove
+     * @return <code>true</code> if the detector was removed,
+     *         <code>false</code> if it is not part of the stage
+     */
+    synchronized boolean remove(FeatureDetector detector)
+    {
+        Statistics entry = find(detector);
+        if ( entry == null ) return false;
+        entries.remove(entry);
+        for ( Worker worker : workers )
+        {
+            worker.entries.remove(entry);
+        }
+        updateRingSize();
+        return true;
+    }
+
+    private Statistics find(FeatureDetector detector)
+    {
+        for ( Statistics entry : entries )
+        {
+            if ( entry.getDetector() == detector ) return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Adapts the size of the prefix sum ring to the history length of the detectors.
+     */
+    private void updateRingSize()
+    {
+        // the spectral flux needs the prefix sums of two frames
+        int size = 2;
+        for ( Statistics entry : entries )
+        {
+            size = Math.max(size, entry.getDetector().getHistoryLength());
+        }
+        ringSize = size;
+    }
+
+    /**
+     * Gets the number of frames that the detectors need before they detect
+     * the same features as in an analysis of the whole stream.
+     *
+     * @return the number of warm-up frames or {@link FeatureDetector#UNBOUNDED_WARM_UP}
+     *         if a detector depends on the whole stream
+     * @see SpectrumAnalyser#getDetectorWarmUp()
+     */
+    public int getWarmUp()
+    {
+        int warmUp = 0;
+        for ( Statistics entry : entries )
+        {
+            int detectorWarmUp = entry.getDetector().getWarmUp();
+            if ( detectorWarmUp == FeatureDetector.UNBOUNDED_WARM_UP )
+            {
+                return FeatureDetector.UNBOUNDED_WARM_UP;
+            }
+            warmUp = Math.max(warmUp, detectorWarmUp);
+        }
+        return warmUp;
+    }
+
+    /**
+     * Gets the number of frames after which the features of a frame do not change any more.
+     *
+     * @return the longest detection delay of the detectors
+     */
+    public int getDetectionDelay()
+    {
+        int delay = 0;
+        for ( Statistics entry : entries )
+        {
+            delay = Math.max(delay, entry.getDetector().getDetectionDelay());
+        }
+        return delay;
+    }
+
+    /**
+     * Gets the number of the newest frame up to which the detection is complete.
+     * The features of a frame do not change any more when the detection is complete
+     * up to the frame plus the detection delay (see {@link #getDetectionDelay()}).
+     * Without worker threads, the detection of a frame is complete before the frame is published.
+     * With worker threads, this is the oldest frame that a worker has not finished yet.
+     * Has to be called by the analysis thread, e.g., by a listener of the analyser.
+     *
+     * @return the frame number, {@link Long#MAX_VALUE} if no detection is pending
+     */
+    public long getCompletedFrame()
+    {
+        long completed = Long.MAX_VALUE;
+        for ( Worker worker : workers )
+        {
+            completed = Math.min(completed, worker.queue.getOldest());
+        }
+        for ( Worker worker : stoppingWorkers )
+        {
+            completed = Math.min(completed, worker.queue.getOldest());
+        }
+        return completed;
+    }
+
+    /**
+     * Gets the number of worker threads.
+     *
+     * @return the number of worker threads,
+     *         0 if the detectors run in the analysis thread
+     */
+    public int getWorkerCount()
+    {
+        return workers.length;
+    }
+
+    /**
+     * Sets the number of worker threads that run the detectors.
+     * The detectors are distributed evenly over the workers.
+     * The analysis thread does not wait for the change. While the old workers stop,
+     * the detectors that would run in the analysis thread skip the frames
+     * (see {@link Statistics#getDroppedFrames()}), and the new workers start
+     * with the frames that have been published meanwhile.
+     *
+     * @param count  the number of worker threads,
+     *               0 to run the detectors in the analysis thread
+     */
+    public void setWorkerCount(int count)
+    {
+        count = Math.max(0, count);
+        synchronized ( workerLock )
+        {
+            Worker[] oldWorkers;
+            Worker[] newWorkers;
+            synchronized ( this )
+            {
+                if ( count == workers.length ) return;
+                oldWorkers = workers;
+                newWorkers = new Worker[count];
+                for ( int i = 0 ; i < count ; i++ )
+                {
+                    newWorkers[i] = new Worker(i);
+                }
+                if ( count > 0 )
+                {
+                    int idx = 0;
+                    for ( Statistics entry : entries )
+                    {
+                        newWorkers[idx++ % count].entries.add(entry);
+                    }
+                }
+                // until the old workers have stopped, the analysis thread skips the detectors
+                // and the new workers only collect the frames
+                switching       = true;
+                stoppingWorkers = oldWorkers;
+                workers         = newWorkers;
+            }
+
+            // a detector must not run in two threads: stop the old workers
+            // and wait for a detection in the analysis thread to finish,
+            // without holding the lock that adding and removing detectors needs
+            for ( Worker worker : oldWorkers )
+            {
+                worker.thread.interrupt();
+            }
+            for ( Worker worker : oldWorkers )
+            {
+                try
+                {
+                    worker.thread.join();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                // the frames that the old worker did not take are skipped
+                int remaining = worker.queue.size();
+                for ( Statistics entry : worker.entries )
+                {
+                    entry.skipped += remaining;
+                }
+            }
+            while ( detecting )
+            {
+                Thread.yield();
+            }
+            stoppingWorkers = new Worker[0];
+
+            for ( Worker worker : newWorkers )
+            {
+                worker.thread.start();
+            }
+            switching = false;
+        }
+    }
+
+    /**
+     * Gets the number of the most recent frame that the current detection can look at.
+     * Detectors that run in a worker thread must not use the frame count
+     * of the analyser, because the analysis moves on while they run.
+     *
+     * @return the frame number
+     */
+    public long getFrame()
+    {
+        return context.get().frame;
+    }
+
+    /**
+     * Runs the detectors for a new frame in the analysis thread,
+     * unless there are worker threads.
+     * The detectors see the history up to the previous frame.
+     *
+     * @param frame  the number of the frame that is being written
+     */
+    void run(long frame)
+    {
+        // announce the detection before looking at the workers, see setWorkerCount()
+        detecting = true;
+        if ( workers.length == 0 )
+        {
+            if ( switching )
+            {
+                for ( Statistics entry : entries )
+                {
+                    entry.dropped++;
+                }
+            }
+            else
+            {
+                runDetectors(entries, frame - 1, System.nanoTime(), false);
+            }
+        }
+        detecting = false;
+    }
+
+    /**
+     * Hands a published frame to the worker threads, if there are any.
+     * Never waits for the workers.
+     *
+     * @param frame  the number of the frame that has been published
+     */
+    void frameAnalysed(long frame)
+    {
+        Worker[] currentWorkers = workers;
+        if ( currentWorkers.length == 0 ) return;
+
+        analysedTimes[(int) (frame % analysedTimes.length)] = System.nanoTime();
+        for ( Worker worker : currentWorkers )
+        {
+            if ( !worker.queue.offer(frame) )
+            {
+                for ( Statistics entry : worker.entries )
+                {
+                    entry.dropped++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs detectors and sets the detected features.
+     *
+     * @param list        the detectors to run
+     * @param frame       the most recent frame that the detectors can look at
+     * @param analysed    the time the frame was analysed
+     * @param concurrent  <code>true</code> if running in a worker thread
+     */
+    private void runDetectors(List<Statistics> list, long frame, long analysed, boolean concurrent)
+    {
+        context.get().frame = frame;
+        long warmUpFrames = analyser.getWarmUpFrames();
+        for ( Statistics entry : list )
+        {
+            FeatureDetector featureDetector = entry.getDetector();
+            long    start    = System.nanoTime();
+            boolean detected = featureDetector.detectFeature(this);
+            long    end      = System.nanoTime();
+            // the detection belongs to the step of the next frame
+            if ( detected && (frame + 1 >= warmUpFrames) )
+            {
+                // feature detected: set bit in corresponding history item
+                long    featureFrame = frame + 1 - featureDetector.getDetectionDelay();
+                Feature feature      = featureDetector.getFeature();
+                boolean set = concurrent ? history.addFeatureConcurrently(featureFrame, feature)
+                                         : history.addFeature(featureFrame, feature);
+                if ( !set ) entry.lost++;
+                
+                if ( DETECTION_EVENT_CHECK.isEnabled() )
+                {
+                    DetectionEvent event = new DetectionEvent();
+                    event.feature   = feature.getName();
+                    event.bitNumber = feature.getBitNumber();
+                    event.frame     = featureFrame;
+                    event.delay     = featureDetector.getDetectionDelay();
+                    event.set       = set;
+                    event.commit();
+                }
+            }
+            entry.record(start, end, analysed, detected);
+        }
+    }
+
+    /**
+     * Calculates the sum of the shaped raw intensities of the primary channel
+     * over a range of FFT bins.
+     *
+     * @param frame    the frame number
+     * @param fromBin  the index of the first FFT bin
+     * @param toBin    the index of the last FFT bin (inclusive)
+     * @return the sum of the intensities
+     *         or <code>NaN</code> if the frame is not (or no longer) in the history
+     */
+    public double getBandSum(long frame, int fromBin, int toBin)
+    {
+        double[] prefix = context.get().getPrefixSums(frame);
+        return (prefix != null) ? prefix[toBin + 1] - prefix[fromBin] : Double.NaN;
+    }
+
+    /**
+     * Calculates the spectral flux over a range of FFT bins, that is the sum of
+     * the increases of the shaped raw intensities of the primary channel
+     * from the previous frame to a frame (half-wave rectified difference).
+     *
+     * @param frame    the frame number
+     * @param fromBin  the index of the first FFT bin
+     * @param toBin    the index of the last FFT bin (inclusive)
+     * @return the spectral flux
+     *         or <code>NaN</code> if the frame or its previous frame is not (or no longer) in the history
+     */
+    public double getBandFlux(long frame, int fromBin, int toBin)
+    {
+        double[] prefix = context.get().getFluxSums(frame);
+        return (prefix != null) ? prefix[toBin + 1] - prefix[fromBin] : Double.NaN;
+    }
+
+    /**
+     * Discards the prefix sums and waiting frames, e.g., when the frame numbers start again.
+     */
+    void reset()
+    {
+        generation++;
+        for ( Worker worker : workers )
+        {
+            worker.queue.clear();
+        }
+    }
+
+    /**
+     * The state of the detection in one thread.
+     */
+    private class Context
+    {
+        /**
+         * Gets the prefix sums of a frame, calculating them if necessary.
+         *
+         * @param frame  the frame number
+         * @return the prefix sums (entry <code>i</code> is the sum of the first <code>i</code> bins)
+         *         or <code>null</code> if the frame is not in the history
+         */
+        double[] getPrefixSums(long frame)
+        {
+            int slot = checkRing(frame);
+            if ( prefixFrames[slot] == frame )
+            {
+                return prefixSums[slot];
+            }
+
+            int bins = history.getStore().getBinCount();
+            if ( spectrum.length != bins )
+            {
+                spectrum = new float[bins];
+            }
+            if ( !history.getIntensityRaw(frame, 0, bins, spectrum) ) return null;
+
+            double[] prefix = prefixSums[slot];
+            if ( (prefix == null) || (prefix.length != bins + 1) )
+            {
+                prefix = prefixSums[slot] = new double[bins + 1];
+            }
+            prefix[0] = 0;
+            for ( int i = 0 ; i < bins ; i++ )
+            {
+                prefix[i + 1] = prefix[i] + spectrum[i];
+            }
+            prefixFrames[slot] = frame;
+            return prefix;
+        }
+
+        /**
+         * Gets the prefix sums of the spectral flux of a frame, calculating them if necessary.
+         *
+         * @param frame  the frame number
+         * @return the prefix sums (entry <code>i</code> is the flux of the first <code>i</code> bins)
+         *         or <code>null</code> if the frame or its previous frame is not in the history
+         */
+        double[] getFluxSums(long frame)
+        {
+            int slot = checkRing(frame);
+            if ( fluxFrames[slot] == frame )
+            {
+                return fluxSums[slot];
+            }
+
+            // the intensities of the bins are the differences of the prefix sums
+            double[] current  = getPrefixSums(frame);
+            double[] previous = (frame > 0) ? getPrefixSums(frame - 1) : null;
+            if ( (current == null) || (previous == null) || (previous.length != current.length) ) return null;
+
+            slot = checkRing(frame);
+            double[] flux = fluxSums[slot];
+            if ( (flux == null) || (flux.length != current.length) )
+            {
+                flux = fluxSums[slot] = new double[current.length];
+            }
+            flux[0] = 0;
+            for ( int i = 1 ; i < current.length ; i++ )
+            {
+                double increase = (current[i] - current[i - 1]) - (previous[i] - previous[i - 1]);
+                flux[i] = flux[i - 1] + Math.max(0, increase);
+            }
+            fluxFrames[slot] = frame;
+            return flux;
+        }
+
+        /**
+         * Adapts the rings to the ring size and generation of the stage.
+         *
+         * @param frame  the frame number
+         * @return the slot of the frame in the rings
+         */
+        private int checkRing(long frame)
+        {
+            int size = ringSize;
+            if ( (prefixFrames == null) || (size != prefixFrames.length) || (contextGeneration != generation) )
+            {
+                prefixSums   = new double[size][];
+                prefixFrames = new long[size];
+                fluxSums     = new double[size][];
+                fluxFrames   = new long[size];
+                Arrays.fill(prefixFrames, -1);
+                Arrays.fill(fluxFrames, -1);
+                contextGeneration = generation;
+            }
+            return (int) (frame % size);
+        }
+
+        // most recent frame that the detection can look at
+        long               frame;
+        // ring of prefix sums of the most recent frames, and their frame numbers
+        private double[][] prefixSums;
+        private long[]     prefixFrames;
+        // ring of prefix sums of the spectral flux, and their frame numbers
+        private double[][] fluxSums;
+        private long[]     fluxFrames;
+        private float[]    spectrum = new float[0];
+        private int        contextGeneration;
+    }
+
+    /**
+     * Worker thread that runs a part of the detectors.
+     */
+    private class Worker implements Runnable
+    {
+        Worker(int index)
+        {
+            entries = new CopyOnWriteArrayList<Statistics>();
+            thread  = new Thread(this, "DetectorStage-" + index);
+            thread.setDaemon(true);
+            queue   = new FrameQueue(QUEUE_CAPACITY, thread);
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while ( !Thread.currentThread().isInterrupted() )
+                {
+                    long frame = queue.take();
+                    runDetectors(entries, frame, analysedTimes[(int) (frame % analysedTimes.length)], true);
+                    queue.remove();
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                // worker stopped
+            }
+        }
+
+        private final FrameQueue       queue;
+        private final List<Statistics> entries;
+        private final Thread           thread;
+    }
+
+    /**
+     * Bounded queue of frame numbers from the analysis thread to one worker thread,
+     * without boxing the frame numbers.
+     * Only the analysis thread offers frames and clears the queue,
+     * only the worker thread takes frames.
+     */
+    private static class FrameQueue
+    {
+        FrameQueue(int capacity, Thread consumer)
+        {
+            this.frames   = new long[capacity];
+            this.consumer = consumer;
+            head    = 0;
+            tail    = 0;
+            discard = 0;
+            waiting = false;
+        }
+
+        /**
+         * Adds a frame if the queue is not full.
+         *
+         * @param frame  the frame number
+         * @return <code>true</code> if the frame was added,
+         *         <code>false</code> if the queue is full
+         */
+        boolean offer(long frame)
+        {
+            long t = tail;
+            if ( t - Math.max(head, discard) >= frames.length ) return false;
+            frames[(int) (t % frames.length)] = frame;
+            // publishes the frame
+            tail = t + 1;
+            if ( waiting )
+            {
+                LockSupport.unpark(consumer);
+            }
+            return true;
+        }
+
+        /**
+         * Waits for the next frame. The frame stays in the queue until it is removed
+         * after the detection, so the analysis thread sees it as pending.
+         *
+         * @return the frame number
+         * @throws InterruptedException if the worker thread is interrupted
+         */
+        long take() throws InterruptedException
+        {
+            while ( true )
+            {
+                long h = Math.max(head, discard);
+                if ( h < tail )
+                {
+                    long frame = frames[(int) (h % frames.length)];
+                    // after clear(), the analysis thread may overwrite the slot
+                    if ( discard > h ) continue;
+                    taken = h;
+                    return frame;
+                }
+                // announce the wait before checking the queue again, offer() checks the flag
+                // after publishing the frame, so one of them sees the other
+                waiting = true;
+                if ( Math.max(head, discard) == tail )
+                {
+                    if ( Thread.interrupted() )
+                    {
+                        waiting = false;
+                        throw new InterruptedException();
+                    }
+                    LockSupport.park(this);
+                }
+                waiting = false;
+            }
+        }
+
+        /**
+         * Removes the frame that the worker thread has taken.
+         */
+        void remove()
+        {
+            head = taken + 1;
+        }
+
+        /**
+         * Gets the oldest frame that the worker thread has not finished yet.
+         * Only called by the analysis thread, so the slot of the frame is not reused meanwhile.
+         *
+         * @return the frame number, {@link Long#MAX_VALUE} if the queue is empty
+         */
+        long getOldest()
+        {
+            long h = Math.max(head, discard);
+            return (h < tail) ? frames[(int) (h % frames.length)] : Long.MAX_VALUE;
+        }
+
+        /**
+         * Gets the number of waiting frames, including the frame that is being detected.
+         *
+         * @return the number of frames
+         */
+        int size()
+        {
+            return (int) (tail - Math.max(head, discard));
+        }
+
+        /**
+         * Discards the waiting frames.
+         */
+        void clear()
+        {
+            discard = tail;
+        }
+
+        private final long[]     frames;
+        private final Thread     consumer;
+        // next frame to take, written by the worker thread
+        private volatile long    head;
+        // the frame that is being detected (only used by the worker thread)
+        private long             taken;
+        // next frame to offer and start of the frames that have not been discarded,
+        // written by the analysis thread
+        private volatile long    tail, discard;
+        // the worker thread is about to park
+        private volatile boolean waiting;
+    }
+
+    private final SpectrumAnalyser        analyser;
+    private final SpectrumHistory         history;
+    // the detectors with their statistics, in the order of registration
+    private final List<Statistics>        entries;
+    private volatile Worker[]             workers;
+    // the old workers while they are being replaced
+    private volatile Worker[]             stoppingWorkers;
+    // held while the workers are replaced
+    private final Object                  workerLock;
+    // the workers are being replaced / the analysis thread is running the detectors
+    private volatile boolean              switching, detecting;
+    // time of the analysis of the frames waiting for the workers
+    private final long[]                  analysedTimes;
+    private final ThreadLocal<Context>    context;
+    // number of frames in the prefix sum ring, the history length of the detectors
+    private volatile int                  ringSize;
+    // incremented when the frame numbers start again
+    private volatile int                  generation;
+
+    // checks if detection events are recorded, without creating an event for each detection
+    private static final DetectionEvent   DETECTION_EVENT_CHECK = new DetectionEvent();
+}
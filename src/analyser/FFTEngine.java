@@ -0,0 +1,168 @@
+package analyser;
+
+import ddf.minim.analysis.HannWindow;
+import java.util.Set;
+
+/**
+ * Interface for the FFT engines that calculate the spectrum
+ * and the logarithmic band averages for the spectrum analyser.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public interface FFTEngine
+{
+    /**
+     * Available FFT engine implementations.
+     */
+    public enum Type
+    {
+        /**
+         * The minim FFT with maximum band averages (see {@link MaxFFT}).
+         */
+        MINIM("Minim")
+        {
+            @Override
+            public FFTEngine create(int timeSize, float sampleRate, int minBandwidth, int bandsPerOctave)
+            {
+                MaxFFT fft = new MaxFFT(timeSize, sampleRate);
+                fft.logAverages(minBandwidth, bandsPerOctave);
+                fft.window(new HannWindow());
+                return fft;
+            }
+        },
+
+        /**
+         * The allocation-free project FFT (see {@link NativeFFT}).
+         */
+        NATIVE("Native")
+        {
+            @Override
+            public FFTEngine create(int timeSize, float sampleRate, int minBandwidth, int bandsPerOctave)
+            {
+                return new NativeFFT(timeSize, sampleRate, minBandwidth, bandsPerOctave);
+            }
+        };
+
+        private Type(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * Creates an FFT engine with a Hann window and logarithmic band averages.
+         *
+         * @param timeSize        the length of the sample buffers (power of two)
+         * @param sampleRate      the sample rate of the audio
+         * @param minBandwidth    the minimum bandwidth of an octave in Hz
+         * @param bandsPerOctave  the number of bands per octave
+         * @return the FFT engine
+         */
+        public abstract FFTEngine create(int timeSize, float sampleRate, int minBandwidth, int bandsPerOctave);
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+
+        private final String name;
+    }
+
+    /**
+     * Gets the name of the engine.
+     *
+     * @return the name of the engine
+     */
+    String getName();
+
+    /**
+     * Gets the length of the sample buffers that the engine transforms.
+     *
+     * @return the number of samples per transform
+     */
+    int timeSize();
+
+    /**
+     * Gets the size of the spectrum.
+     *
+     * @return the number of spectrum bins (<code>timeSize() / 2 + 1</code>)
+     */
+    int specSize();
+
+    /**
+     * Gets the number of band averages.
+     *
+     * @return the number of band averages
+     */
+    int avgSize();
+
+    /**
+     * Gets the spectrum bin index for a frequency.
+     *
+     * @param freq  the frequency in Hz
+     * @return the index of the spectrum bin containing the frequency
+     */
+    int freqToIndex(float freq);
+
+    /**
+     * Gets the centre frequency of a band average.
+     *
+     * @param i  the index of the band average
+     * @return the centre frequency of the band in Hz
+     */
+    float getAverageCenterFrequency(int i);
+
+    /**
+     * Gets the table with the spectrum bin ranges of the band averages.
+     *
+     * @return the band table
+     */
+    BandTable getBandTable();
+
+    /**
+     * Gets the function that reduces the spectrum bins of a band to its average.
+     *
+     * @return the band reduction function
+     */
+    BandTable.Reduction getBandReduction();
+
+    /**
+     * Sets the function that reduces the spectrum bins of a band to its average.
+     *
+     * @param reduction  the band reduction function
+     */
+    void setBandReduction(BandTable.Reduction reduction);
+
+    /**
+     * Performs a forward transform on one or more channels of a stereo signal.
+     *
+     * @param left      the samples of the left channel (may be modified)
+     * @param right     the samples of the right channel (may be modified)
+     * @param channels  the channels to calculate the spectrum for
+     */
+    void forward(float[] left, float[] right, Set<Channel> channels);
+
+    /**
+     * Gets the set of channels that the last forward transform was run on.
+     *
+     * @return the set of analysed channels
+     */
+    Set<Channel> getChannels();
+
+    /**
+     * Gets the spectrum amplitudes of a channel from the last forward transform.
+     *
+     * @param channel  the channel to get the spectrum for
+     * @return the spectrum amplitudes or <code>null</code> if the channel was not analysed
+     */
+    float[] getSpectrum(Channel channel);
+
+    /**
+     * Gets the band averages of a channel from the last forward transform.
+     *
+     * @param channel  the channel to get the averages for
+     * @return the band averages or <code>null</code> if the channel was not analysed
+     */
+    float[] getAverages(Channel channel);
+}
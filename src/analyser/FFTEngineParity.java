@@ -0,0 +1,188 @@
+package analyser;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Check that the FFT engines calculate the same spectrum.
+ * <p>
+ * The check runs the {@link FFTEngine.Type#NATIVE} and the {@link FFTEngine.Type#MINIM}
+ * engine on the same test signal, a mix of sine waves and noise that differs
+ * between the left and the right channel, for each FFT size, number of bands per octave,
+ * band reduction and combination of channels. For each frame and channel,
+ * the largest difference between the spectra and between the band averages of the engines
+ * must not exceed {@link #TOLERANCE} times the largest value of the MINIM engine.
+ * <p>
+ * Usage: <code>java analyser.FFTEngineParity</code>
+ * <br>
+ * The program prints the largest relative difference of each setting
+ * and exits with status 1 if a difference exceeds the tolerance.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public class FFTEngineParity
+{
+    /**
+     * Largest allowed difference between the engines, relative to the peak of the spectrum.
+     * The engines calculate in float with a different order of the operations.
+     */
+    public static final double TOLERANCE = 1e-4;
+
+    /**
+     * Runs the check.
+     *
+     * @param args  the command line arguments (not used)
+     */
+    public static void main(String[] args)
+    {
+        boolean passed = true;
+        for ( int size : SIZES )
+        {
+            float[][] left  = new float[FRAMES][];
+            float[][] right = new float[FRAMES][];
+            Random random = new Random(size);
+            for ( int frame = 0 ; frame < FRAMES ; frame++ )
+            {
+                left[frame]  = createSignal(random, size);
+                right[frame] = createSignal(random, size);
+            }
+
+            for ( int bandsPerOctave : BANDS_PER_OCTAVE )
+            {
+                for ( BandTable.Reduction reduction : BandTable.Reduction.values() )
+                {
+                    double maxError = 0;
+                    for ( Set<Channel> channels : channelSets() )
+                    {
+                        maxError = Math.max(maxError,
+                                            compare(size, bandsPerOctave, reduction, channels, left, right));
+                    }
+                    boolean ok = maxError <= TOLERANCE;
+                    System.out.printf("FFT size %4d, %2d bands per octave, %-7s: max. difference %.2e %s%n",
+                                      size, bandsPerOctave, reduction, maxError, ok ? "OK" : "FAILED");
+                    passed &= ok;
+                }
+            }
+        }
+        System.out.println(passed ? "All engines agree within " + TOLERANCE
+                                  : "Engines differ by more than " + TOLERANCE);
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Runs both engines on the test frames and compares their results.
+     *
+     * @param size            the FFT size
+     * @param bandsPerOctave  the number of bands per octave
+     * @param reduction       the band reduction
+     * @param channels        the channels to analyse
+     * @param left            the left channel samples of the frames
+     * @param right           the right channel samples of the frames
+     * @return the largest difference relative to the peak of the MINIM engine
+     */
+    private static double compare(int size, int bandsPerOctave, BandTable.Reduction reduction,
+                                  Set<Channel> channels, float[][] left, float[][] right)
+    {
+        FFTEngine reference = FFTEngine.Type.MINIM.create(size, SAMPLE_RATE, MIN_BANDWIDTH, bandsPerOctave);
+        FFTEngine engine    = FFTEngine.Type.NATIVE.create(size, SAMPLE_RATE, MIN_BANDWIDTH, bandsPerOctave);
+        reference.setBandReduction(reduction);
+        engine.setBandReduction(reduction);
+        if ( (reference.specSize() != engine.specSize()) || (reference.avgSize() != engine.avgSize()) )
+        {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double maxError = 0;
+        for ( int frame = 0 ; frame < left.length ; frame++ )
+        {
+            // the engines apply the window in place
+            reference.forward(left[frame].clone(), right[frame].clone(), channels);
+            engine.forward(left[frame].clone(), right[frame].clone(), channels);
+            for ( Channel channel : channels )
+            {
+                maxError = Math.max(maxError, difference(reference.getSpectrum(channel), engine.getSpectrum(channel)));
+                maxError = Math.max(maxError, difference(reference.getAverages(channel), engine.getAverages(channel)));
+            }
+        }
+        return maxError;
+    }
+
+    /**
+     * Calculates the largest difference between two arrays relative to the peak of the first one.
+     *
+     * @param expected  the values of the reference
+     * @param actual    the values to check
+     * @return the largest relative difference
+     */
+    private static double difference(float[] expected, float[] actual)
+    {
+        double peak  = 0;
+        double error = 0;
+        for ( int i = 0 ; i < expected.length ; i++ )
+        {
+            peak  = Math.max(peak, Math.abs(expected[i]));
+            error = Math.max(error, Math.abs(expected[i] - actual[i]));
+        }
+        return (peak > 0) ? error / peak : error;
+    }
+
+    /**
+     * Creates the samples of a test frame: sine waves at random frequencies
+     * over the whole spectrum and some noise.
+     *
+     * @param random  the random number generator
+     * @param size    the number of samples
+     * @return the samples
+     */
+    private static float[] createSignal(Random random, int size)
+    {
+        float[] samples = new float[size];
+        for ( int wave = 0 ; wave < 8 ; wave++ )
+        {
+            // logarithmically distributed between 20 Hz and the Nyquist frequency
+            double frequency = 20 * Math.pow(SAMPLE_RATE / 40, random.nextDouble());
+            double amplitude = 0.1 * random.nextDouble();
+            double phase     = 2 * Math.PI * random.nextDouble();
+            for ( int i = 0 ; i < size ; i++ )
+            {
+                samples[i] += (float) (amplitude * Math.sin(2 * Math.PI * frequency * i / SAMPLE_RATE + phase));
+            }
+        }
+        for ( int i = 0 ; i < size ; i++ )
+        {
+            samples[i] += (float) (0.01 * random.nextGaussian());
+        }
+        return samples;
+    }
+
+    /**
+     * Creates all non-empty combinations of channels.
+     *
+     * @return the combinations of channels
+     */
+    private static List<Set<Channel>> channelSets()
+    {
+        Channel[]          all  = Channel.values();
+        List<Set<Channel>> sets = new ArrayList<>();
+        for ( int mask = 1 ; mask < (1 << all.length) ; mask++ )
+        {
+            Set<Channel> set = EnumSet.noneOf(Channel.class);
+            for ( int c = 0 ; c < all.length ; c++ )
+            {
+                if ( (mask & (1 << c)) != 0 ) set.add(all[c]);
+            }
+            sets.add(set);
+        }
+        return sets;
+    }
+
+    private static final float SAMPLE_RATE      = 44100;
+    private static final int   MIN_BANDWIDTH    = 100;
+    private static final int[] SIZES            = { 1024, 2048, 4096 };
+    private static final int[] BANDS_PER_OCTAVE = { 1, 2, 3, 4, 6, 8, 12, 16, 24 };
+    private static final int   FRAMES           = 16;
+}
@@ -0,0 +1,44 @@
+package analyser;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event of an analysis step, from reading the samples
+ * to notifying the listeners.
+ * <p>
+ * Like all events of the analyser, the event only costs a check of a flag
+ * when it is not enabled in the flight recording.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+@Name("AudioSpectrumAnalyser.Frame")
+@Label("Analysis Frame")
+@Description("Analysis of one frame of the audio stream")
+@Category({"Audio Spectrum Analyser", "Analysis"})
+@StackTrace(false)
+class FrameEvent extends Event
+{
+    @Label("Frame")
+    @Description("Frame number since the analyser was attached")
+    long    frame;
+
+    @Label("Position")
+    @Description("Position of the analysis window in the stream in ms")
+    int     position;
+
+    @Label("Hop Period")
+    @Description("Time between the starts of two analysis windows")
+    @Timespan(Timespan.NANOSECONDS)
+    long    hopPeriod;
+
+    @Label("Overrun")
+    @Description("The analysis took longer than the hop period")
+    boolean overrun;
+}
@@ -0,0 +1,192 @@
+package analyser;
+
+/**
+ * Histogram of durations with a fixed relative precision.
+ * <p>
+ * Durations are recorded in nanoseconds into buckets whose width grows with the value
+ * (log-linear, like an HDR histogram): each power of two is divided into
+ * {@link #SUB_BUCKETS}<code>/2</code> buckets, so a percentile is accurate to
+ * about 6 percent over the whole range from nanoseconds to minutes.
+ * Recording a value only increments a counter, there is no allocation
+ * and the work does not depend on the number of recorded values.
+ * <p>
+ * The histogram has a single writer, the thread that records the values.
+ * Any thread can read it, and while values are recorded, the counts of the
+ * buckets can be slightly behind the total count.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public class LatencyHistogram
+{
+    /**
+     * Number of buckets per power of two of the smallest values.
+     */
+    public static final int SUB_BUCKETS = 32;
+
+    /**
+     * Creates an empty histogram.
+     *
+     * @param name  the name of the measured durations
+     */
+    public LatencyHistogram(String name)
+    {
+        this.name = name;
+        counts    = new long[indexOf(MAX_VALUE) + 1];
+        reset();
+    }
+
+    /**
+     * Gets the name of the measured durations.
+     *
+     * @return the name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos  the duration in ns (larger values than about 18 minutes count as the maximum)
+     */
+    public void record(long nanos)
+    {
+        long value = Math.min(Math.max(0, nanos), MAX_VALUE);
+        counts[indexOf(value)]++;
+        total += value;
+        if ( value > max ) max = value;
+        // last, so a reader that sees the count sees the buckets
+        count++;
+    }
+
+    /**
+     * Discards all recorded durations.
+     * Durations recorded by another thread at the same time may be lost or counted partially.
+     */
+    public void reset()
+    {
+        count = 0;
+        total = 0;
+        max   = 0;
+        for ( int i = 0 ; i < counts.length ; i++ )
+        {
+            counts[i] = 0;
+        }
+    }
+
+    /**
+     * Gets the number of recorded durations.
+     *
+     * @return the number of durations
+     */
+    public long getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Gets the total of the recorded durations.
+     *
+     * @return the total duration in ms
+     */
+    public double getTotalTime()
+    {
+        return total / 1e6;
+    }
+
+    /**
+     * Gets the average of the recorded durations.
+     *
+     * @return the average duration in ms
+     */
+    public double getAverageTime()
+    {
+        long n = count;
+        return (n > 0) ? total / 1e6 / n : 0;
+    }
+
+    /**
+     * Gets the maximum of the recorded durations (exact, not rounded to a bucket).
+     *
+     * @return the maximum duration in ms
+     */
+    public double getMaxTime()
+    {
+        return max / 1e6;
+    }
+
+    /**
+     * Gets the duration that a percentage of the recorded durations are not longer than.
+     * The result is the upper end of the bucket that contains the percentile,
+     * but not more than the maximum.
+     *
+     * @param percentile  the percentage (0...100)
+     * @return the duration in ms or 0 if no durations have been recorded
+     */
+    public double getPercentile(double percentile)
+    {
+        long n = count;
+        if ( n == 0 ) return 0;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * n));
+        long seen = 0;
+        for ( int i = 0 ; i < counts.length ; i++ )
+        {
+            seen += counts[i];
+            if ( seen >= rank )
+            {
+                return Math.min(highestValueOf(i), max) / 1e6;
+            }
+        }
+        return max / 1e6;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s: %d, avg %.3f ms, p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms",
+                             name, count, getAverageTime(),
+                             getPercentile(50), getPercentile(99), getPercentile(99.9), getMaxTime());
+    }
+
+    /**
+     * Calculates the bucket of a value.
+     * Values below {@link #SUB_BUCKETS} have a bucket each, above that,
+     * the bucket is given by the highest bits of the value.
+     *
+     * @param value  the value
+     * @return the bucket index
+     */
+    private static int indexOf(long value)
+    {
+        if ( value < SUB_BUCKETS ) return (int) value;
+        // number of bits below the highest SUB_BITS bits
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        int sub   = (int) (value >>> shift) - SUB_BUCKETS / 2;
+        return SUB_BUCKETS + (shift - 1) * (SUB_BUCKETS / 2) + sub;
+    }
+
+    /**
+     * Calculates the largest value of a bucket.
+     *
+     * @param index  the bucket index
+     * @return the largest value that falls into the bucket
+     */
+    private static long highestValueOf(int index)
+    {
+        if ( index < SUB_BUCKETS ) return index;
+        int shift = (index - SUB_BUCKETS) / (SUB_BUCKETS / 2) + 1;
+        int sub   = (index - SUB_BUCKETS) % (SUB_BUCKETS / 2) + SUB_BUCKETS / 2;
+        return ((long) (sub + 1) << shift) - 1;
+    }
+
+    private final String  name;
+    private final long[]  counts;
+    private volatile long count;
+    private volatile long total, max;
+
+    private static final int  SUB_BITS  = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+    // about 18 minutes
+    private static final long MAX_VALUE = (1L << 40) - 1;
+}
@@ -1,14 +1,18 @@
 package analyser;
 
 import ddf.minim.analysis.FFT;
+import java.util.EnumSet;
+import java.util.Set;
 
 /**
  * FFT that uses the maximum of a spectrum band instead of the average.
  * 
  * @author  Stefan Marks
  * @version 1.0 - 15.06.2013: Created
+ * @version 1.1 - 17.10.2026: Multi-channel analysis with packed stereo FFT
+ *                            Precomputed band table for log averages
  */
-public class MaxFFT extends FFT
+public class MaxFFT extends FFT implements FFTEngine
 {
   /**
    * Constructs an FFT that will accept sample buffers that are
@@ -24,6 +28,84 @@ public class MaxFFT extends FFT
   public MaxFFT(int timeSize, float sampleRate)
   {
     super(timeSize, sampleRate);
+    channelSpectrum = new float[Channel.values().length][];
+    channelAverages = new float[Channel.values().length][];
+    spectrumBuffers = new float[Channel.values().length][];
+    averageBuffers  = new float[Channel.values().length][];
+    channels        = EnumSet.of(Channel.LEFT);
+    bandTable       = null;
+    reduction       = BandTable.Reduction.MAX;
+  }
+
+  /**
+   * Sets the number of averages used when computing the spectrum based on the
+   * minimum bandwidth for an octave and the number of bands per octave.
+   * The spectrum bin ranges of the bands are calculated once here,
+   * instead of for every band on every transform.
+   *
+   * @param minBandwidth
+   *          the minimum bandwidth used for an octave
+   * @param bandsPerOctave
+   *          how many bands to split each octave into
+   */
+  @Override
+  public void logAverages(int minBandwidth, int bandsPerOctave)
+  {
+    super.logAverages(minBandwidth, bandsPerOctave);
+    bandTable = BandTable.createLogarithmic(timeSize, sampleRate, minBandwidth, bandsPerOctave);
+  }
+
+  @Override
+  public void linAverages(int numAvg)
+  {
+    super.linAverages(numAvg);
+    bandTable = null;
+  }
+
+  @Override
+  public void noAverages()
+  {
+    super.noAverages();
+    bandTable = null;
+  }
+
+  @Override
+  public BandTable getBandTable()
+  {
+    return bandTable;
+  }
+
+  @Override
+  public BandTable.Reduction getBandReduction()
+  {
+    return reduction;
+  }
+
+  @Override
+  public void setBandReduction(BandTable.Reduction reduction)
+  {
+    this.reduction = reduction;
+  }
+
+  @Override
+  protected void fillSpectrum()
+  {
+    if ( bandTable == null )
+    {
+      super.fillSpectrum();
+      return;
+    }
+    for ( int i = 0 ; i < spectrum.length ; i++ )
+    {
+      spectrum[i] = (float) Math.sqrt(real[i] * real[i] + imag[i] * imag[i]);
+    }
+    bandTable.reduce(spectrum, averages, reduction);
+  }
+
+  @Override
+  public String getName()
+  {
+    return "Minim";
   }
   
   /**
@@ -48,4 +130,169 @@ public class MaxFFT extends FFT
     }
     return max;
   }
+
+  /**
+   * Performs a forward transform on one or more channels of a stereo signal.
+   * A single channel is transformed with a real FFT.
+   * For more channels, left and right are packed into the real and imaginary
+   * part of one complex FFT and the channel spectra are separated afterwards,
+   * so a stereo analysis costs about the same as a mono one.
+   * <p>
+   * The spectrum of the first channel of the set is also available through
+   * {@link #getBand(int)} and {@link #getAvg(int)}.
+   *
+   * @param left      the samples of the left channel (will be windowed in place)
+   * @param right     the samples of the right channel (will be windowed in place)
+   * @param channels  the channels to calculate the spectrum for
+   */
+  @Override
+  public void forward(float[] left, float[] right, Set<Channel> channels)
+  {
+    this.channels = channels;
+    for ( int c = 0 ; c < channelSpectrum.length ; c++ )
+    {
+      channelSpectrum[c] = null;
+      channelAverages[c] = null;
+    }
+
+    Channel primary = channels.iterator().next();
+    if ( channels.size() == 1 )
+    {
+      float[] samples = left;
+      switch ( primary )
+      {
+        case RIGHT:
+          samples = right;
+          break;
+        case MID:
+          for ( int i = 0 ; i < left.length ; i++ ) { left[i] = 0.5f * (left[i] + right[i]); }
+          break;
+        case SIDE:
+          for ( int i = 0 ; i < left.length ; i++ ) { left[i] = 0.5f * (left[i] - right[i]); }
+          break;
+        default:
+          break;
+      }
+      forward(samples);
+    }
+    else
+    {
+      doWindow(left);
+      doWindow(right);
+      // left in the real part, right in the imaginary part
+      forward(left, right);
+
+      for ( Channel channel : channels )
+      {
+        int     c    = channel.ordinal();
+        float[] spec = spectrum;
+        float[] avg  = averages;
+        if ( channel != primary )
+        {
+          // all other channels use their own buffers
+          spectrumBuffers[c] = spec = ensureSize(spectrumBuffers[c], spectrum.length);
+          averageBuffers[c]  = avg  = ensureSize(averageBuffers[c],  averages.length);
+        }
+        unpackChannel(channel, spec);
+        calcAverages(spec, avg);
+        channelSpectrum[c] = spec;
+        channelAverages[c] = avg;
+      }
+    }
+
+    channelSpectrum[primary.ordinal()] = spectrum;
+    channelAverages[primary.ordinal()] = averages;
+  }
+
+  /**
+   * Gets the set of channels that the last forward transform was run on.
+   *
+   * @return the set of analysed channels
+   */
+  @Override
+  public Set<Channel> getChannels()
+  {
+    return channels;
+  }
+
+  /**
+   * Gets the spectrum of a specific channel calculated by the last call of
+   * {@link #forward(float[], float[], Set)}.
+   *
+   * @param channel  the channel to get the spectrum for
+   * @return the spectrum amplitudes or <code>null</code> if the channel was not analysed
+   */
+  @Override
+  public float[] getSpectrum(Channel channel)
+  {
+    return channelSpectrum[channel.ordinal()];
+  }
+
+  /**
+   * Gets the spectrum averages of a specific channel calculated by the last call of
+   * {@link #forward(float[], float[], Set)}.
+   *
+   * @param channel  the channel to get the averages for
+   * @return the spectrum averages or <code>null</code> if the channel was not analysed
+   */
+  @Override
+  public float[] getAverages(Channel channel)
+  {
+    return channelAverages[channel.ordinal()];
+  }
+
+  /**
+   * Separates the spectrum of a channel from the packed complex FFT result
+   * and calculates the amplitudes.
+   *
+   * @param channel  the channel to separate
+   * @param spec     the array to store the amplitudes in
+   */
+  private void unpackChannel(Channel channel, float[] spec)
+  {
+    for ( int k = 0 ; k < spec.length ; k++ )
+    {
+      int   n  = (k == 0) ? 0 : timeSize - k;
+      float zr = real[k], zi = imag[k];
+      float nr = real[n], ni = imag[n];
+      // L = (Z[k] + conj(Z[N-k])) / 2, R = (Z[k] - conj(Z[N-k])) / 2i
+      float lr = 0.5f * (zr + nr), li = 0.5f * (zi - ni);
+      float rr = 0.5f * (zi + ni), ri = 0.5f * (nr - zr);
+      float cr, ci;
+      switch ( channel )
+      {
+        case RIGHT: cr = rr;                ci = ri;                break;
+        case MID:   cr = 0.5f * (lr + rr);  ci = 0.5f * (li + ri);  break;
+        case SIDE:  cr = 0.5f * (lr - rr);  ci = 0.5f * (li - ri);  break;
+        default:    cr = lr;                ci = li;                break;
+      }
+      spec[k] = (float) Math.sqrt(cr * cr + ci * ci);
+    }
+  }
+
+  /**
+   * Calculates the logarithmic averages of a spectrum
+   * with the band table that {@link #logAverages(int, int)} defines.
+   *
+   * @param spec  the spectrum to average
+   * @param avg   the array to store the averages in
+   */
+  private void calcAverages(float[] spec, float[] avg)
+  {
+    if ( bandTable != null )
+    {
+      bandTable.reduce(spec, avg, reduction);
+    }
+  }
+
+  private static float[] ensureSize(float[] array, int size)
+  {
+    return ((array != null) && (array.length == size)) ? array : new float[size];
+  }
+
+  private final float[][] channelSpectrum, channelAverages;
+  private final float[][] spectrumBuffers, averageBuffers;
+  private Set<Channel>    channels;
+  private BandTable       bandTable;
+  private volatile BandTable.Reduction reduction;
 }
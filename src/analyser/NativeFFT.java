@@ -0,0 +1,380 @@
+package analyser;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Allocation-free FFT engine with a Hann window and logarithmic band averages.
+ * <p>
+ * The band layout, window values and bin mapping are identical to
+ * {@link MaxFFT} with <code>logAverages()</code> and a <code>HannWindow</code>.
+ * A single channel is transformed as a real signal through a complex FFT of
+ * half the size, two or more channels through one complex FFT with left and
+ * right packed into the real and imaginary part.
+ * The complex FFT uses fused radix-2<sup>2</sup> (radix-4) butterflies
+ * on precomputed twiddle and bit reversal tables.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public class NativeFFT implements FFTEngine
+{
+    /**
+     * Creates a new FFT engine.
+     *
+     * @param timeSize        the length of the sample buffers (power of two, at least 4)
+     * @param sampleRate      the sample rate of the audio
+     * @param minBandwidth    the minimum bandwidth of an octave in Hz
+     * @param bandsPerOctave  the number of bands per octave
+     */
+    public NativeFFT(int timeSize, float sampleRate, int minBandwidth, int bandsPerOctave)
+    {
+        if ( (timeSize < 4) || ((timeSize & (timeSize - 1)) != 0) )
+        {
+            throw new IllegalArgumentException("FFT: timeSize must be a power of two.");
+        }
+        this.timeSize   = timeSize;
+        this.sampleRate = (int) sampleRate;
+
+        // Hann window, calculated exactly like minim's HannWindow
+        window = new float[timeSize];
+        for ( int i = 0 ; i < timeSize ; i++ )
+        {
+            window[i] = 0.5f * (1f - (float) Math.cos(TWO_PI * i / (timeSize - 1f)));
+        }
+
+        // twiddle factors W_N^k = exp(-2*pi*i*k/N) for k = 0...N/2
+        twiddleRe = new float[timeSize / 2 + 1];
+        twiddleIm = new float[timeSize / 2 + 1];
+        for ( int k = 0 ; k <= timeSize / 2 ; k++ )
+        {
+            double phi = 2 * Math.PI * k / timeSize;
+            twiddleRe[k] = (float)  Math.cos(phi);
+            twiddleIm[k] = (float) -Math.sin(phi);
+        }
+
+        reverseFull = buildReverseTable(timeSize);
+        reverseHalf = buildReverseTable(timeSize / 2);
+        re = new float[timeSize];
+        im = new float[timeSize];
+
+        bandTable = BandTable.createLogarithmic(timeSize, sampleRate, minBandwidth, bandsPerOctave);
+        reduction = BandTable.Reduction.MAX;
+
+        channelSpectrum = new float[Channel.values().length][];
+        channelAverages = new float[Channel.values().length][];
+        spectrumBuffers = new float[Channel.values().length][];
+        averageBuffers  = new float[Channel.values().length][];
+        channels        = EnumSet.of(Channel.LEFT);
+    }
+
+    @Override
+    public String getName()
+    {
+        return "Native";
+    }
+
+    @Override
+    public int timeSize()
+    {
+        return timeSize;
+    }
+
+    @Override
+    public int specSize()
+    {
+        return timeSize / 2 + 1;
+    }
+
+    @Override
+    public int avgSize()
+    {
+        return bandTable.getBandCount();
+    }
+
+    @Override
+    public int freqToIndex(float freq)
+    {
+        return BandTable.freqToIndex(freq, timeSize, sampleRate);
+    }
+
+    @Override
+    public float getAverageCenterFrequency(int i)
+    {
+        return bandTable.getCenterFrequency(i);
+    }
+
+    @Override
+    public BandTable getBandTable()
+    {
+        return bandTable;
+    }
+
+    @Override
+    public BandTable.Reduction getBandReduction()
+    {
+        return reduction;
+    }
+
+    @Override
+    public void setBandReduction(BandTable.Reduction reduction)
+    {
+        this.reduction = reduction;
+    }
+
+    @Override
+    public void forward(float[] left, float[] right, Set<Channel> channels)
+    {
+        this.channels = channels;
+        for ( int c = 0 ; c < channelSpectrum.length ; c++ )
+        {
+            channelSpectrum[c] = null;
+            channelAverages[c] = null;
+        }
+
+        if ( channels.size() == 1 )
+        {
+            Channel channel = channels.iterator().next();
+            float[] samples = left;
+            switch ( channel )
+            {
+                case RIGHT:
+                    samples = right;
+                    break;
+                case MID:
+                    for ( int i = 0 ; i < timeSize ; i++ ) { left[i] = 0.5f * (left[i] + right[i]); }
+                    break;
+                case SIDE:
+                    for ( int i = 0 ; i < timeSize ; i++ ) { left[i] = 0.5f * (left[i] - right[i]); }
+                    break;
+                default:
+                    break;
+            }
+            int     c    = channel.ordinal();
+            float[] spec = getBuffer(spectrumBuffers, c, specSize());
+            transformReal(samples, spec);
+            channelSpectrum[c] = spec;
+            calcAverages(c);
+        }
+        else
+        {
+            transformStereo(left, right);
+            for ( Channel channel : channels )
+            {
+                int     c    = channel.ordinal();
+                float[] spec = getBuffer(spectrumBuffers, c, specSize());
+                unpackChannel(channel, spec);
+                channelSpectrum[c] = spec;
+                calcAverages(c);
+            }
+        }
+    }
+
+    @Override
+    public Set<Channel> getChannels()
+    {
+        return channels;
+    }
+
+    @Override
+    public float[] getSpectrum(Channel channel)
+    {
+        return channelSpectrum[channel.ordinal()];
+    }
+
+    @Override
+    public float[] getAverages(Channel channel)
+    {
+        return channelAverages[channel.ordinal()];
+    }
+
+    /**
+     * Gets a preallocated channel buffer, allocating it on first use.
+     */
+    private static float[] getBuffer(float[][] buffers, int c, int size)
+    {
+        if ( buffers[c] == null )
+        {
+            buffers[c] = new float[size];
+        }
+        return buffers[c];
+    }
+
+    /**
+     * Transforms a windowed real signal of length N through a complex FFT of
+     * length N/2 and stores the amplitudes of bins 0...N/2.
+     *
+     * @param samples  the real input samples
+     * @param spec     the array to store the amplitudes in
+     */
+    private void transformReal(float[] samples, float[] spec)
+    {
+        int half = timeSize / 2;
+        // even samples into the real part, odd samples into the imaginary part,
+        // windowed and in bit reversed order
+        for ( int i = 0 ; i < half ; i++ )
+        {
+            int j = reverseHalf[i] << 1;
+            re[i] = samples[j]     * window[j];
+            im[i] = samples[j + 1] * window[j + 1];
+        }
+        transformComplex(half);
+
+        // separate the even and odd spectra and combine them
+        for ( int k = 0 ; k <= half ; k++ )
+        {
+            int   a  = (k == half) ? 0 : k;
+            int   b  = (k == 0)    ? 0 : half - k;
+            float zr = re[a], zi = im[a];
+            float nr = re[b], ni = im[b];
+            // E = (Z[k] + conj(Z[M-k])) / 2, O = (Z[k] - conj(Z[M-k])) / 2i
+            float er = 0.5f * (zr + nr), ei = 0.5f * (zi - ni);
+            float or = 0.5f * (zi + ni), oi = 0.5f * (nr - zr);
+            // X[k] = E + W_N^k * O
+            float wr = twiddleRe[k], wi = twiddleIm[k];
+            float xr = er + (wr * or - wi * oi);
+            float xi = ei + (wr * oi + wi * or);
+            spec[k] = (float) Math.sqrt(xr * xr + xi * xi);
+        }
+    }
+
+    /**
+     * Transforms left and right channel packed into one complex signal.
+     *
+     * @param left   the left channel samples
+     * @param right  the right channel samples
+     */
+    private void transformStereo(float[] left, float[] right)
+    {
+        for ( int i = 0 ; i < timeSize ; i++ )
+        {
+            int j = reverseFull[i];
+            re[i] = left[j]  * window[j];
+            im[i] = right[j] * window[j];
+        }
+        transformComplex(timeSize);
+    }
+
+    /**
+     * Separates the spectrum of a channel from the packed complex FFT result
+     * and calculates the amplitudes.
+     *
+     * @param channel  the channel to separate
+     * @param spec     the array to store the amplitudes in
+     */
+    private void unpackChannel(Channel channel, float[] spec)
+    {
+        for ( int k = 0 ; k < spec.length ; k++ )
+        {
+            int   n  = (k == 0) ? 0 : timeSize - k;
+            float zr = re[k], zi = im[k];
+            float nr = re[n], ni = im[n];
+            // L = (Z[k] + conj(Z[N-k])) / 2, R = (Z[k] - conj(Z[N-k])) / 2i
+            float lr = 0.5f * (zr + nr), li = 0.5f * (zi - ni);
+            float rr = 0.5f * (zi + ni), ri = 0.5f * (nr - zr);
+            float cr, ci;
+            switch ( channel )
+            {
+                case RIGHT: cr = rr;                ci = ri;                break;
+                case MID:   cr = 0.5f * (lr + rr);  ci = 0.5f * (li + ri);  break;
+                case SIDE:  cr = 0.5f * (lr - rr);  ci = 0.5f * (li - ri);  break;
+                default:    cr = lr;                ci = li;                break;
+            }
+            spec[k] = (float) Math.sqrt(cr * cr + ci * ci);
+        }
+    }
+
+    /**
+     * In-place complex FFT of the bit reversed data in the real and imaginary
+     * arrays. Pairs of radix-2 stages are fused into radix-4 butterflies,
+     * a single radix-2 stage is done first if the number of stages is odd.
+     *
+     * @param size  the transform length (power of two)
+     */
+    private void transformComplex(int size)
+    {
+        int h = 1;
+        if ( (Integer.numberOfTrailingZeros(size) & 1) != 0 )
+        {
+            for ( int i = 0 ; i < size ; i += 2 )
+            {
+                float ur = re[i], ui = im[i];
+                float vr = re[i + 1], vi = im[i + 1];
+                re[i] = ur + vr;  im[i] = ui + vi;
+                re[i + 1] = ur - vr;  im[i + 1] = ui - vi;
+            }
+            h = 2;
+        }
+
+        for ( ; 4 * h <= size ; h *= 4 )
+        {
+            int step1 = timeSize / (2 * h); // W_2h^j = W_N^(j * N / 2h)
+            int step2 = timeSize / (4 * h); // W_4h^j = W_N^(j * N / 4h)
+            for ( int j = 0 ; j < h ; j++ )
+            {
+                float w1r = twiddleRe[j * step1], w1i = twiddleIm[j * step1];
+                float w2r = twiddleRe[j * step2], w2i = twiddleIm[j * step2];
+                for ( int a = j ; a < size ; a += 4 * h )
+                {
+                    int b = a + h, c = b + h, d = c + h;
+                    // first stage: (a, b) and (c, d) with W_2h^j
+                    float tr = w1r * re[b] - w1i * im[b];
+                    float ti = w1r * im[b] + w1i * re[b];
+                    float a1r = re[a] + tr, a1i = im[a] + ti;
+                    float b1r = re[a] - tr, b1i = im[a] - ti;
+                    tr = w1r * re[d] - w1i * im[d];
+                    ti = w1r * im[d] + w1i * re[d];
+                    float c1r = re[c] + tr, c1i = im[c] + ti;
+                    float d1r = re[c] - tr, d1i = im[c] - ti;
+                    // second stage: (a, c) with W_4h^j, (b, d) with W_4h^(j+h) = -i * W_4h^j
+                    tr = w2r * c1r - w2i * c1i;
+                    ti = w2r * c1i + w2i * c1r;
+                    re[a] = a1r + tr;  im[a] = a1i + ti;
+                    re[c] = a1r - tr;  im[c] = a1i - ti;
+                    float sr = w2r * d1r - w2i * d1i;
+                    float si = w2r * d1i + w2i * d1r;
+                    tr =  si;
+                    ti = -sr;
+                    re[b] = b1r + tr;  im[b] = b1i + ti;
+                    re[d] = b1r - tr;  im[d] = b1i - ti;
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates the band averages of a channel spectrum.
+     *
+     * @param c  the ordinal of the channel
+     */
+    private void calcAverages(int c)
+    {
+        float[] avg = getBuffer(averageBuffers, c, bandTable.getBandCount());
+        bandTable.reduce(channelSpectrum[c], avg, reduction);
+        channelAverages[c] = avg;
+    }
+
+    private static int[] buildReverseTable(int size)
+    {
+        int[] reverse = new int[size];
+        for ( int limit = 1, bit = size / 2 ; limit < size ; limit <<= 1, bit >>= 1 )
+        {
+            for ( int i = 0 ; i < limit ; i++ )
+            {
+                reverse[i + limit] = reverse[i] + bit;
+            }
+        }
+        return reverse;
+    }
+
+    private static final float TWO_PI = (float) (2 * Math.PI);
+
+    private final int       timeSize, sampleRate;
+    private final float[]   window, twiddleRe, twiddleIm, re, im;
+    private final int[]     reverseFull, reverseHalf;
+    private final BandTable bandTable;
+    private volatile BandTable.Reduction reduction;
+    private final float[][] channelSpectrum, channelAverages;
+    private final float[][] spectrumBuffers, averageBuffers;
+    private Set<Channel>    channels;
+}
@@ -0,0 +1,112 @@
+package analyser;
+
+import java.util.Arrays;
+
+/**
+ * Circular buffer for the samples of one audio channel.
+ *
+ * New sample blocks are written at the head of the buffer without shifting
+ * the existing data. Samples are addressed by their absolute position in the
+ * stream, so analysis windows can be extracted even when they wrap around
+ * the end of the internal array.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public class SampleRingBuffer
+{
+    /**
+     * Creates a new sample ring buffer.
+     *
+     * @param size  the minimum number of samples the buffer has to retain
+     */
+    public SampleRingBuffer(int size)
+    {
+        int capacity = Integer.highestOneBit(Math.max(1, size));
+        if ( capacity < size )
+        {
+            capacity <<= 1;
+        }
+        buffer   = new float[capacity];
+        mask     = capacity - 1;
+        writePos = 0;
+    }
+
+    /**
+     * Gets the number of samples that the buffer retains.
+     *
+     * @return the capacity of the buffer
+     */
+    public int getCapacity()
+    {
+        return buffer.length;
+    }
+
+    /**
+     * Gets the absolute stream position of the next sample to be written.
+     * This is also the total number of samples written so far.
+     *
+     * @return the write position
+     */
+    public long getWritePosition()
+    {
+        return writePos;
+    }
+
+    /**
+     * Clears the buffer and resets the write position.
+     */
+    public void reset()
+    {
+        Arrays.fill(buffer, 0);
+        writePos = 0;
+    }
+
+    /**
+     * Appends a block of samples to the buffer.
+     *
+     * @param samples  the array with the samples to append
+     * @param offset   the index of the first sample to append
+     * @param count    the number of samples to append
+     */
+    public void write(float[] samples, int offset, int count)
+    {
+        // anything older than the capacity would be overwritten straight away
+        int skip = Math.max(0, count - buffer.length);
+        int idx  = (int) ((writePos + skip) & mask);
+        int len  = count - skip;
+        int part = Math.min(len, buffer.length - idx);
+        System.arraycopy(samples, offset + skip, buffer, idx, part);
+        System.arraycopy(samples, offset + skip + part, buffer, 0, len - part);
+        writePos += count;
+    }
+
+    /**
+     * Copies a section of samples out of the buffer.
+     *
+     * @param position  the absolute stream position of the first sample to copy
+     * @param target    the array to copy the samples into
+     * @param count     the number of samples to copy
+     */
+    public void read(long position, float[] target, int count)
+    {
+        int idx  = (int) (position & mask);
+        int part = Math.min(count, buffer.length - idx);
+        System.arraycopy(buffer, idx, target, 0, part);
+        System.arraycopy(buffer, 0, target, part, count - part);
+    }
+
+    /**
+     * Copies the most recent samples in chronological order into an array.
+     *
+     * @param target  the array to fill, the last entry receiving the newest sample
+     */
+    public void linearise(float[] target)
+    {
+        read(writePos - target.length, target, target.length);
+    }
+
+    private final float[] buffer;
+    private final int     mask;
+    private long          writePos;
+}
@@ -3,14 +3,15 @@ package analyser;
 import ddf.minim.AudioListener;
 import ddf.minim.AudioSource;
 import ddf.minim.Playable;
-import ddf.minim.analysis.FFT;
-import ddf.minim.analysis.HannWindow;
 import detector.Feature;
 import detector.FeatureDetector;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,6 +20,20 @@ import java.util.logging.Logger;
  * 
  * @author  Stefan Marks
  * @version 1.0 - 12.05.2013: Created
+ * @version 1.1 - 17.10.2026: Circular input sample buffer
+ *                            Selectable analysis channels
+ *                            Selectable FFT engine
+ *                            Configurable band layout and band reduction
+ *                            Optional on-demand shaping of the raw spectrum
+ *                            Lock-free spectrum history with frame numbers
+ *                            Columnar spectrum history store
+ *                            Analysis of sample streams without playback
+ *                            Stream offsets, detector warm-up and publishing of frames
+ *                            Detector stage with shared band sums and fixed order
+ *                            Optional detector worker threads
+ *                            Sample rate query
+ *                            Run time metrics of the analysis steps
+ *                            Flight recorder events of the analysis steps
  */
 public class SpectrumAnalyser implements AudioListener
 {
@@ -37,21 +52,47 @@ public class SpectrumAnalyser implements AudioListener
      * @param historySize       the size of the spectrum history
      */
     public SpectrumAnalyser(int analyseFrequency, int historySize)
+    {
+        this(analyseFrequency, historySize, SpectrumStore.Layout.TIME_MAJOR, false);
+    }
+    
+    /**
+     * Creates a new Spectrum Analyser instance.
+     * 
+     * @param analyseFrequency  the frequency in Hz for analysing the waveforms
+     * @param historySize       the size of the spectrum history
+     * @param historyLayout     the memory layout of the spectrum history
+     * @param offHeapHistory    <code>true</code> to keep the spectrum history outside of the Java heap,
+     *                          <code>false</code> to keep it on the heap
+     */
+    public SpectrumAnalyser(int analyseFrequency, int historySize, 
+                            SpectrumStore.Layout historyLayout, boolean offHeapHistory)
     {
         this.analyseFrequency = analyseFrequency;
         audioSource = null;
-        dataRawL = dataRawR = null; 
+        streamLength = -1;
+        streamStart  = 0;
+        warmUpFrames = 0;
+        bufferL = bufferR = null;
+        linearL = linearR = null;
         fft = null;
+        fftEngineType = FFTEngine.Type.MINIM;
+        bandsPerOctave = 8;
+        bandReduction  = BandTable.Reduction.MAX;
+        rawShapedOnDemand = false;
+        channels = Collections.unmodifiableSet(EnumSet.of(Channel.LEFT));
         
-        history = new SpectrumInfo[historySize];
-        for ( int i = 0 ; i < history.length ; i++ )
-        {
-            history[i] = new SpectrumInfo();
-        }
-        historyIdx = 0;
+        history = new SpectrumHistory(historySize, historyLayout, offHeapHistory);
         
-        featureDetectors = new HashSet<FeatureDetector>();        
-        listeners = new HashSet<Listener>();
+        detectorStage = new DetectorStage(this, history);
+        listeners = new ConcurrentHashMap<Listener, LatencyHistogram>();
+        
+        metrics = new AnalysisMetrics(this, listeners);
+        timeCopy      = metrics.getHistogram(AnalysisMetrics.Stage.COPY);
+        timeFFT       = metrics.getHistogram(AnalysisMetrics.Stage.FFT);
+        timeSpectrum  = metrics.getHistogram(AnalysisMetrics.Stage.SPECTRUM);
+        timeDetectors = metrics.getHistogram(AnalysisMetrics.Stage.DETECTORS);
+        timeListeners = metrics.getHistogram(AnalysisMetrics.Stage.LISTENERS);
     }
     
     /**
@@ -59,11 +100,7 @@ public class SpectrumAnalyser implements AudioListener
      */
     private void resetHistory()
     {
-        for ( SpectrumInfo info : history )
-        {
-            info.reset();
-        }
-        historyIdx = 0;
+        history.reset();
     }
     
     /**
@@ -73,33 +110,85 @@ public class SpectrumAnalyser implements AudioListener
      */
     public void attachToAudio(AudioSource as)
     {
-        audioSource = as;
+        audioSource  = as;
+        streamLength = -1;
+        streamStart  = 0;
         audioSource.addListener(this);
-        
-        float rate = audioSource.sampleRate();
+        setupAnalysis(audioSource.sampleRate(), audioSource.bufferSize());
+    }
+    
+    /**
+     * Attaches the spectrum analyser to a stream of samples without playback,
+     * e.g., a decoded audio file. The samples are passed to the analyser
+     * by calling {@link #samples(float[], float[])} directly, 
+     * as fast as they are available.
+     * Positions are calculated from the number of samples instead of
+     * the playback position.
+     * 
+     * @param sampleRate  the sample rate of the stream
+     * @param bufferSize  the maximum number of samples per call of {@link #samples(float[], float[])}
+     * @param length      the length of the stream in samples or -1 if unknown
+     */
+    public void attachToStream(float sampleRate, int bufferSize, long length)
+    {
+        attachToStream(sampleRate, bufferSize, length, 0);
+    }
+    
+    /**
+     * Attaches the spectrum analyser to a part of a stream of samples without playback,
+     * e.g., a chunk of a decoded audio file.
+     * The first sample passed to the analyser is the sample at the start position,
+     * so positions are calculated relative to the start of the whole stream.
+     * 
+     * @param sampleRate     the sample rate of the stream
+     * @param bufferSize     the maximum number of samples per call of {@link #samples(float[], float[])}
+     * @param length         the length of the whole stream in samples or -1 if unknown
+     * @param startPosition  the index of the first sample in the whole stream
+     */
+    public void attachToStream(float sampleRate, int bufferSize, long length, long startPosition)
+    {
+        audioSource  = null;
+        streamLength = length;
+        streamStart  = startPosition;
+        setupAnalysis(sampleRate, bufferSize);
+    }
+    
+    /**
+     * Creates the sample buffers and the FFT engine.
+     * 
+     * @param rate        the sample rate
+     * @param bufferSize  the maximum number of samples per block
+     */
+    private void setupAnalysis(float rate, int bufferSize)
+    {
+        sampleRate = rate;
         float minFreq = 20;
         // calculate minimum FFT buffer size 
         // to reliably measure a whole phase of a specific minimum frequency
         int minFftBufferSize = 1 << (int) (Math.log(rate / minFreq) / Math.log(2));
         // then add the sample buffer size
-        int inputBufferSize = minFftBufferSize + audioSource.bufferSize();
+        int inputBufferSize = minFftBufferSize + bufferSize;
         LOG.log(Level.INFO, 
                 "Attached to sound source (Sample Rate {0}, Playback buffer size {1}, FFT buffer size {2}, Total buffer size {3})", 
-                new Object[] {rate, audioSource.bufferSize(), minFftBufferSize, inputBufferSize});
+                new Object[] {rate, bufferSize, minFftBufferSize, inputBufferSize});
         
-        dataRawL = new float[inputBufferSize];
-        dataRawR = new float[inputBufferSize];
+        bufferL  = new SampleRingBuffer(inputBufferSize);
+        bufferR  = new SampleRingBuffer(inputBufferSize);
+        linearL  = new float[inputBufferSize];
+        linearR  = new float[inputBufferSize];
+        linearPos = -1;
         dataFftL = new float[minFftBufferSize];
         dataFftR = new float[minFftBufferSize];
-        // data enters from the end of the buffer, so put index at end
-        dataIdx = inputBufferSize; 
+        // the first analysis window starts with the first sample
+        dataPos = 0; 
         // calculate sample steps for desired analysis frequency
-        dataIdxStep = (int) (audioSource.sampleRate() / analyseFrequency);
+        dataIdxStep = (int) (rate / analyseFrequency);
                 
-        fft = new MaxFFT(minFftBufferSize, rate);
-        fft.logAverages(100, 8);
-        fft.window(new HannWindow());
+        fft = fftEngineType.create(minFftBufferSize, rate, 100, bandsPerOctave);
+        fft.setBandReduction(bandReduction);
         shaper = SpectrumShaper.LOGARITHMIC;
+        history.configure(fft.avgSize(), fft.specSize());
+        detectorStage.reset();
     }
     
     /**
@@ -122,6 +211,126 @@ public class SpectrumAnalyser implements AudioListener
         this.shaper = shaper;
     }
     
+    /**
+     * Checks if the raw spectrum is only shaped when it is accessed.
+     * 
+     * @return <code>true</code> if the raw spectrum is shaped on demand,
+     *         <code>false</code> if it is shaped for every analysis step
+     */
+    public boolean isRawSpectrumShapedOnDemand()
+    {
+        return rawShapedOnDemand;
+    }
+    
+    /**
+     * Selects if the raw spectrum is shaped for every analysis step or only
+     * when a value is accessed through {@link SpectrumInfo#getIntensityRaw(int)}.
+     * On-demand shaping saves the work for the FFT bins that nobody looks at.
+     * 
+     * @param onDemand  <code>true</code> to shape the raw spectrum on demand,
+     *                  <code>false</code> to shape it for every analysis step
+     */
+    public void setRawSpectrumShapedOnDemand(boolean onDemand)
+    {
+        rawShapedOnDemand = onDemand;
+    }
+    
+    /**
+     * Gets the type of FFT engine that the analyser uses.
+     * 
+     * @return the FFT engine type
+     */
+    public FFTEngine.Type getFFTEngineType()
+    {
+        return fftEngineType;
+    }
+    
+    /**
+     * Sets the type of FFT engine that the analyser uses.
+     * The default is {@link FFTEngine.Type#MINIM},
+     * the allocation-free {@link FFTEngine.Type#NATIVE} engine has to be selected explicitly.
+     * The new engine is used from the next call of {@link #attachToAudio(AudioSource)}.
+     * 
+     * @param type  the FFT engine type
+     */
+    public void setFFTEngineType(FFTEngine.Type type)
+    {
+        fftEngineType = type;
+    }
+    
+    /**
+     * Gets the number of spectrum bands per octave.
+     * 
+     * @return the number of bands per octave
+     */
+    public int getBandsPerOctave()
+    {
+        return bandsPerOctave;
+    }
+    
+    /**
+     * Sets the number of spectrum bands per octave.
+     * The new band layout is used from the next call of {@link #attachToAudio(AudioSource)}.
+     * 
+     * @param bands  the number of bands per octave
+     */
+    public void setBandsPerOctave(int bands)
+    {
+        bandsPerOctave = bands;
+    }
+    
+    /**
+     * Gets the function that reduces the spectrum bins of a band to a single value.
+     * 
+     * @return the band reduction function
+     */
+    public BandTable.Reduction getBandReduction()
+    {
+        return bandReduction;
+    }
+    
+    /**
+     * Sets the function that reduces the spectrum bins of a band to a single value.
+     * 
+     * @param reduction  the band reduction function
+     */
+    public void setBandReduction(BandTable.Reduction reduction)
+    {
+        bandReduction = reduction;
+        if ( fft != null )
+        {
+            fft.setBandReduction(reduction);
+        }
+    }
+    
+    /**
+     * Gets the channels that the analyser calculates the spectrum for.
+     * 
+     * @return the set of analysed channels
+     */
+    public Set<Channel> getChannels()
+    {
+        return channels;
+    }
+    
+    /**
+     * Sets the channels that the analyser calculates the spectrum for.
+     * The first channel (in the order of {@link Channel}) is the primary
+     * channel that is returned by {@link SpectrumInfo#getIntensity(int)}.
+     * A single channel is analysed with one real FFT,
+     * more channels with one packed complex FFT.
+     * 
+     * @param channels  the set of channels to analyse
+     */
+    public void setChannels(Set<Channel> channels)
+    {
+        if ( channels.isEmpty() )
+        {
+            throw new IllegalArgumentException("At least one channel must be analysed");
+        }
+        this.channels = Collections.unmodifiableSet(EnumSet.copyOf(channels));
+    }
+    
     /**
      * Checks if the analyser is attached to an audio stream.
      * 
@@ -138,9 +347,12 @@ public class SpectrumAnalyser implements AudioListener
      */
     public void detachFromAudio()
     {
-        if ( audioSource != null )
+        if ( fft != null )
         {
-            ((AudioSource) audioSource).removeListener(this);  
+            if ( audioSource != null )
+            {
+                audioSource.removeListener(this);  
+            }
             fft = null;
             audioSource = null;
             resetHistory();
@@ -156,7 +368,54 @@ public class SpectrumAnalyser implements AudioListener
      */
     public boolean registerFeatureDetector(FeatureDetector fd)
     {
-        return featureDetectors.add(fd);
+        return detectorStage.add(fd);
+    }
+    
+    /**
+     * Gets the stage that runs the feature detectors.
+     * 
+     * @return the detector stage
+     */
+    public DetectorStage getDetectorStage()
+    {
+        return detectorStage;
+    }
+    
+    /**
+     * Gets the number of frames that the feature detectors need 
+     * before they detect the same features as in an analysis of the whole stream.
+     * This covers the history that the detectors look at
+     * and the frames that are changed later because of the detection delay.
+     * 
+     * @return the number of warm-up frames or {@link FeatureDetector#UNBOUNDED_WARM_UP}
+     *         if a detector depends on the whole stream
+     */
+    public int getDetectorWarmUp()
+    {
+        return detectorStage.getWarmUp();
+    }
+    
+    /**
+     * Gets the number of frames after attaching during which the feature detectors
+     * run without setting features.
+     * 
+     * @return the number of warm-up frames
+     */
+    public long getWarmUpFrames()
+    {
+        return warmUpFrames;
+    }
+    
+    /**
+     * Sets the number of frames after attaching during which the feature detectors
+     * run without setting features, e.g., the frames that a chunk of a stream 
+     * overlaps with the previous chunk.
+     * 
+     * @param frames  the number of warm-up frames
+     */
+    public void setWarmUpFrames(long frames)
+    {
+        warmUpFrames = Math.max(0, frames);
     }
     
     /**
@@ -167,7 +426,7 @@ public class SpectrumAnalyser implements AudioListener
     public List<Feature> getDetectedFeatures()
     {
         List<Feature> features = new LinkedList<Feature>();
-        for ( FeatureDetector fd : featureDetectors )
+        for ( FeatureDetector fd : detectorStage.getDetectors() )
         {
             features.add(fd.getFeature());
         }
@@ -181,7 +440,7 @@ public class SpectrumAnalyser implements AudioListener
      */
     public int getDetectedFeaturesCount()
     {
-        return featureDetectors.size();
+        return detectorStage.getDetectors().size();
     }
     
     /**
@@ -193,7 +452,7 @@ public class SpectrumAnalyser implements AudioListener
      */
     public boolean unregisterDetector(FeatureDetector fd)
     {
-        return featureDetectors.remove(fd);
+        return detectorStage.remove(fd);
     }
     
     /**
@@ -205,7 +464,7 @@ public class SpectrumAnalyser implements AudioListener
      */
     public boolean registerListener(Listener l)
     {
-        return listeners.add(l);
+        return listeners.putIfAbsent(l, new LatencyHistogram(l.getClass().getName())) == null;
     }
     
     /**
@@ -217,7 +476,17 @@ public class SpectrumAnalyser implements AudioListener
      */
     public boolean unregisterListener(Listener l)
     {
-        return listeners.remove(l);
+        return listeners.remove(l) != null;
+    }
+    
+    /**
+     * Gets the run time metrics of the analysis steps.
+     * 
+     * @return the analysis metrics
+     */
+    public AnalysisMetrics getMetrics()
+    {
+        return metrics;
     }
     
     @Override
@@ -229,7 +498,7 @@ public class SpectrumAnalyser implements AudioListener
     @Override
     public void samples(float[] sampL, float[] sampR)
     {
-        if ( audioSource == null || fft == null ) return;
+        if ( fft == null ) return;
         
         Playable playable = null;
         if ( audioSource instanceof Playable )
@@ -238,82 +507,184 @@ public class SpectrumAnalyser implements AudioListener
             if ( !playable.isPlaying() ) return;
         }
         
-        // shift data in input arrays
-        System.arraycopy(dataRawL, sampL.length, dataRawL, 0, dataRawL.length - sampL.length);
-        System.arraycopy(dataRawR, sampR.length, dataRawR, 0, dataRawR.length - sampR.length);
-        // copy samples into array for analysis
-        System.arraycopy(sampL, 0, dataRawL, dataRawL.length - sampL.length, sampL.length); 
-        System.arraycopy(sampR, 0, dataRawR, dataRawR.length - sampR.length, sampR.length); 
-        // move back the analysis index
-        dataIdx -= sampL.length;
-        
+        // feed the block in portions that the ring buffer can hold 
+        // without overwriting samples of a pending analysis window
+        int maxBlock = bufferL.getCapacity() - dataFftL.length;
+        for ( int offset = 0 ; offset < sampL.length ; offset += maxBlock )
+        {
+            int count = Math.min(maxBlock, sampL.length - offset);
+            bufferL.write(sampL, offset, count);
+            bufferR.write(sampR, offset, count);
+            processBufferedSamples(playable);
+        }
+    }
+    
+    /**
+     * Runs the analysis on all complete windows in the sample buffer.
+     * 
+     * @param playable  the playable audio source or <code>null</code> 
+     *                  if the source is not playable
+     */
+    private void processBufferedSamples(Playable playable)
+    {
+        long hopPeriod = (long) (dataIdxStep * 1e9 / sampleRate);
         // process as much data as possible
-        while ( dataIdx + fft.timeSize() <= dataRawL.length )
+        while ( dataPos + dataFftL.length <= bufferL.getWritePosition() )
         {
-            // copy samples array into FFT array so values can be shaped by the windows
+            // an event is only created when it is recorded
+            FrameEvent event = FRAME_EVENT_CHECK.isEnabled() ? new FrameEvent() : null;
+            if ( event != null ) event.begin();
+            long start = System.nanoTime();
+            
+            // copy samples into FFT array so values can be shaped by the windows
             // without destroying the original samples
-            System.arraycopy(dataRawL, dataIdx, dataFftL, 0, dataFftL.length);
-            // System.arraycopy(dataRawR, dataIdx, dataFftR, 0, dataFftR.length); 
+            Set<Channel> analysisChannels = channels;
+            bufferL.read(dataPos, dataFftL, dataFftL.length);
+            if ( !analysisChannels.equals(LEFT_ONLY) )
+            {
+                bufferR.read(dataPos, dataFftR, dataFftR.length); 
+            }
+            long copied = System.nanoTime();
+            timeCopy.record(copied - start);
             
             // do FFT
-            fft.forward(dataFftL);
+            fft.forward(dataFftL, dataFftR, analysisChannels);
+            long transformed = System.nanoTime();
+            timeFFT.record(transformed - copied);
 
-            // enter dataset into history
-            synchronized(history)
-            {      
+            int   posIdx;
+            float posRel;
+            if ( audioSource == null )
+            {
+                // stream without playback: position of the analysis window
+                long streamPos = streamStart + dataPos;
+                posIdx = (int) Math.round(streamPos * 1000.0 / sampleRate);
+                posRel = (streamLength > 0) ? (float) ((double) streamPos / streamLength) : 0;
+            }
+            else if ( playable != null )
+            {
                 // calculate analysis offset to current playback position
-                int   posOffset = (int) ((dataRawL.length - dataIdx) / audioSource.sampleRate() * 1000);
-                int   posIdx    = (playable != null) ? playable.position() - posOffset : 0;
-                float posRel    = (playable != null) ? (float) posIdx / (float) playable.length() : 0;
-                history[historyIdx].copySpectrumData(posIdx, posRel, this);
+                int posOffset = (int) ((bufferL.getWritePosition() - dataPos) / sampleRate * 1000);
+                posIdx = playable.position() - posOffset;
+                posRel = (float) posIdx / (float) playable.length();
             }
-
-            // run feature detectors
-            for ( FeatureDetector featureDetector : featureDetectors )
+            else
             {
-                if ( featureDetector.detectFeature(this) )
-                {
-                    // feature detected: set bit in corresponding history item
-                    int featureIdx = historyIdx - featureDetector.getDetectionDelay();
-                    if ( featureIdx < 0 ) 
-                    {
-                        featureIdx += history.length;
-                    }
-                    
-                    history[featureIdx].features |= featureDetector.getFeature().getBitmask();
-                }
+                // live input: time of the analysis window since the input was attached
+                posIdx = (int) Math.round(dataPos * 1000.0 / sampleRate);
+                posRel = 0;
             }
             
-            // move analysis window and history index forwards
-            historyIdx = (historyIdx + 1) % history.length;
-            dataIdx += dataIdxStep;
+            // enter dataset into history (it is published after the feature detection)
+            long frame = history.getFrameCount();
+            history.beginWrite().copySpectrumData(posIdx, posRel, this);
+            long stored = System.nanoTime();
+            timeSpectrum.record(stored - transformed);
 
-            // notify listeners
-            for (Listener listener : listeners)
+            // run feature detectors
+            // (they see the history up to the previous frame, the new one is not published yet)
+            detectorStage.run(frame);
+            
+            history.endWrite();
+            
+            // with detector worker threads, the detection starts now
+            detectorStage.frameAnalysed(frame);
+            long detected = System.nanoTime();
+            timeDetectors.record(detected - stored);
+            
+            // move analysis window forwards
+            dataPos += dataIdxStep;
+
+            long end = notifyListeners(detected);
+            metrics.recordStep(start, end, hopPeriod);
+            
+            if ( (event != null) && event.shouldCommit() )
             {
-               listener.analysisUpdated(this);
+                event.frame     = frame;
+                event.position  = posIdx;
+                event.hopPeriod = hopPeriod;
+                event.overrun   = end - start > hopPeriod;
+                event.commit();
             }
         } 
     }
+    
+    /**
+     * Notifies the listeners and records their run times.
+     * 
+     * @param start  the time the notification starts
+     * @return the time the notification finished
+     */
+    private long notifyListeners(long start)
+    {
+        long time = start;
+        for ( Map.Entry<Listener, LatencyHistogram> entry : listeners.entrySet() )
+        {
+            entry.getKey().analysisUpdated(this);
+            long end = System.nanoTime();
+            entry.getValue().record(end - time);
+            time = end;
+        }
+        timeListeners.record(time - start);
+        return time;
+    }
+  
+    /**
+     * Enters a frame that has been analysed elsewhere into the history
+     * and notifies the listeners, as if this analyser had analysed the frame.
+     * The frame gets the next frame number of this analyser,
+     * the feature detectors are not run.
+     * 
+     * @param info      the spectrum information of the frame
+     * @param features  spectrum information with features to set in addition 
+     *                  to the features of the frame or <code>null</code>
+     */
+    public void publishFrame(SpectrumInfo info, SpectrumInfo features)
+    {
+        if ( fft == null )
+        {
+            throw new IllegalStateException("Analyser is not attached to a stream");
+        }
+        
+        history.append(info, features);
+        
+        notifyListeners(System.nanoTime());
+    }
   
     /**
      * Gets the raw audio data for the left channel.
      * 
-     * @return the raw left channel audio data
+     * @return the raw left channel audio data, oldest sample first
      */
     public float[] getAudioDataL()
     {
-        return dataRawL;
+        lineariseAudioData();
+        return linearL;
     }
     
     /**
      * Gets the raw audio data for the right channel.
      * 
-     * @return the raw right channel audio data
+     * @return the raw right channel audio data, oldest sample first
      */
     public float[] getAudioDataR()
     {
-        return dataRawR;
+        lineariseAudioData();
+        return linearR;
+    }
+    
+    /**
+     * Copies the content of the sample ring buffers into the linear arrays
+     * if new samples have arrived since the last call.
+     */
+    private void lineariseAudioData()
+    {
+        if ( (bufferL != null) && (linearPos != bufferL.getWritePosition()) )
+        {
+            bufferL.linearise(linearL);
+            bufferR.linearise(linearR);
+            linearPos = bufferL.getWritePosition();
+        }
     }
     
     /**
@@ -333,11 +704,36 @@ public class SpectrumAnalyser implements AudioListener
      */
     public int getHistorySize()
     {
-        return history.length;
+        return history.getSize();
+    }
+    
+    /**
+     * Gets the number of analysis frames since the analyser was attached.
+     * The most recent frame has the number <code>getFrameCount() - 1</code>.
+     * 
+     * @return the number of analysis frames
+     */
+    public long getFrameCount()
+    {
+        return history.getFrameCount();
+    }
+    
+    /**
+     * Gets the number of 64 bit words with feature bits per analysis frame.
+     * 
+     * @return the number of feature words
+     */
+    public int getFeatureWordCount()
+    {
+        return history.getStore().getFeatureWordCount();
     }
     
     /**
      * Gets the spectrum information for a specific position in history.
+     * <p>
+     * This does not block the analysis thread. The returned data is not copied
+     * though, so listeners that are not called by the analysis thread
+     * should use {@link #copySpectrumInfo(long, SpectrumInfo)}.
      * 
      * @param idx  the index of history (0: most recent)
      * @return the spectrum information 
@@ -345,49 +741,203 @@ public class SpectrumAnalyser implements AudioListener
      */
     public SpectrumInfo getSpectrumInfo(int idx)
     {
-        SpectrumInfo retInfo = null;
-        
-        if ( idx < history.length )
+        return getSpectrumInfoForFrame(history.getFrameNumber(idx));
+    }
+    
+    /**
+     * Gets the spectrum information for a specific analysis frame.
+     * Readers that go through the history from a fixed frame number
+     * see the same frames, even when the analysis moves on while they read.
+     * 
+     * @param frame  the frame number
+     * @return the spectrum information 
+     *         or <code>null</code> if the frame is not (or no longer) in the history
+     */
+    public SpectrumInfo getSpectrumInfoForFrame(long frame)
+    {
+        SpectrumInfo retInfo = history.get(frame);
+        if ( (retInfo != null) && !retInfo.isDefined() )
         {
-            synchronized(history)
-            {
-                int absIdx = historyIdx - 1 - idx;
-                if ( absIdx < 0 ) 
-                { 
-                    absIdx += history.length; 
-                }
-                retInfo = history[absIdx];
-            }
-            if ( !retInfo.isDefined() )
-            {
-                // not defined -> return null
-                retInfo = null;
-            }
+            // not defined -> return null
+            retInfo = null;
         }
         return retInfo;
     }
     
     /**
-     * Gets the FFT analyser.
+     * Copies a range of shaped raw intensities of the primary channel of an analysis frame.
+     * Unlike {@link #getSpectrumInfoForFrame(long)}, this does not create an object,
+     * so detectors can call it for every frame.
      * 
-     * @return the FFT analyser
+     * @param frame    the frame number
+     * @param fromBin  the index of the first FFT bin to copy
+     * @param count    the number of bins to copy
+     * @param target   the array to copy the shaped raw intensities into
+     * @return <code>true</code> if the intensities were copied,
+     *         <code>false</code> if the frame is not (or no longer) in the history
      */
-    public FFT getFFT()
+    public boolean getIntensityRaw(long frame, int fromBin, int count, float[] target)
+    {
+        return history.getIntensityRaw(frame, fromBin, count, target);
+    }
+    
+    /**
+     * Copies the intensities of the primary channel of an analysis frame
+     * without creating an object.
+     * 
+     * @param frame   the frame number
+     * @param target  the array to copy the intensities into
+     * @return the number of intensities of the frame,
+     *         0 if the frame is not (or no longer) in the history;
+     *         nothing is copied if the array is shorter
+     */
+    public int getIntensities(long frame, float[] target)
+    {
+        return history.getIntensities(frame, target);
+    }
+    
+    /**
+     * Gets the relative play position of an analysis frame without creating an object.
+     * 
+     * @param frame         the frame number
+     * @param defaultValue  the value to return if the frame is not (or no longer) in the history
+     * @return the relative play position (0...1)
+     */
+    public float getPosition(long frame, float defaultValue)
+    {
+        return history.getPosition(frame, defaultValue);
+    }
+    
+    /**
+     * Gets the position of an analysis frame in the sound file
+     * without creating an object.
+     * 
+     * @param frame         the frame number
+     * @param defaultValue  the value to return if the frame is not (or no longer) in the history
+     * @return the millisecond index into the sound file
+     */
+    public int getSampleIdx(long frame, int defaultValue)
+    {
+        return history.getSampleIdx(frame, defaultValue);
+    }
+    
+    /**
+     * Gets a 64 bit word of the feature bits of an analysis frame
+     * without creating an object.
+     * 
+     * @param frame  the frame number
+     * @param word   the word index (0: bit numbers 0 to 63, 1: 64 to 127, ...)
+     * @return the feature bits, 0 if the frame is not (or no longer) in the history
+     */
+    public long getFeatureWord(long frame, int word)
+    {
+        return history.getFeatureWord(frame, word);
+    }
+    
+    /**
+     * Checks if a feature has been detected in an analysis frame
+     * without creating an object, e.g., for every frame of the history when rendering.
+     * 
+     * @param frame    the frame number
+     * @param feature  the feature to check
+     * @return <code>true</code> if the feature has been detected,
+     *         <code>false</code> if not or if the frame is not (or no longer) in the history
+     */
+    public boolean hasFeature(long frame, Feature feature)
+    {
+        return (history.getFeatureWord(frame, feature.getWordIndex()) & feature.getBitmask()) != 0;
+    }
+    
+    /**
+     * Copies the intensities of one band over a range of frames, newest frame first.
+     * This is the fast way of scanning the history of a band, 
+     * especially with a {@link SpectrumStore.Layout#BAND_MAJOR} history.
+     * 
+     * @param channel  the channel
+     * @param band     the band index
+     * @param frame    the number of the newest frame to copy
+     * @param count    the maximum number of frames to copy
+     * @param target   the array to copy the intensities into
+     * @return the number of frames copied
+     */
+    public int getBandHistory(Channel channel, int band, long frame, int count, float[] target)
+    {
+        return history.getBandHistory(channel, band, frame, count, target);
+    }
+    
+    /**
+     * Copies the spectrum information of an analysis frame 
+     * without blocking the analysis thread.
+     * 
+     * @param frame   the frame number
+     * @param target  the spectrum information to copy the frame into
+     * @return <code>true</code> if the frame was copied,
+     *         <code>false</code> if the frame is not (or no longer) in the history
+     */
+    public boolean copySpectrumInfo(long frame, SpectrumInfo target)
+    {
+        return history.read(frame, target) && target.isDefined();
+    }
+    
+    /**
+     * Gets the number of samples between the starts of two analysis windows.
+     * 
+     * @return the number of samples per analysis step
+     *         or 0 if the analyser is not attached to an audio stream
+     */
+    public int getAnalysisStep()
+    {
+        return (fft != null) ? dataIdxStep : 0;
+    }
+    
+    /**
+     * Gets the sample rate of the analysed audio stream.
+     * 
+     * @return the sample rate in Hz
+     *         or 0 if the analyser is not attached to an audio stream
+     */
+    public float getSampleRate()
+    {
+        return (fft != null) ? sampleRate : 0;
+    }
+    
+    /**
+     * Gets the FFT engine.
+     * 
+     * @return the FFT engine
+     *         or <code>null</code> if the analyser is not attached to an audio stream
+     */
+    public FFTEngine getFFTEngine()
     {
         return fft;
     }
 
     private AudioSource          audioSource;
-    private float[]              dataRawL, dataRawR, dataFftL, dataFftR;
-    private int                  dataIdx, dataIdxStep;
-    private FFT                  fft;
+    private float                sampleRate;
+    private long                 streamLength, streamStart;
+    private long                 warmUpFrames;
+    private SampleRingBuffer     bufferL, bufferR;
+    private float[]              linearL, linearR, dataFftL, dataFftR;
+    private long                 dataPos, linearPos;
+    private int                  dataIdxStep;
+    private FFTEngine            fft;
+    private FFTEngine.Type       fftEngineType;
+    private int                  bandsPerOctave;
+    private BandTable.Reduction  bandReduction;
     private SpectrumShaper       shaper;
+    private boolean              rawShapedOnDemand;
+    private volatile Set<Channel> channels;
     private final int            analyseFrequency;
-    private final SpectrumInfo[] history;
-    private int                  historyIdx;
+    private final SpectrumHistory history;
     
-    private final Set<FeatureDetector> featureDetectors;
-    private final Set<Listener>        listeners;
+    private final DetectorStage        detectorStage;
+    private final Map<Listener, LatencyHistogram> listeners;
+    private final AnalysisMetrics      metrics;
+    private final LatencyHistogram     timeCopy, timeFFT, timeSpectrum, timeDetectors, timeListeners;
+
+    private static final Set<Channel> LEFT_ONLY = EnumSet.of(Channel.LEFT);
+    // checks if frame events are recorded, without creating an event for each frame
+    private static final FrameEvent   FRAME_EVENT_CHECK = new FrameEvent();
 
     private static final Logger LOG = Logger.getLogger(SpectrumAnalyser.class.getName());
 }
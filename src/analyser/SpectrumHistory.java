@@ -0,0 +1,472 @@
+package analyser;
+
+import detector.Feature;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * History of spectrum information with a single writer and any number of readers.
+ * <p>
+ * Every analysis step produces a frame with a consecutive frame number,
+ * and frame <code>n</code> is stored in slot <code>n % size</code>.
+ * Each slot is guarded by a sequence lock: the analysis thread holds the
+ * write lock of a slot while it fills it, readers never lock but read
+ * optimistically and validate afterwards that the slot has not been written
+ * in the meantime. Readers therefore never block the analysis thread, and
+ * they can tell when a frame has been overwritten while they were reading it.
+ * <p>
+ * The frames are kept in a columnar {@link SpectrumStore},
+ * the {@link SpectrumInfo} instances handed out are views of that store.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ * @version 1.1 - 17.10.2026: Columnar spectrum store
+ *                            More than 64 feature bits
+ */
+public class SpectrumHistory
+{
+    /**
+     * Creates a new spectrum history with a time-major store on the heap.
+     *
+     * @param size  the number of frames the history retains
+     */
+    public SpectrumHistory(int size)
+    {
+        this(size, SpectrumStore.Layout.TIME_MAJOR, false);
+    }
+
+    /**
+     * Creates a new spectrum history.
+     *
+     * @param size    the number of frames the history retains
+     * @param layout  the memory layout of the spectrum store
+     * @param direct  <code>true</code> to keep the spectrum data outside of the Java heap,
+     *                <code>false</code> to keep it on the heap
+     */
+    public SpectrumHistory(int size, SpectrumStore.Layout layout, boolean direct)
+    {
+        store = new SpectrumStore(size, layout, direct);
+        locks = new StampedLock[size];
+        for ( int i = 0 ; i < size ; i++ )
+        {
+            locks[i] = new StampedLock();
+        }
+        writeView  = new SpectrumInfo(store, 0, -1);
+        frameCount = 0;
+    }
+
+    /**
+     * Gets the number of frames the history retains.
+     *
+     * @return the size of the history
+     */
+    public int getSize()
+    {
+        return locks.length;
+    }
+
+    /**
+     * Gets the store with the spectrum data of the history.
+     *
+     * @return the spectrum store
+     */
+    public SpectrumStore getStore()
+    {
+        return store;
+    }
+
+    /**
+     * Gets the number of frames that have been published so far.
+     * The most recent frame has the number <code>getFrameCount() - 1</code>.
+     *
+     * @return the number of published frames
+     */
+    public long getFrameCount()
+    {
+        return frameCount;
+    }
+
+    /**
+     * Gets the frame number of a position in history.
+     *
+     * @param idx  the index of history (0: most recent)
+     * @return the frame number or -1 if there is no frame at that position
+     */
+    public long getFrameNumber(int idx)
+    {
+        long frame = frameCount - 1 - idx;
+        return ((idx >= 0) && (idx < locks.length) && (frame >= 0)) ? frame : -1;
+    }
+
+    /**
+     * Gets a view of a specific frame.
+     * <p>
+     * The data is not copied, so the analysis thread can overwrite the frame
+     * while the caller is still reading it ({@link SpectrumInfo#isValid()} turns
+     * <code>false</code> then). Callers on other threads that need a consistent
+     * view should use {@link #read(long, SpectrumInfo)}.
+     *
+     * @param frame  the frame number
+     * @return the spectrum information of the frame
+     *         or <code>null</code> if the frame is not in the history
+     */
+    public SpectrumInfo get(long frame)
+    {
+        int slot = getSlot(frame);
+        return (slot >= 0) ? new SpectrumInfo(store, slot, frame) : null;
+    }
+
+    /**
+     * Copies a range of shaped raw intensities of the primary channel of a frame
+     * without creating a view of the frame.
+     * Like {@link #get(long)}, this does not validate the copy.
+     *
+     * @param frame    the frame number
+     * @param fromBin  the index of the first FFT bin to copy
+     * @param count    the number of bins to copy
+     * @param target   the array to copy the shaped raw intensities into
+     * @return <code>true</code> if the intensities were copied,
+     *         <code>false</code> if the frame is not in the history or not defined
+     */
+    public boolean getIntensityRaw(long frame, int fromBin, int count, float[] target)
+    {
+        int slot = getSlot(frame);
+        if ( (slot < 0) || (store.getPrimaryChannel(slot) == null) ) return false;
+        SpectrumInfo.getIntensityRaw(store, slot, fromBin, count, target);
+        return true;
+    }
+
+    /**
+     * Copies the intensities of the primary channel of a frame
+     * without creating a view of the frame.
+     * Like {@link #get(long)}, this does not validate the copy.
+     *
+     * @param frame   the frame number
+     * @param target  the array to copy the intensities into
+     * @return the number of intensities of the frame, 0 if the frame is not in the history
+     *         or not defined; nothing is copied if the array is shorter
+     */
+    public int getIntensities(long frame, float[] target)
+    {
+        int     slot    = getSlot(frame);
+        Channel primary = (slot >= 0) ? store.getPrimaryChannel(slot) : null;
+        if ( primary == null ) return 0;
+        int count = store.getBandCount();
+        if ( target.length >= count )
+        {
+            store.getIntensities(primary, slot, target);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the relative play position of a frame in the sound file
+     * without creating a view of the frame.
+     *
+     * @param frame         the frame number
+     * @param defaultValue  the value to return if the frame is not in the history
+     * @return the relative play position (0...1)
+     */
+    public float getPosition(long frame, float defaultValue)
+    {
+        int slot = getSlot(frame);
+        return (slot >= 0) ? store.getPosition(slot) : defaultValue;
+    }
+
+    /**
+     * Gets the position of a frame in the sound file
+     * without creating a view of the frame.
+     *
+     * @param frame         the frame number
+     * @param defaultValue  the value to return if the frame is not in the history
+     * @return the millisecond index into the sound file
+     */
+    public int getSampleIdx(long frame, int defaultValue)
+    {
+        int slot = getSlot(frame);
+        return (slot >= 0) ? store.getSampleIdx(slot) : defaultValue;
+    }
+
+    /**
+     * Gets a 64 bit word of the feature bits of a frame
+     * without creating a view of the frame.
+     * Unlike {@link #getIntensityRaw(long, int, int, float[])}, the word is validated,
+     * so it never belongs to a newer frame in the same slot.
+     *
+     * @param frame  the frame number
+     * @param word   the word index (0: bit numbers 0 to 63, 1: 64 to 127, ...)
+     * @return the feature bits, 0 if the frame is not (or no longer) in the history
+     */
+    public long getFeatureWord(long frame, int word)
+    {
+        if ( (frame < 0) || (frame >= frameCount) ) return 0;
+        int         slot = (int) (frame % locks.length);
+        StampedLock lock = locks[slot];
+        while ( true )
+        {
+            long stamp = lock.tryOptimisticRead();
+            if ( store.getFrame(slot) != frame ) return 0;
+            long bits = store.getFeatureWord(slot, word);
+            if ( (stamp != 0) && lock.validate(stamp) ) return bits;
+            // the slot was written during the read: try again
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Gets the slot of a frame.
+     *
+     * @param frame  the frame number
+     * @return the slot index or -1 if the frame is not in the history
+     */
+    private int getSlot(long frame)
+    {
+        if ( (frame < 0) || (frame >= frameCount) ) return -1;
+        int slot = (int) (frame % locks.length);
+        return (store.getFrame(slot) == frame) ? slot : -1;
+    }
+
+    /**
+     * Copies the intensities of one band over a range of frames, newest frame first.
+     * <p>
+     * This does not validate the frames. If the analysis thread overwrites
+     * some of the oldest frames during the call, their values belong to the
+     * newer frames, which is acceptable for display purposes.
+     *
+     * @param channel  the channel
+     * @param band     the band index
+     * @param frame    the number of the newest frame to copy
+     * @param count    the maximum number of frames to copy
+     * @param target   the array to copy the intensities into
+     * @return the number of frames copied
+     */
+    public int getBandHistory(Channel channel, int band, long frame, int count, float[] target)
+    {
+        frame = Math.min(frame, frameCount - 1);
+        count = (int) Math.min(Math.min(count, frame + 1), locks.length);
+        if ( (count <= 0) || (band >= store.getBandCount()) ) return 0;
+        // copy in chunks of consecutive slots, then reverse into newest first order
+        int copied = 0;
+        while ( copied < count )
+        {
+            int oldestSlot = (int) ((frame - count + 1 + copied) % locks.length);
+            int chunk      = Math.min(count - copied, locks.length - oldestSlot);
+            store.getBandHistory(channel, band, oldestSlot, chunk, target, copied);
+            copied += chunk;
+        }
+        for ( int i = 0, j = count - 1 ; i < j ; i++, j-- )
+        {
+            float tmp = target[i]; target[i] = target[j]; target[j] = tmp;
+        }
+        return count;
+    }
+
+    /**
+     * Copies a consistent snapshot of a frame without blocking the writer.
+     *
+     * @param frame   the frame number
+     * @param target  the spectrum information to copy the frame into
+     * @return <code>true</code> if the frame was copied,
+     *         <code>false</code> if it is not (or no longer) in the history
+     */
+    public boolean read(long frame, SpectrumInfo target)
+    {
+        if ( (frame < 0) || (frame >= frameCount) ) return false;
+        int         slot = (int) (frame % locks.length);
+        StampedLock lock = locks[slot];
+        while ( true )
+        {
+            long stamp = lock.tryOptimisticRead();
+            if ( store.getFrame(slot) != frame )
+            {
+                // overwritten by a newer frame
+                return false;
+            }
+            // the copy checks the sizes of the store, which may change while it is being written
+            if ( (stamp != 0) && target.copyFrom(store, slot, frame) && lock.validate(stamp) )
+            {
+                return true;
+            }
+            // the slot was written during the copy: try again
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Starts writing the next frame.
+     * Must only be called by the analysis thread,
+     * followed by {@link #endWrite()}.
+     *
+     * @return the slot to fill with the spectrum information of the new frame
+     */
+    SpectrumInfo beginWrite()
+    {
+        long frame = frameCount;
+        int  slot  = (int) (frame % locks.length);
+        writeStamp = locks[slot].writeLock();
+        store.clear(slot);
+        store.setFrame(slot, frame);
+        writeView.moveTo(slot, frame);
+        return writeView;
+    }
+
+    /**
+     * Finishes writing a frame and publishes it to the readers.
+     */
+    void endWrite()
+    {
+        long frame = frameCount;
+        locks[(int) (frame % locks.length)].unlockWrite(writeStamp);
+        frameCount = frame + 1;
+    }
+
+    /**
+     * Appends a copy of a frame as the next frame.
+     * Must only be called by the analysis thread.
+     *
+     * @param source    the spectrum information to copy
+     * @param features  spectrum information with features to set in addition 
+     *                  to the features of the source or <code>null</code>
+     */
+    void append(SpectrumInfo source, SpectrumInfo features)
+    {
+        long frame = frameCount;
+        int  slot  = (int) (frame % locks.length);
+        int  words = source.getFeatureWordCount();
+        if ( features != null ) words = Math.max(words, features.getFeatureWordCount());
+        setFeatureWords(words);
+        beginWrite().copyFrom(source);
+        // the copy has the frame number of the source
+        store.setFrame(slot, frame);
+        if ( features != null )
+        {
+            for ( int word = 0 ; word < features.getFeatureWordCount() ; word++ )
+            {
+                store.addFeatures(slot, word, features.getFeatureWord(word));
+            }
+        }
+        endWrite();
+    }
+
+    /**
+     * Sets a feature in a frame of the history or in the frame that is being written.
+     * Must only be called by the analysis thread.
+     *
+     * @param frame    the frame number
+     * @param feature  the feature to set
+     * @return <code>true</code> if the feature was set,
+     *         <code>false</code> if the frame is not in the history
+     */
+    boolean addFeature(long frame, Feature feature)
+    {
+        if ( (frame < 0) || (frame > frameCount) ) return false;
+        int slot = (int) (frame % locks.length);
+        if ( store.getFrame(slot) != frame ) return false; // overwritten
+        if ( frame == frameCount )
+        {
+            // frame is being written and the write lock is held already
+            store.addFeatures(slot, feature.getWordIndex(), feature.getBitmask());
+            return true;
+        }
+        long stamp = locks[slot].writeLock();
+        store.addFeatures(slot, feature.getWordIndex(), feature.getBitmask());
+        locks[slot].unlockWrite(stamp);
+        return true;
+    }
+
+    /**
+     * Sets a feature in a frame of the history from any thread.
+     * The write lock of the slot makes the change atomic for readers
+     * and for other threads that set features in the same frame.
+     * The analysis thread waits at most for the change of one slot.
+     *
+     * @param frame    the frame number
+     * @param feature  the feature to set
+     * @return <code>true</code> if the feature was set,
+     *         <code>false</code> if the frame is not in the history (yet or any more)
+     */
+    boolean addFeatureConcurrently(long frame, Feature feature)
+    {
+        if ( frame < 0 ) return false;
+        int  slot  = (int) (frame % locks.length);
+        long stamp = locks[slot].writeLock();
+        try
+        {
+            if ( store.getFrame(slot) != frame ) return false;
+            store.addFeatures(slot, feature.getWordIndex(), feature.getBitmask());
+            return true;
+        }
+        finally
+        {
+            locks[slot].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Sets the number of bands and bins per frame.
+     * The history is cleared if the numbers change.
+     *
+     * @param bands  the number of bands
+     * @param bins   the number of raw intensities (FFT bins)
+     */
+    void configure(int bands, int bins)
+    {
+        if ( (bands == store.getBandCount()) && (bins == store.getBinCount()) ) return;
+        long[] stamps = new long[locks.length];
+        for ( int i = 0 ; i < locks.length ; i++ )
+        {
+            stamps[i] = locks[i].writeLock();
+        }
+        store.setSize(bands, bins);
+        frameCount = 0;
+        for ( int i = 0 ; i < locks.length ; i++ )
+        {
+            locks[i].unlockWrite(stamps[i]);
+        }
+    }
+
+    /**
+     * Makes room for a number of 64 bit feature words per frame.
+     * The store only ever grows, which happens under the write locks of all slots,
+     * so that no feature bits that are set at the same time get lost.
+     * Must not be called while holding the write lock of a slot.
+     *
+     * @param words  the number of feature words
+     */
+    void setFeatureWords(int words)
+    {
+        if ( words <= store.getFeatureWordCount() ) return;
+        long[] stamps = new long[locks.length];
+        for ( int i = 0 ; i < locks.length ; i++ )
+        {
+            stamps[i] = locks[i].writeLock();
+        }
+        store.setFeatureWords(words);
+        for ( int i = 0 ; i < locks.length ; i++ )
+        {
+            locks[i].unlockWrite(stamps[i]);
+        }
+    }
+
+    /**
+     * Clears all frames and resets the frame count.
+     */
+    void reset()
+    {
+        for ( int i = 0 ; i < locks.length ; i++ )
+        {
+            long stamp = locks[i].writeLock();
+            store.clear(i);
+            locks[i].unlockWrite(stamp);
+        }
+        frameCount = 0;
+    }
+
+    private final SpectrumStore  store;
+    private final StampedLock[]  locks;
+    // view of the frame that is being written
+    private final SpectrumInfo   writeView;
+    // number of published frames, the volatile write publishes a frame
+    private volatile long        frameCount;
+    // stamp of the write lock held between beginWrite() and endWrite()
+    private long                 writeStamp;
+}
@@ -1,24 +1,74 @@
 package analyser;
 
-import ddf.minim.analysis.FFT;
 import detector.Feature;
+import java.util.Set;
 
 /**
  * Class with information about the spectrum at a specific time.
+ * <p>
+ * The information is a lightweight view of one frame in a {@link SpectrumStore}.
+ * Views of the spectrum history refer to the history's store and become
+ * invalid when the frame is overwritten (see {@link #isValid()}).
+ * Instances created with {@link #SpectrumInfo()} have their own single frame store
+ * and can hold a copy of a frame (see {@link SpectrumAnalyser#copySpectrumInfo(long, SpectrumInfo)}).
  * 
  * @author  Stefan Marks
  * @version 1.0 - 12.05.2013: Created
+ * @version 1.1 - 17.10.2026: Spectra for several channels
+ *                            Bulk shaping, raw spectrum shaped on demand
+ *                            Frame numbers and snapshot copies
+ *                            View of a columnar spectrum store
+ *                            More than 64 feature bits
+ *                            Public views, e.g., of spectrum files
  */
 public class SpectrumInfo 
 {
     public static final float MAX_SPECTRUM = 1.0f;
     
     /**
-     * Creates a new spectrum information instance.
+     * Creates a new spectrum information instance with its own storage for one frame.
      */
     public SpectrumInfo()
     {
-        reset();
+        this(new SpectrumStore(1, SpectrumStore.Layout.TIME_MAJOR, false), 0, -1);
+    }
+
+    /**
+     * Creates a view of a frame in a spectrum store, e.g., a store that reads
+     * the frames of a spectrum file.
+     *
+     * @param store  the spectrum store
+     * @param slot   the slot index of the frame in the store
+     */
+    public SpectrumInfo(SpectrumStore store, int slot)
+    {
+        this(store, slot, store.getFrame(slot));
+    }
+
+    /**
+     * Creates a view of a frame in a spectrum store.
+     *
+     * @param store  the spectrum store
+     * @param slot   the slot index of the frame in the store
+     * @param frame  the frame number
+     */
+    SpectrumInfo(SpectrumStore store, int slot, long frame)
+    {
+        this.store = store;
+        this.slot  = slot;
+        this.frame = frame;
+    }
+
+    /**
+     * Moves the view to another frame of the store.
+     *
+     * @param slot   the slot index of the frame in the store
+     * @param frame  the frame number
+     */
+    void moveTo(int slot, long frame)
+    {
+        this.slot  = slot;
+        this.frame = frame;
     }
 
     /**
@@ -30,29 +80,55 @@ public class SpectrumInfo
      */
     public void copySpectrumData(int posIdx, float posRel, SpectrumAnalyser analyser)
     {
-        FFT fft          = analyser.getFFT();
-        int spectrumSize = fft.avgSize();
-       
-        if ( (intensity == null) || (intensity.length != spectrumSize) )
-        {
-            intensity    = new float[spectrumSize];
-            intensityRaw = new float[fft.specSize()];
-        }
+        FFTEngine    fft      = analyser.getFFTEngine();
+        Set<Channel> channels = fft.getChannels();
         
-        sampleIdx = posIdx;
-        position  = posRel;
-        features  = 0;
+        store.setSize(fft.avgSize(), fft.specSize());
+        store.setFrame(slot, frame);
+        store.setPosition(slot, posIdx, posRel);
         
         SpectrumShaper shaper = analyser.getSpectrumShaper();
         float scale = MAX_SPECTRUM / fft.specSize() * 2;
-        for (int i = 0; i < spectrumSize; i++)
+        // in on-demand mode, the raw spectrum is only scaled here
+        SpectrumShaper rawShaper = analyser.isRawSpectrumShapedOnDemand() ? shaper : null;
+        store.setRawShaper(slot, rawShaper);
+        for ( Channel channel : channels )
         {
-            intensity[i] = shaper.shape(fft.getAvg(i) * scale);
-        }
-        for (int i = 0; i < fft.specSize(); i++)
-        {
-            intensityRaw[i] = shaper.shape(fft.getBand(i) * scale);
+            store.putIntensities(channel, slot, fft.getAverages(channel), scale, shaper);
+            store.putIntensitiesRaw(channel, slot, fft.getSpectrum(channel), scale,
+                                    (rawShaper == null) ? shaper : SpectrumShaper.LINEAR);
         }
+        
+        // the first analysed channel is the primary spectrum
+        store.setPrimaryChannel(slot, channels.iterator().next());
+    }
+    
+    /**
+     * Copies the data of another spectrum information instance into this one.
+     * 
+     * @param other  the spectrum information to copy
+     */
+    public void copyFrom(SpectrumInfo other)
+    {
+        store.copySlot(other.store, other.slot, slot);
+        frame = other.frame;
+    }
+    
+    /**
+     * Copies a frame of a store that the analysis thread may write into meanwhile.
+     * 
+     * @param source       the spectrum store to copy from
+     * @param sourceSlot   the slot index of the frame in the source store
+     * @param sourceFrame  the frame number
+     * @return <code>true</code> if the frame was copied,
+     *         <code>false</code> if the size of the source store changed during the copy
+     * @see SpectrumStore#copySlotConcurrently(SpectrumStore, int, int)
+     */
+    boolean copyFrom(SpectrumStore source, int sourceSlot, long sourceFrame)
+    {
+        if ( !store.copySlotConcurrently(source, sourceSlot, slot) ) return false;
+        frame = sourceFrame;
+        return true;
     }
     
     /**
@@ -60,10 +136,8 @@ public class SpectrumInfo
      */
     public void reset()
     {
-        sampleIdx    = 0;
-        intensity    = null;
-        intensityRaw = null;
-        features     = 0;
+        store.clear(slot);
+        frame = -1;
     }
     
     /**
@@ -74,29 +148,235 @@ public class SpectrumInfo
      */
     public boolean isDefined()
     {
-        return intensity != null;
+        return isValid() && (store.getPrimaryChannel(slot) != null);
+    }
+
+    /**
+     * Checks if the frame of this view is still in the store,
+     * i.e., has not been overwritten by a newer frame.
+     *
+     * @return <code>true</code> if the frame is still in the store,
+     *         <code>false</code> if not
+     */
+    public boolean isValid()
+    {
+        return (frame >= 0) && (store.getFrame(slot) == frame);
+    }
+    
+    /**
+     * Gets the number of the analysis frame that this dataset belongs to.
+     * 
+     * @return the frame number or -1 if the dataset is not defined
+     */
+    public long getFrame()
+    {
+        return frame;
+    }
+    
+    /**
+     * Gets the position of the frame in the sound file.
+     * For live input, this is the time since the input was attached.
+     *
+     * @return the millisecond index into the sound file
+     */
+    public int getSampleIdx()
+    {
+        return store.getSampleIdx(slot);
+    }
+
+    /**
+     * Gets the relative play position of the frame in the sound file.
+     *
+     * @return the relative play position (0...1)
+     */
+    public float getPosition()
+    {
+        return store.getPosition(slot);
+    }
+
+    /**
+     * Gets the bitmap with the first 64 detected features (bit numbers 0 to 63).
+     *
+     * @return the feature bitmap
+     */
+    public long getFeatures()
+    {
+        return store.getFeatures(slot);
+    }
+    
+    /**
+     * Gets the number of 64 bit words with feature bits.
+     *
+     * @return the number of feature words
+     */
+    public int getFeatureWordCount()
+    {
+        return store.getFeatureWordCount();
+    }
+    
+    /**
+     * Gets a 64 bit word of the feature bits.
+     *
+     * @param word  the word index (0: bit numbers 0 to 63, 1: 64 to 127, ...)
+     * @return the feature bits or 0 if there is no such word
+     */
+    public long getFeatureWord(int word)
+    {
+        return store.getFeatureWord(slot, word);
     }
     
     /**
      * Checks if a specific feature has been detected.
      * 
+     * @param f  the feature to check
      * @return <code>true</code> if the feature has been detected,
      *         <code>false</code> if not
      */
     public boolean hasFeature(Feature f)
     {
-        return (features & f.getBitmask()) != 0;
+        return store.hasFeature(slot, f.getBitNumber());
+    }
+    
+    /**
+     * Checks if the feature with a specific bit number has been detected.
+     * 
+     * @param bitNum  the bit number of the feature
+     * @return <code>true</code> if the feature has been detected,
+     *         <code>false</code> if not
+     */
+    public boolean hasFeature(int bitNum)
+    {
+        return store.hasFeature(slot, bitNum);
     }
-        
     
-    // millisecond index into the sound file
-    public int     sampleIdx;
-    // relative play position of the soudn file
-    public float   position;
-    // array of frequency intensities
-    public float[] intensity;
-    // array of frequency intensities 
-    public float[] intensityRaw;
-    // bitmap with detected features
-    public long    features;
+    /**
+     * Checks if a specific channel has been analysed.
+     * 
+     * @param channel  the channel to check
+     * @return <code>true</code> if the channel has been analysed,
+     *         <code>false</code> if not
+     */
+    public boolean hasChannel(Channel channel)
+    {
+        return store.hasChannel(slot, channel);
+    }
+
+    /**
+     * Gets the number of frequency intensities (bands).
+     *
+     * @return the number of frequency intensities
+     */
+    public int getIntensityCount()
+    {
+        return store.getBandCount();
+    }
+
+    /**
+     * Gets a frequency intensity of the primary channel.
+     *
+     * @param band  the index of the frequency band
+     * @return the intensity of the band
+     */
+    public float getIntensity(int band)
+    {
+        return store.getIntensity(store.getPrimaryChannel(slot), slot, band);
+    }
+
+    /**
+     * Gets a frequency intensity of a specific channel.
+     *
+     * @param channel  the channel to get the intensity for
+     * @param band     the index of the frequency band
+     * @return the intensity of the band
+     *         or 0 if the channel was not analysed
+     */
+    public float getIntensity(Channel channel, int band)
+    {
+        return store.hasChannel(slot, channel) ? store.getIntensity(channel, slot, band) : 0;
+    }
+
+    /**
+     * Copies all frequency intensities of the primary channel.
+     *
+     * @param target  the array to copy the {@link #getIntensityCount()} intensities into
+     */
+    public void getIntensities(float[] target)
+    {
+        store.getIntensities(store.getPrimaryChannel(slot), slot, target);
+    }
+    
+    /**
+     * Gets the number of raw frequency intensities (FFT bins).
+     * 
+     * @return the number of raw frequency intensities
+     */
+    public int getIntensityRawCount()
+    {
+        return store.getBinCount();
+    }
+    
+    /**
+     * Gets a raw frequency intensity of the primary channel.
+     * 
+     * @param bin  the index of the FFT bin
+     * @return the shaped raw intensity of the bin
+     */
+    public float getIntensityRaw(int bin)
+    {
+        return getIntensityRaw(store.getPrimaryChannel(slot), bin);
+    }
+    
+    /**
+     * Gets a raw frequency intensity of a specific channel.
+     * 
+     * @param channel  the channel to get the raw intensity for
+     * @param bin      the index of the FFT bin
+     * @return the shaped raw intensity of the bin
+     */
+    public float getIntensityRaw(Channel channel, int bin)
+    {
+        float          value     = store.getIntensityRaw(channel, slot, bin);
+        SpectrumShaper rawShaper = store.getRawShaper(slot);
+        return (rawShaper == null) ? value : rawShaper.shape(value);
+    }
+    
+    /**
+     * Copies a range of shaped raw frequency intensities of the primary channel.
+     * 
+     * @param fromBin  the index of the first FFT bin to copy
+     * @param count    the number of bins to copy
+     * @param target   the array to copy the shaped raw intensities into
+     */
+    public void getIntensityRaw(int fromBin, int count, float[] target)
+    {
+        getIntensityRaw(store, slot, fromBin, count, target);
+    }
+    
+    /**
+     * Copies a range of shaped raw frequency intensities of the primary channel
+     * of a frame in a store.
+     * 
+     * @param store    the spectrum store
+     * @param slot     the slot index of the frame in the store
+     * @param fromBin  the index of the first FFT bin to copy
+     * @param count    the number of bins to copy
+     * @param target   the array to copy the shaped raw intensities into
+     */
+    static void getIntensityRaw(SpectrumStore store, int slot, int fromBin, int count, float[] target)
+    {
+        store.getIntensitiesRaw(store.getPrimaryChannel(slot), slot, fromBin, count, target);
+        SpectrumShaper rawShaper = store.getRawShaper(slot);
+        if ( rawShaper != null )
+        {
+            rawShaper.shape(target, target, count);
+        }
+    }
+    
+        
+    // the store with the data of the frame
+    private final SpectrumStore store;
+    // slot index of the frame in the store
+    private int                 slot;
+    // number of the analysis frame
+    private long                frame;
 }
@@ -7,6 +7,7 @@ package analyser;
  * 
  * @author  Stefan Marks
  * @version 1.0 - 16.06.2013: Created
+ * @version 1.1 - 17.10.2026: Bulk shaping with a log2 lookup table
  */
 public abstract class SpectrumShaper 
 {
@@ -30,6 +31,34 @@ public abstract class SpectrumShaper
      */
     public abstract float  shape(float value);
     
+    /**
+     * Shapes a block of input values.
+     *
+     * @param in   the input values
+     * @param out  the array for the shaped values (may be the input array)
+     * @param n    the number of values to shape
+     */
+    public void shape(float[] in, float[] out, int n)
+    {
+        shape(in, 1, out, n);
+    }
+
+    /**
+     * Scales and shapes a block of input values.
+     *
+     * @param in     the input values
+     * @param scale  the factor to multiply the input values with before shaping
+     * @param out    the array for the shaped values (may be the input array)
+     * @param n      the number of values to shape
+     */
+    public void shape(float[] in, float scale, float[] out, int n)
+    {
+        for ( int i = 0 ; i < n ; i++ )
+        {
+            out[i] = shape(in[i] * scale);
+        }
+    }
+
     
     private static class LinearSpectrumShaper extends SpectrumShaper
     {
@@ -41,6 +70,15 @@ public abstract class SpectrumShaper
         {
             return value;
         }
+
+        @Override
+        public void shape(float[] in, float scale, float[] out, int n)
+        {
+            for ( int i = 0 ; i < n ; i++ )
+            {
+                out[i] = in[i] * scale;
+            }
+        }
     }
 
     private static class SquareRootSpectrumShaper extends SpectrumShaper
@@ -53,11 +91,45 @@ public abstract class SpectrumShaper
         {
             return (float) Math.sqrt(value);
         }
+
+        @Override
+        public void shape(float[] in, float scale, float[] out, int n)
+        {
+            // Math.sqrt is a single instruction, a table would not be faster
+            for ( int i = 0 ; i < n ; i++ )
+            {
+                out[i] = (float) Math.sqrt(in[i] * scale);
+            }
+        }
     }
     
+    /**
+     * Logarithmic shaper, 12 octaves (72dB) mapped to the range 0...1.
+     * <p>
+     * The bulk path splits the value into exponent and mantissa and looks up
+     * log2 of the mantissa in a table with linear interpolation between
+     * the entries. With 256 table segments the absolute error of log2 is
+     * below 3e-6, so the shaped value differs by less than 5e-7
+     * from the result of the exact <code>shape(float)</code>.
+     */
     private static class LogSpectrumShaper extends SpectrumShaper
     {
         private static final float log2 = (float) Math.log(2);
+
+        // log2(1 + i / 256) for i = 0...256
+        private static final int     LUT_BITS = 8;
+        private static final float[] LUT      = new float[(1 << LUT_BITS) + 1];
+        // values below 2^-12 are shaped to 0
+        private static final float   MIN_VALUE = 1.0f / 4096;
+        private static final float   FRACTION_SCALE = 1.0f / (1 << (23 - LUT_BITS));
+
+        static
+        {
+            for ( int i = 0 ; i < LUT.length ; i++ )
+            {
+                LUT[i] = (float) (Math.log(1 + (double) i / (1 << LUT_BITS)) / Math.log(2));
+            }
+        }
         
         @Override
         public String getName() { return "Logarithmic"; }
@@ -67,5 +139,27 @@ public abstract class SpectrumShaper
         {
             return (float) Math.max(0, 1 + (Math.log(value) / log2) / 12);
         }
+
+        @Override
+        public void shape(float[] in, float scale, float[] out, int n)
+        {
+            for ( int i = 0 ; i < n ; i++ )
+            {
+                float value = in[i] * scale;
+                if ( !(value > MIN_VALUE) )
+                {
+                    // also catches 0, negative values and NaN
+                    out[i] = 0;
+                    continue;
+                }
+                int   bits     = Float.floatToRawIntBits(value);
+                int   exponent = (bits >>> 23) - 127;
+                int   mantissa = bits & 0x7FFFFF;
+                int   idx      = mantissa >>> (23 - LUT_BITS);
+                float frac     = (mantissa & ((1 << (23 - LUT_BITS)) - 1)) * FRACTION_SCALE;
+                float log2v    = exponent + LUT[idx] + frac * (LUT[idx + 1] - LUT[idx]);
+                out[i] = Math.max(0, 1 + log2v / 12);
+            }
+        }
     }
 }
@@ -0,0 +1,682 @@
+package analyser;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Columnar storage for the frames of the spectrum history.
+ * <p>
+ * Instead of one object with separately allocated arrays per frame,
+ * the store keeps one contiguous block of floats per channel for the band
+ * intensities and one for the raw intensities, plus plain arrays for the
+ * values that exist once per frame. The float blocks can be allocated outside
+ * of the Java heap, so long histories do not add to the garbage collection work.
+ * <p>
+ * With {@link Layout#TIME_MAJOR}, the values of one frame are adjacent,
+ * which suits writing frames and reading whole spectra.
+ * With {@link Layout#BAND_MAJOR}, the values of one band over time are adjacent,
+ * which suits scanning a band through the history.
+ * <p>
+ * The first 64 feature bits of a frame are kept in one <code>long</code>.
+ * Only when features with higher bit numbers are used, the store adds
+ * further words per frame (see {@link #setFeatureWords(int)}).
+ * <p>
+ * Only the analysis thread writes into the store.
+ * The synchronisation with readers is done by {@link SpectrumHistory}.
+ * <p>
+ * Frames are only read through the public methods, also when they are copied
+ * from another store. A subclass can override them to provide read-only frames
+ * from elsewhere, e.g., a spectrum file.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ * @version 1.1 - 17.10.2026: More than 64 feature bits per frame
+ *                            Frames copied through the public methods of the source store
+ *                            Checked copies of frames that are being written
+ */
+public class SpectrumStore
+{
+    /**
+     * Memory layouts of the float blocks.
+     */
+    public enum Layout
+    {
+        TIME_MAJOR("Time-major"),
+        BAND_MAJOR("Band-major");
+
+        private Layout(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+
+        private final String name;
+    }
+
+    /**
+     * Creates a new spectrum store.
+     * The store has no bands and bins until {@link #setSize(int, int)} is called.
+     *
+     * @param slotCount  the number of frames the store can hold
+     * @param layout     the memory layout of the float blocks
+     * @param direct     <code>true</code> to allocate the float blocks outside of the Java heap,
+     *                   <code>false</code> to allocate them on the heap
+     */
+    public SpectrumStore(int slotCount, Layout layout, boolean direct)
+    {
+        this.layout = layout;
+        this.direct = direct;
+
+        frame       = new long[slotCount];
+        sampleIdx   = new int[slotCount];
+        position    = new float[slotCount];
+        features    = new long[slotCount];
+        moreFeatures = new long[0];
+        channelMask = new byte[slotCount];
+        primary     = new byte[slotCount];
+        rawShaper   = new SpectrumShaper[slotCount];
+
+        intensity    = new FloatBuffer[CHANNELS.length];
+        intensityRaw = new FloatBuffer[CHANNELS.length];
+        bandCount    = 0;
+        binCount     = 0;
+        scratch      = new float[0];
+        clear();
+    }
+
+    /**
+     * Gets the number of frames the store can hold.
+     *
+     * @return the number of slots
+     */
+    public int getSlotCount()
+    {
+        return frame.length;
+    }
+
+    /**
+     * Gets the memory layout of the float blocks.
+     *
+     * @return the memory layout
+     */
+    public Layout getLayout()
+    {
+        return layout;
+    }
+
+    /**
+     * Checks if the float blocks are allocated outside of the Java heap.
+     *
+     * @return <code>true</code> if the blocks are allocated outside of the heap,
+     *         <code>false</code> if not
+     */
+    public boolean isDirect()
+    {
+        return direct;
+    }
+
+    /**
+     * Gets the number of band intensities per frame.
+     *
+     * @return the number of bands
+     */
+    public int getBandCount()
+    {
+        return bandCount;
+    }
+
+    /**
+     * Gets the number of raw intensities (FFT bins) per frame.
+     *
+     * @return the number of bins
+     */
+    public int getBinCount()
+    {
+        return binCount;
+    }
+
+    /**
+     * Sets the number of bands and bins per frame.
+     * If the numbers change, the float blocks are released and the store is cleared.
+     *
+     * @param bands  the number of bands
+     * @param bins   the number of raw intensities (FFT bins)
+     */
+    public void setSize(int bands, int bins)
+    {
+        if ( (bands == bandCount) && (bins == binCount) ) return;
+
+        long maxSize = (long) frame.length * Math.max(bands, bins) * 4;
+        if ( maxSize > Integer.MAX_VALUE )
+        {
+            throw new IllegalArgumentException("Spectrum history of " + frame.length +
+                " frames with " + bins + " bins exceeds the maximum block size");
+        }
+        Arrays.fill(intensity,    null);
+        Arrays.fill(intensityRaw, null);
+        bandCount = bands;
+        binCount  = bins;
+        scratch   = new float[Math.max(bands, bins)];
+        clear();
+    }
+
+    /**
+     * Clears all frames.
+     */
+    public void clear()
+    {
+        for ( int slot = 0 ; slot < frame.length ; slot++ )
+        {
+            clear(slot);
+        }
+    }
+
+    /**
+     * Clears a frame.
+     *
+     * @param slot  the slot index
+     */
+    public void clear(int slot)
+    {
+        frame[slot]       = -1;
+        sampleIdx[slot]   = 0;
+        position[slot]    = 0;
+        features[slot]    = 0;
+        int words = extraFeatureWords(moreFeatures);
+        Arrays.fill(moreFeatures, slot * words, (slot + 1) * words, 0);
+        channelMask[slot] = 0;
+        primary[slot]     = -1;
+        rawShaper[slot]   = null;
+    }
+
+    /**
+     * Gets the number of the frame in a slot.
+     *
+     * @param slot  the slot index
+     * @return the frame number or -1 if the slot is empty
+     */
+    public long getFrame(int slot)
+    {
+        return frame[slot];
+    }
+
+    void setFrame(int slot, long frameNumber)
+    {
+        frame[slot] = frameNumber;
+    }
+
+    /**
+     * Gets the millisecond position of a frame in the sound file.
+     *
+     * @param slot  the slot index
+     * @return the position in ms
+     */
+    public int getSampleIdx(int slot)
+    {
+        return sampleIdx[slot];
+    }
+
+    /**
+     * Gets the relative position of a frame in the sound file.
+     *
+     * @param slot  the slot index
+     * @return the relative position (0...1)
+     */
+    public float getPosition(int slot)
+    {
+        return position[slot];
+    }
+
+    void setPosition(int slot, int posIdx, float posRel)
+    {
+        sampleIdx[slot] = posIdx;
+        position[slot]  = posRel;
+    }
+
+    /**
+     * Gets the number of 64 bit words with feature bits per frame.
+     *
+     * @return the number of feature words
+     */
+    public int getFeatureWordCount()
+    {
+        return 1 + extraFeatureWords(moreFeatures);
+    }
+
+    /**
+     * Sets the number of 64 bit words with feature bits per frame.
+     * The number only ever grows, the existing feature bits are kept.
+     *
+     * @param words  the number of feature words
+     */
+    void setFeatureWords(int words)
+    {
+        long[] oldMore  = moreFeatures;
+        int    oldExtra = extraFeatureWords(oldMore);
+        int    extra    = words - 1;
+        if ( extra <= oldExtra ) return;
+        long[] more = new long[frame.length * extra];
+        for ( int slot = 0 ; slot < frame.length ; slot++ )
+        {
+            System.arraycopy(oldMore, slot * oldExtra, more, slot * extra, oldExtra);
+        }
+        moreFeatures = more;
+    }
+
+    /**
+     * Gets the bitmap with the first 64 detected features of a frame
+     * (bit numbers 0 to 63).
+     *
+     * @param slot  the slot index
+     * @return the feature bitmap
+     */
+    public long getFeatures(int slot)
+    {
+        return features[slot];
+    }
+
+    /**
+     * Gets a 64 bit word of the feature bits of a frame.
+     * Word <code>w</code> holds the features with the bit numbers
+     * <code>64*w</code> to <code>64*w+63</code>.
+     *
+     * @param slot  the slot index
+     * @param word  the word index
+     * @return the feature bits or 0 if the store has no such word
+     */
+    public long getFeatureWord(int slot, int word)
+    {
+        if ( word == 0 ) return features[slot];
+        // width and content from the same array, in case it is replaced meanwhile
+        long[] more  = moreFeatures;
+        int    extra = extraFeatureWords(more);
+        return ((word > 0) && (word <= extra)) ? more[slot * extra + word - 1] : 0;
+    }
+
+    /**
+     * Checks if a feature has been detected in a frame.
+     *
+     * @param slot    the slot index
+     * @param bitNum  the bit number of the feature
+     * @return <code>true</code> if the feature has been detected,
+     *         <code>false</code> if not
+     */
+    public boolean hasFeature(int slot, int bitNum)
+    {
+        return (getFeatureWord(slot, bitNum >>> 6) & (1L << bitNum)) != 0;
+    }
+
+    void addFeatures(int slot, int word, long bitmask)
+    {
+        if ( word == 0 )
+        {
+            features[slot] |= bitmask;
+            return;
+        }
+        setFeatureWords(word + 1);
+        int extra = extraFeatureWords(moreFeatures);
+        moreFeatures[slot * extra + word - 1] |= bitmask;
+    }
+
+    private int extraFeatureWords(long[] more)
+    {
+        return more.length / frame.length;
+    }
+
+    /**
+     * Checks if a channel was analysed for a frame.
+     *
+     * @param slot     the slot index
+     * @param channel  the channel
+     * @return <code>true</code> if the store holds intensities of the channel for the frame,
+     *         <code>false</code> if not
+     */
+    public boolean hasChannel(int slot, Channel channel)
+    {
+        return (channelMask[slot] & (1 << channel.ordinal())) != 0;
+    }
+
+    /**
+     * Gets the primary channel of a frame.
+     *
+     * @param slot  the slot index
+     * @return the primary channel or <code>null</code> if the slot is empty
+     */
+    public Channel getPrimaryChannel(int slot)
+    {
+        int c = primary[slot];
+        return (c >= 0) ? CHANNELS[c] : null;
+    }
+
+    void setPrimaryChannel(int slot, Channel channel)
+    {
+        primary[slot] = (byte) channel.ordinal();
+    }
+
+    /**
+     * Gets the shaper that the raw intensities of a frame still have to be shaped with.
+     *
+     * @param slot  the slot index
+     * @return the shaper or <code>null</code> if the raw intensities are already shaped
+     */
+    public SpectrumShaper getRawShaper(int slot)
+    {
+        return rawShaper[slot];
+    }
+
+    void setRawShaper(int slot, SpectrumShaper shaper)
+    {
+        rawShaper[slot] = shaper;
+    }
+
+    /**
+     * Gets a band intensity of a frame.
+     *
+     * @param channel  the channel
+     * @param slot     the slot index
+     * @param band     the band index
+     * @return the band intensity or 0 if the channel has never been analysed
+     */
+    public float getIntensity(Channel channel, int slot, int band)
+    {
+        FloatBuffer column = intensity[channel.ordinal()];
+        return (column != null) ? column.get(index(slot, band, bandCount)) : 0;
+    }
+
+    /**
+     * Copies all band intensities of one frame (time-major access).
+     *
+     * @param channel  the channel
+     * @param slot     the slot index
+     * @param target   the array to copy the {@link #getBandCount()} intensities into
+     */
+    public void getIntensities(Channel channel, int slot, float[] target)
+    {
+        get(intensity[channel.ordinal()], index(slot, 0, bandCount), bandStride(), target, 0, bandCount);
+    }
+
+    /**
+     * Copies the intensities of one band over consecutive slots (band-major access).
+     *
+     * @param channel   the channel
+     * @param band      the band index
+     * @param fromSlot  the first slot to copy
+     * @param count     the number of slots to copy
+     * @param target    the array to copy the intensities into
+     * @param offset    the index of the first element in <code>target</code> to write to
+     */
+    public void getBandHistory(Channel channel, int band, int fromSlot, int count, float[] target, int offset)
+    {
+        get(intensity[channel.ordinal()], index(fromSlot, band, bandCount), slotStride(bandCount), target, offset, count);
+    }
+
+    /**
+     * Gets a raw intensity of a frame.
+     *
+     * @param channel  the channel
+     * @param slot     the slot index
+     * @param bin      the FFT bin index
+     * @return the raw intensity or 0 if the channel has never been analysed
+     */
+    public float getIntensityRaw(Channel channel, int slot, int bin)
+    {
+        FloatBuffer column = intensityRaw[channel.ordinal()];
+        return (column != null) ? column.get(index(slot, bin, binCount)) : 0;
+    }
+
+    /**
+     * Copies a range of raw intensities of one frame.
+     *
+     * @param channel  the channel
+     * @param slot     the slot index
+     * @param fromBin  the index of the first FFT bin to copy
+     * @param count    the number of bins to copy
+     * @param target   the array to copy the raw intensities into
+     */
+    public void getIntensitiesRaw(Channel channel, int slot, int fromBin, int count, float[] target)
+    {
+        get(intensityRaw[channel.ordinal()], index(slot, fromBin, binCount), bandStride(), target, 0, count);
+    }
+
+    /**
+     * Shapes band intensities and stores them in a frame.
+     *
+     * @param channel  the channel
+     * @param slot     the slot index
+     * @param values   the {@link #getBandCount()} unshaped intensities
+     * @param scale    the factor to multiply the values with before shaping
+     * @param shaper   the spectrum shaper
+     */
+    void putIntensities(Channel channel, int slot, float[] values, float scale, SpectrumShaper shaper)
+    {
+        int c = channel.ordinal();
+        if ( intensity[c] == null )
+        {
+            intensity[c] = allocate(frame.length * bandCount);
+        }
+        shaper.shape(values, scale, scratch, bandCount);
+        put(intensity[c], index(slot, 0, bandCount), bandStride(), scratch, bandCount);
+        channelMask[slot] |= 1 << c;
+    }
+
+    /**
+     * Shapes raw intensities and stores them in a frame.
+     *
+     * @param channel  the channel
+     * @param slot     the slot index
+     * @param values   the {@link #getBinCount()} unshaped raw intensities
+     * @param scale    the factor to multiply the values with before shaping
+     * @param shaper   the spectrum shaper
+     */
+    void putIntensitiesRaw(Channel channel, int slot, float[] values, float scale, SpectrumShaper shaper)
+    {
+        int c = channel.ordinal();
+        if ( intensityRaw[c] == null )
+        {
+            intensityRaw[c] = allocate(frame.length * binCount);
+        }
+        shaper.shape(values, scale, scratch, binCount);
+        put(intensityRaw[c], index(slot, 0, binCount), bandStride(), scratch, binCount);
+        channelMask[slot] |= 1 << c;
+    }
+
+    /**
+     * Copies a frame from another store.
+     * The size of this store is adapted to the source store if necessary.
+     *
+     * @param src      the source store
+     * @param srcSlot  the slot index in the source store
+     * @param dstSlot  the slot index in this store
+     */
+    void copySlot(SpectrumStore src, int srcSlot, int dstSlot)
+    {
+        setSize(src.getBandCount(), src.getBinCount());
+        frame[dstSlot]       = src.getFrame(srcSlot);
+        sampleIdx[dstSlot]   = src.getSampleIdx(srcSlot);
+        position[dstSlot]    = src.getPosition(srcSlot);
+        features[dstSlot]    = src.getFeatures(srcSlot);
+        setFeatureWords(src.getFeatureWordCount());
+        int extra = extraFeatureWords(moreFeatures);
+        for ( int word = 1 ; word <= extra ; word++ )
+        {
+            moreFeatures[dstSlot * extra + word - 1] = src.getFeatureWord(srcSlot, word);
+        }
+        Channel primaryChannel = src.getPrimaryChannel(srcSlot);
+        channelMask[dstSlot] = 0;
+        primary[dstSlot]     = (byte) ((primaryChannel != null) ? primaryChannel.ordinal() : -1);
+        rawShaper[dstSlot]   = src.getRawShaper(srcSlot);
+        for ( Channel channel : CHANNELS )
+        {
+            if ( !src.hasChannel(srcSlot, channel) ) continue;
+            int c = channel.ordinal();
+            src.getIntensities(channel, srcSlot, scratch);
+            if ( intensity[c] == null )
+            {
+                intensity[c] = allocate(frame.length * bandCount);
+            }
+            put(intensity[c], index(dstSlot, 0, bandCount), bandStride(), scratch, bandCount);
+            src.getIntensitiesRaw(channel, srcSlot, 0, binCount, scratch);
+            if ( intensityRaw[c] == null )
+            {
+                intensityRaw[c] = allocate(frame.length * binCount);
+            }
+            put(intensityRaw[c], index(dstSlot, 0, binCount), bandStride(), scratch, binCount);
+            channelMask[dstSlot] |= 1 << c;
+        }
+    }
+
+    /**
+     * Copies a frame from another store that the analysis thread may write into meanwhile.
+     * The caller reads optimistically and validates the copy afterwards
+     * (see {@link SpectrumHistory#read(long, SpectrumInfo)}). Until then, the copy checks
+     * that the source keeps its size and that its float blocks hold the frame,
+     * so it never reads outside of the blocks.
+     *
+     * @param src      the source store
+     * @param srcSlot  the slot index in the source store
+     * @param dstSlot  the slot index in this store
+     * @return <code>true</code> if the frame was copied,
+     *         <code>false</code> if the size of the source store changed during the copy
+     */
+    boolean copySlotConcurrently(SpectrumStore src, int srcSlot, int dstSlot)
+    {
+        int bands = src.bandCount;
+        int bins  = src.binCount;
+        setSize(bands, bins);
+        frame[dstSlot]       = src.frame[srcSlot];
+        sampleIdx[dstSlot]   = src.sampleIdx[srcSlot];
+        position[dstSlot]    = src.position[srcSlot];
+        features[dstSlot]    = src.features[srcSlot];
+        setFeatureWords(src.getFeatureWordCount());
+        int extra = extraFeatureWords(moreFeatures);
+        for ( int word = 1 ; word <= extra ; word++ )
+        {
+            moreFeatures[dstSlot * extra + word - 1] = src.getFeatureWord(srcSlot, word);
+        }
+        int mask = src.channelMask[srcSlot];
+        channelMask[dstSlot] = 0;
+        primary[dstSlot]     = src.primary[srcSlot];
+        rawShaper[dstSlot]   = src.rawShaper[srcSlot];
+        for ( Channel channel : CHANNELS )
+        {
+            int c = channel.ordinal();
+            if ( (mask & (1 << c)) == 0 ) continue;
+            FloatBuffer srcIntensity    = src.intensity[c];
+            FloatBuffer srcIntensityRaw = src.intensityRaw[c];
+            if ( (src.bandCount != bands) || (src.binCount != bins) ||
+                 !src.holdsAllSlots(srcIntensity, bands) || !src.holdsAllSlots(srcIntensityRaw, bins) )
+            {
+                return false;
+            }
+            get(srcIntensity, src.index(srcSlot, 0, bands), src.bandStride(), scratch, 0, bands);
+            if ( intensity[c] == null )
+            {
+                intensity[c] = allocate(frame.length * bandCount);
+            }
+            put(intensity[c], index(dstSlot, 0, bandCount), bandStride(), scratch, bandCount);
+            get(srcIntensityRaw, src.index(srcSlot, 0, bins), src.bandStride(), scratch, 0, bins);
+            if ( intensityRaw[c] == null )
+            {
+                intensityRaw[c] = allocate(frame.length * binCount);
+            }
+            put(intensityRaw[c], index(dstSlot, 0, binCount), bandStride(), scratch, binCount);
+            channelMask[dstSlot] |= 1 << c;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a float block holds the values of all slots of this store.
+     *
+     * @param column  the float block
+     * @param width   the number of bands or bins per frame
+     * @return <code>true</code> if the block has the size for the width,
+     *         <code>false</code> if not or if there is no block
+     */
+    private boolean holdsAllSlots(FloatBuffer column, int width)
+    {
+        return (column != null) && (column.capacity() == frame.length * width);
+    }
+
+    private FloatBuffer allocate(int size)
+    {
+        if ( direct )
+        {
+            return ByteBuffer.allocateDirect(size * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+        return FloatBuffer.allocate(size);
+    }
+
+    /**
+     * Calculates the position of a value in a float block.
+     *
+     * @param slot   the slot index
+     * @param idx    the band or bin index
+     * @param width  the number of bands or bins per frame
+     * @return the index in the float block
+     */
+    private int index(int slot, int idx, int width)
+    {
+        return (layout == Layout.TIME_MAJOR) ? slot * width + idx : idx * frame.length + slot;
+    }
+
+    // distance between neighbouring bands or bins of one frame
+    private int bandStride()
+    {
+        return (layout == Layout.TIME_MAJOR) ? 1 : frame.length;
+    }
+
+    // distance between neighbouring slots of one band or bin
+    private int slotStride(int width)
+    {
+        return (layout == Layout.TIME_MAJOR) ? width : 1;
+    }
+
+    private static void get(FloatBuffer column, int index, int stride, float[] target, int offset, int count)
+    {
+        if ( column == null )
+        {
+            Arrays.fill(target, offset, offset + count, 0);
+            return;
+        }
+        // absolute access only: readers on other threads must not touch the buffer position
+        for ( int i = 0 ; i < count ; i++, index += stride )
+        {
+            target[offset + i] = column.get(index);
+        }
+    }
+
+    private static void put(FloatBuffer column, int index, int stride, float[] values, int count)
+    {
+        for ( int i = 0 ; i < count ; i++, index += stride )
+        {
+            column.put(index, values[i]);
+        }
+    }
+
+    private static final Channel[] CHANNELS = Channel.values();
+
+    private final Layout           layout;
+    private final boolean          direct;
+    // values per frame
+    private final long[]           frame;
+    private final int[]            sampleIdx;
+    private final float[]          position;
+    private final long[]           features;
+    // feature words beyond the first one, (words - 1) per slot
+    private volatile long[]        moreFeatures;
+    private final byte[]           channelMask, primary;
+    private final SpectrumShaper[] rawShaper;
+    // float blocks per channel (null until the channel is analysed)
+    private final FloatBuffer[]    intensity, intensityRaw;
+    private int                    bandCount, binCount;
+    // buffer for shaping and copying frames, used by the analysis thread only
+    private float[]                scratch;
+}
@@ -12,6 +12,8 @@ import java.awt.BorderLayout;
 import java.io.File;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import output.OscOutputModule;
@@ -55,6 +57,10 @@ public class AudioSpectrumAnalyser extends javax.swing.JFrame
         //analyser.registerFeatureDetector(new SpikeFeatureDetector("Bass",  0, 50, 100, 10, 50));
         //analyser.registerFeatureDetector(new SpikeFeatureDetector("Snare", 1, 2000, 7000, 15, 100));
         //analyser.registerFeatureDetector(new SpikeFeatureDetector("Cymbal", 2, 7000, 10000, 20, 100));
+        //analyser.registerFeatureDetector(new SpectralFluxFeatureDetector("Onset", 3, 50, 10000));
+        //BeatTracker beatTracker = new BeatTracker("Beat", 4, 50, 10000);
+        //beatTracker.registerListener(networkOutput);
+        //analyser.registerFeatureDetector(beatTracker);
         
         renderWaveform = new WaveformRenderPanel(analyser);
         pnlWaveform.add(renderWaveform);
@@ -161,6 +167,12 @@ public class AudioSpectrumAnalyser extends javax.swing.JFrame
         {
             sound = lineIn;
             analyser.attachToAudio(sound);
+
+            for ( OutputModule outputModule : outputModules )
+            {
+                outputModule.liveInputOpened();
+            }
+
             loadPreferences();
             menuFileClose.setEnabled(true);
         }
@@ -182,6 +194,12 @@ public class AudioSpectrumAnalyser extends javax.swing.JFrame
     {
         if ( sound != null )
         {
+            // run time metrics of the analysis so far, on demand through the logging configuration
+            if ( LOG.isLoggable(Level.FINE) )
+            {
+                LOG.log(Level.FINE, "Analysis metrics:{0}{1}",
+                        new Object[] {System.lineSeparator(), analyser.getMetrics()});
+            }
             analyser.detachFromAudio();
             playbackControl.detachFromAudio();
             
@@ -463,4 +481,6 @@ public class AudioSpectrumAnalyser extends javax.swing.JFrame
     //private final FeatureHistoryRenderPanel     renderFeatureHistory;
     private final FrequencySpectrumHistoryPanel renderFrequencyHistory;
     private final PlaybackControlPanel          playbackControl;
+
+    private static final Logger LOG = Logger.getLogger(AudioSpectrumAnalyser.class.getName());
 }
@@ -0,0 +1,537 @@
+package detector;
+
+import analyser.DetectorStage;
+import analyser.FFTEngine;
+import analyser.SpectrumAnalyser;
+import analyser.SpectrumInfo;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tempo and beat tracker.
+ * <p>
+ * The tracker follows the spectral flux of a frequency range
+ * (see {@link DetectorStage#getBandFlux(long, int, int)}) as onset strength.
+ * The tempo is estimated from the autocorrelation of the onset strength,
+ * which is updated with every frame and decays exponentially, so older frames
+ * gradually lose their influence. The autocorrelation is weighted towards
+ * 120 BPM and supported by the autocorrelation at twice the period
+ * to avoid choosing half or double the tempo. The tempo only changes
+ * when another beat period has been clearly better than the current one
+ * for a while, and a period at another metrical level (e.g., half the tempo)
+ * has to be better by a larger margin.
+ * The beat phase is the offset at which a comb with the beat period
+ * collects the most onset strength over the last beats.
+ * <p>
+ * From tempo and phase, the tracker predicts the time of the next beat.
+ * The tracker sets its feature in the frames where the predicted beats fall,
+ * and informs its listeners after every frame, so they get the prediction
+ * before the beat happens instead of a detection after it.
+ * <p>
+ * The work per analysis step depends only on the range of beat periods.
+ * The tracker carries its state over the whole stream, so an analysis
+ * of chunks of a stream can not reproduce its beats (see {@link #getWarmUp()}).
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public class BeatTracker extends FeatureDetector
+{
+    /**
+     * Listener for updates of the tempo and beat prediction.
+     */
+    public interface Listener
+    {
+        /**
+         * Informs the listener that the tracker has been updated with a new frame.
+         * This is called in the thread that runs the detectors.
+         *
+         * @param tracker  the beat tracker
+         */
+        void beatUpdated(BeatTracker tracker);
+    }
+
+    /**
+     * Number of beats that the comb for the beat phase covers.
+     */
+    public static final int COMB_BEATS = 4;
+
+    /**
+     * Creates a new beat tracker for 60 to 180 BPM.
+     *
+     * @param name      the name of the feature
+     * @param bitNum    the feature bit number to set
+     * @param freqLow   the lower end of the spectrum to observe
+     * @param freqHigh  the upper end of the spectrum to observe
+     */
+    public BeatTracker(String name, int bitNum, float freqLow, float freqHigh)
+    {
+        this(name, bitNum, freqLow, freqHigh, 60, 180, 4);
+    }
+
+    /**
+     * Creates a new beat tracker.
+     *
+     * @param name      the name of the feature
+     * @param bitNum    the feature bit number to set
+     * @param freqLow   the lower end of the spectrum to observe
+     * @param freqHigh  the upper end of the spectrum to observe
+     * @param minBpm    the lowest tempo in beats per minute
+     * @param maxBpm    the highest tempo in beats per minute
+     * @param halfLife  the time in seconds after which a frame has half of its influence
+     *                  on the tempo estimation
+     */
+    public BeatTracker(String name, int bitNum, float freqLow, float freqHigh, float minBpm, float maxBpm, float halfLife)
+    {
+        super(new Feature(name, bitNum));
+        if ( (minBpm <= 0) || (maxBpm <= minBpm) || (halfLife <= 0) )
+        {
+            throw new IllegalArgumentException("Invalid tempo range or half life");
+        }
+        this.freqLow  = freqLow;
+        this.freqHigh = freqHigh;
+        this.minBpm   = minBpm;
+        this.maxBpm   = maxBpm;
+        this.halfLife = halfLife;
+
+        specIdxFrom = -1;
+        specIdxTo   = -1;
+        listeners   = new CopyOnWriteArrayList<Listener>();
+        lastFrame   = -1;
+    }
+
+    private void determineSpectrumIndices(FFTEngine fft)
+    {
+        if ( specIdxFrom < 0 )
+        {
+            specIdxFrom = fft.freqToIndex(freqLow);
+            specIdxTo   = fft.freqToIndex(freqHigh);
+            specCount   = 1 + specIdxTo - specIdxFrom;
+            LOG.log(Level.FINE,
+                    "Beat tracker ''{0}'': analysing spectrum indices {1} to {2}",
+                    new Object[] {getFeature().getName(), specIdxFrom, specIdxTo});
+        }
+    }
+
+    /**
+     * Prepares the buffers for the frame rate of the analyser.
+     *
+     * @param analyser  the analyser to run the detection on
+     */
+    private void prepare(SpectrumAnalyser analyser)
+    {
+        float rate = analyser.getSampleRate() / analyser.getAnalysisStep();
+        if ( rate == frameRate ) return;
+
+        frameRate = rate;
+        minLag    = Math.max(2, (int) Math.floor(60 * rate / maxBpm));
+        maxLag    = Math.max(minLag + 2, (int) Math.ceil(60 * rate / minBpm));
+        decay     = Math.pow(0.5, 1 / (halfLife * rate));
+        strength  = new float[(COMB_BEATS + 1) * (maxLag + 2)];
+        detrended = new float[strength.length];
+        // up to twice the longest period for the support of the next metrical level
+        acf       = new double[2 * maxLag + 2];
+        weight    = new double[maxLag + 1];
+        double preferredLag = 60 * rate / 120;
+        for ( int lag = minLag ; lag <= maxLag ; lag++ )
+        {
+            // log-normal weight with a width of one octave
+            double octaves = Math.log(lag / preferredLag) / Math.log(2);
+            weight[lag] = Math.exp(-0.5 * octaves * octaves);
+        }
+        reset();
+    }
+
+    /**
+     * Discards the state of the tracker, e.g., when frames have been missed.
+     */
+    private void reset()
+    {
+        Arrays.fill(strength, 0);
+        Arrays.fill(detrended, 0);
+        Arrays.fill(acf, 0);
+        frameCount     = 0;
+        mean           = 0;
+        currentLag     = 0;
+        candidateLag   = 0;
+        candidateCount = 0;
+        predictedBeat  = -1;
+        lastBeat       = -1;
+        tempo          = 0;
+        confidence     = 0;
+        phase          = 0;
+        nextBeatTime   = -1;
+        timeToNextBeat = -1;
+    }
+
+    /**
+     * Registers a listener for the tempo and beat prediction.
+     *
+     * @param l  the listener to register
+     * @return <code>true</code> if the listener was registered,
+     *         <code>false</code> if not
+     */
+    public boolean registerListener(Listener l)
+    {
+        return listeners.addIfAbsent(l);
+    }
+
+    /**
+     * Unregisters a listener for the tempo and beat prediction.
+     *
+     * @param l  the listener to unregister
+     * @return <code>true</code> if the listener was unregistered,
+     *         <code>false</code> if not
+     */
+    public boolean unregisterListener(Listener l)
+    {
+        return listeners.remove(l);
+    }
+
+    /**
+     * Gets the estimated tempo.
+     *
+     * @return the tempo in beats per minute or 0 if there is no estimation yet
+     */
+    public float getTempo()
+    {
+        return tempo;
+    }
+
+    /**
+     * Gets the confidence of the tempo estimation.
+     *
+     * @return the confidence (0: none ... 1: clear beat)
+     */
+    public float getConfidence()
+    {
+        return confidence;
+    }
+
+    /**
+     * Gets the position within the current beat.
+     *
+     * @return the phase (0: beat ... 1: next beat)
+     */
+    public float getPhase()
+    {
+        return phase;
+    }
+
+    /**
+     * Gets the predicted time of the next beat, in the same time base as
+     * the positions of the frames (see {@link SpectrumInfo#getSampleIdx()}).
+     *
+     * @return the time of the next beat in ms or -1 if there is no prediction yet
+     */
+    public int getNextBeatTime()
+    {
+        return nextBeatTime;
+    }
+
+    /**
+     * Gets the time from the most recent frame to the predicted next beat.
+     *
+     * @return the time until the next beat in ms or -1 if there is no prediction yet
+     */
+    public int getTimeToNextBeat()
+    {
+        return timeToNextBeat;
+    }
+
+    @Override
+    public boolean detectFeature(SpectrumAnalyser analyser)
+    {
+        return detect(analyser, analyser.getDetectorStage(), analyser.getFrameCount() - 1);
+    }
+
+    @Override
+    public boolean detectFeature(DetectorStage stage)
+    {
+        // in a detector stage, the analysis may have moved on already
+        return detect(stage.getAnalyser(), stage, stage.getFrame());
+    }
+
+    /**
+     * Updates the tracker with the next frame.
+     *
+     * @param analyser  the analyser to run the detection on
+     * @param stage     the detector stage with the spectral flux
+     * @param frame     the most recent frame in the history
+     * @return <code>true</code> if a beat is predicted for the frame,
+     *         <code>false</code> if not
+     */
+    private boolean detect(SpectrumAnalyser analyser, DetectorStage stage, long frame)
+    {
+        if ( frame < 1 ) return false;
+
+        determineSpectrumIndices(analyser.getFFTEngine());
+        prepare(analyser);
+
+        if ( frame != lastFrame + 1 ) reset();
+        lastFrame = frame;
+
+        double flux = stage.getBandFlux(frame, specIdxFrom, specIdxTo);
+        if ( Double.isNaN(flux) )
+        {
+            lastFrame = -1;
+            return false;
+        }
+        float onset = (float) (flux / specCount);
+        addOnset(frame, onset);
+        if ( frameCount < strength.length ) return false;
+
+        double period = estimatePeriod();
+        if ( period <= 0 ) return false;
+
+        // phase: where the comb with the beat period collects the most onset strength
+        int   offsets    = (int) Math.round(period);
+        int   bestOffset = 0;
+        float bestScore  = -1;
+        for ( int offset = 0 ; offset < offsets ; offset++ )
+        {
+            float score = 0;
+            for ( int k = 0 ; k < COMB_BEATS ; k++ )
+            {
+                score += strength[slot(frame - offset - Math.round(k * period))];
+            }
+            if ( score > bestScore )
+            {
+                bestScore  = score;
+                bestOffset = offset;
+            }
+        }
+
+        // a beat falls on this frame if it was predicted or if it came early
+        // and the prediction moves on to the following beat, but not twice within half a beat
+        double  nextBeat = frame - bestOffset + period;
+        boolean due      = (frame >= predictedBeat - 0.5) || (nextBeat - predictedBeat > period / 2);
+        boolean beat     = (predictedBeat >= 0) && due &&
+                           ((lastBeat < 0) || (frame - lastBeat >= period / 2));
+        if ( beat ) lastBeat = frame;
+        predictedBeat = nextBeat;
+
+        int frameTime  = analyser.getSampleIdx(frame, (int) Math.round(frame * 1000.0 / frameRate));
+        tempo          = (float) (60 * frameRate / period);
+        phase          = (float) (bestOffset / period);
+        timeToNextBeat = (int) Math.round((predictedBeat - frame) * 1000 / frameRate);
+        nextBeatTime   = frameTime + timeToNextBeat;
+
+        for ( Listener listener : listeners )
+        {
+            listener.beatUpdated(this);
+        }
+        return beat;
+    }
+
+    /**
+     * Enters the onset strength of a frame and updates the autocorrelation.
+     *
+     * @param frame  the frame number
+     * @param onset  the onset strength
+     */
+    private void addOnset(long frame, float onset)
+    {
+        // without the slowly changing mean, the autocorrelation only shows the rhythm
+        mean += (onset - mean) / frameRate;
+        float d = (float) (onset - mean);
+        strength[slot(frame)]  = onset;
+        detrended[slot(frame)] = d;
+        frameCount++;
+
+        int lags = (int) Math.min(acf.length - 1, frameCount - 1);
+        for ( int lag = minLag ; lag <= lags ; lag++ )
+        {
+            acf[lag] = decay * acf[lag] + d * detrended[slot(frame - lag)];
+        }
+    }
+
+    /**
+     * Chooses the beat period from the weighted autocorrelation.
+     *
+     * @return the beat period in frames or 0 if there is no periodicity
+     */
+    private double estimatePeriod()
+    {
+        int    best  = 0;
+        double score = 0;
+        double sum   = 0;
+        for ( int lag = minLag ; lag <= maxLag ; lag++ )
+        {
+            double s = score(lag);
+            if ( s > score )
+            {
+                score = s;
+                best  = lag;
+            }
+            sum += Math.max(0, acf[lag]);
+        }
+        if ( best == 0 )
+        {
+            confidence = 0;
+            return 0;
+        }
+        best       = choosePeriod(best, score);
+        currentLag = best;
+
+        double average = sum / (1 + maxLag - minLag);
+        confidence = (acf[best] > 0) ? (float) Math.max(0, Math.min(1, (acf[best] - average) / acf[best])) : 0;
+
+        // parabolic interpolation between the neighbouring periods
+        double period = best;
+        if ( (best > minLag) && (best < maxLag) )
+        {
+            double left  = acf[best - 1];
+            double right = acf[best + 1];
+            double curve = left - 2 * acf[best] + right;
+            if ( (curve < 0) && (acf[best] >= left) && (acf[best] >= right) )
+            {
+                period += 0.5 * (left - right) / curve;
+            }
+        }
+        return period;
+    }
+
+    /**
+     * Scores a beat period by its autocorrelation, supported by the autocorrelation
+     * at twice the period, and weighted towards 120 BPM.
+     * The support favours the beat over a faster metrical level
+     * that only some of the beats fall on.
+     *
+     * @param lag  the beat period in frames
+     * @return the score
+     */
+    private double score(int lag)
+    {
+        double next = Math.max(acf[2 * lag - 1], Math.max(acf[2 * lag], acf[2 * lag + 1]));
+        return weight[lag] * (acf[lag] + 0.5 * Math.max(0, next));
+    }
+
+    /**
+     * Decides between the current beat period and the best scoring one.
+     * Small differences follow the tempo. Another period has to score clearly better
+     * than the current one for {@link #SWITCH_TIME} seconds in a row.
+     * A period at another metrical level than the current one (e.g., half or double)
+     * needs a larger margin, because the bars and the rhythm within the bars
+     * let the scores of the metrical levels fluctuate.
+     *
+     * @param best   the best scoring beat period in frames
+     * @param score  the score of the best period
+     * @return the beat period to use in frames
+     */
+    private int choosePeriod(int best, double score)
+    {
+        if ( (currentLag == 0) || (Math.abs(best - currentLag) <= LAG_TOLERANCE) )
+        {
+            candidateCount = 0;
+            return best;
+        }
+
+        // the current period follows the peak of its score
+        int current = currentLag;
+        int from    = Math.max(minLag, currentLag - LAG_TOLERANCE);
+        int to      = Math.min(maxLag, currentLag + LAG_TOLERANCE);
+        for ( int lag = from ; lag <= to ; lag++ )
+        {
+            if ( score(lag) > score(current) ) current = lag;
+        }
+
+        double margin = isMetricalLevel(best, current) ? LEVEL_MARGIN : TEMPO_MARGIN;
+        if ( score < margin * score(current) )
+        {
+            candidateCount = 0;
+            return current;
+        }
+        if ( Math.abs(best - candidateLag) > LAG_TOLERANCE )
+        {
+            candidateCount = 0;
+        }
+        candidateLag = best;
+        candidateCount++;
+        if ( candidateCount < SWITCH_TIME * frameRate )
+        {
+            return current;
+        }
+        candidateCount = 0;
+        return best;
+    }
+
+    /**
+     * Checks if two beat periods are different metrical levels of the same rhythm,
+     * i.e., if their ratio is close to 2, 3 or 3/2.
+     *
+     * @param lag1  the first beat period in frames
+     * @param lag2  the second beat period in frames
+     * @return <code>true</code> if the periods are related, <code>false</code> if not
+     */
+    private static boolean isMetricalLevel(int lag1, int lag2)
+    {
+        double ratio = (double) Math.max(lag1, lag2) / Math.min(lag1, lag2);
+        for ( double level : METRICAL_RATIOS )
+        {
+            if ( Math.abs(ratio / level - 1) < 0.05 ) return true;
+        }
+        return false;
+    }
+
+    private int slot(long frame)
+    {
+        return (int) (frame % strength.length);
+    }
+
+    @Override
+    public int getDetectionDelay()
+    {
+        // the beat is set in the most recent frame
+        return 1;
+    }
+
+    @Override
+    public int getHistoryLength()
+    {
+        // the spectral flux needs the previous frame
+        return 2;
+    }
+
+    @Override
+    public int getWarmUp()
+    {
+        // the autocorrelation decays, but never forgets, and the tempo depends on its past
+        return UNBOUNDED_WARM_UP;
+    }
+
+    private float           freqLow, freqHigh;
+    private float           minBpm, maxBpm, halfLife;
+    private int             specIdxFrom, specIdxTo, specCount;
+    // frames per second and range of beat periods in frames
+    private float           frameRate;
+    private int             minLag, maxLag;
+    private double          decay;
+    // onset strength and onset strength without its mean, indexed by frame number
+    private float[]         strength, detrended;
+    // decaying autocorrelation and tempo weight, indexed by period
+    private double[]        acf, weight;
+    private double          mean;
+    private long            frameCount, lastFrame, lastBeat;
+    // current beat period and the period that challenges it for how many frames
+    private int             currentLag, candidateLag, candidateCount;
+    private double          predictedBeat;
+    // results of the most recent update, read by other threads
+    private volatile float  tempo, confidence, phase;
+    private volatile int    nextBeatTime, timeToNextBeat;
+
+    private final CopyOnWriteArrayList<Listener> listeners;
+
+    // time in seconds that another beat period has to be better before the tempo changes
+    private static final double   SWITCH_TIME     = 1;
+    // how much better another period has to score, at the same or at another metrical level
+    private static final double   TEMPO_MARGIN    = 1.1;
+    private static final double   LEVEL_MARGIN    = 1.5;
+    // difference in frames of periods that are the same tempo
+    private static final int      LAG_TOLERANCE   = 2;
+    private static final double[] METRICAL_RATIOS = { 2, 3, 1.5 };
+
+    private static final Logger LOG = Logger.getLogger(BeatTracker.class.getName());
+}
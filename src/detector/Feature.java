@@ -3,9 +3,13 @@ package detector;
 /**
  * Class for a feature of the analysed audio, 
  * e.g., bass drum kick, string section.
+ * <p>
+ * The feature bits of a frame are kept in 64 bit words, so the feature
+ * is identified by the index of its word and its bitmask within that word.
  * 
  * @author  Stefan Marks
  * @version 1.0 - 16.05.2013: Created
+ * @version 1.1 - 17.10.2026: Bit numbers beyond 31
  */
 public class Feature 
 {
@@ -13,12 +17,17 @@ public class Feature
      * Creates an instance of an audio feature.
      * 
      * @param name   the name of the feature
-     * @param bitNum the bit index (0..15) of the feature
+     * @param bitNum the bit index (0 or higher) of the feature
      */
     public Feature(String name, int bitNum)
     {
-        this.name = name;
-        this.bitMask = 1 << bitNum;
+        if ( bitNum < 0 )
+        {
+            throw new IllegalArgumentException("Invalid feature bit number " + bitNum);
+        }
+        this.name    = name;
+        this.bitNum  = bitNum;
+        this.bitMask = 1L << (bitNum & 63);
     }
 
     /**
@@ -32,7 +41,27 @@ public class Feature
     }
     
     /**
-     * Gets the feature's bitmask.
+     * Gets the feature's bit number.
+     * 
+     * @return the feature's bit number
+     */
+    public int getBitNumber()
+    {
+        return bitNum;
+    }
+    
+    /**
+     * Gets the index of the 64 bit feature word that contains the feature's bit.
+     * 
+     * @return the feature's word index
+     */
+    public int getWordIndex()
+    {
+        return bitNum >>> 6;
+    }
+    
+    /**
+     * Gets the feature's bitmask within its feature word.
      * 
      * @return the feature's bitmask
      */
@@ -42,5 +71,6 @@ public class Feature
     }
 
     private final String name;
-    private final int    bitMask;
+    private final int    bitNum;
+    private final long   bitMask;
 }
@@ -1,5 +1,6 @@
 package detector;
 
+import analyser.DetectorStage;
 import analyser.SpectrumAnalyser;
 
 /**
@@ -7,9 +8,17 @@ import analyser.SpectrumAnalyser;
  * 
  * @author  Stefan Marks
  * @version 1.0 - 16.05.2013: Created
+ * @version 1.1 - 17.10.2026: History length for warm-up of partial analyses
+ *                            Detection as part of a detector stage
+ *                            Warm-up separate from the history length
  */
 public abstract class FeatureDetector 
 { 
+    /**
+     * Warm-up of detectors whose results depend on the whole stream.
+     */
+    public static final int UNBOUNDED_WARM_UP = -1;
+    
     protected FeatureDetector(Feature feature)
     {
         this.feature = feature;
@@ -24,12 +33,49 @@ public abstract class FeatureDetector
      */
     public abstract boolean detectFeature(SpectrumAnalyser analyser);
     
+    /**
+     * Runs the feature detection as part of the detector stage of an analyser.
+     * Detectors that use the band sums of the stage override this method,
+     * by default it runs {@link #detectFeature(SpectrumAnalyser)}.
+     * 
+     * @param stage  the detector stage to run the detection in
+     * @return <code>true</code> if the feature was detected,
+     *         <code>false</code> if not
+     */
+    public boolean detectFeature(DetectorStage stage)
+    {
+        return detectFeature(stage.getAnalyser());
+    }
+    
     /**
      * Returns the detection delay of the feature. 
      * 
      * @return the detection delay in spectrum history steps
      */
     public abstract int getDetectionDelay();
+    
+    /**
+     * Returns the number of previous spectrum history steps 
+     * that the detection looks at.
+     * 
+     * @return the history length in spectrum history steps
+     */
+    public abstract int getHistoryLength();
+    
+    /**
+     * Returns the number of spectrum history steps that an analysis 
+     * that starts in the middle of a stream has to run the detector on
+     * before the results are the same as for the whole stream.
+     * By default, this covers the history length and the detection delay.
+     * Detectors that carry their state over the whole stream override this method.
+     * 
+     * @return the warm-up in spectrum history steps
+     *         or {@link #UNBOUNDED_WARM_UP} if no warm-up gives the same results
+     */
+    public int getWarmUp()
+    {
+        return Math.max(getHistoryLength(), getDetectionDelay());
+    }
             
     /**
      * Gets information about the detected feature.
@@ -0,0 +1,353 @@
+package detector;
+
+import analyser.DetectorStage;
+import analyser.FFTEngine;
+import analyser.SpectrumAnalyser;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Onset detector based on the spectral flux.
+ * <p>
+ * The spectral flux of a frame is the average increase of the raw intensities
+ * of the observed frequency range since the previous frame
+ * (half-wave rectified difference, decreases do not count).
+ * A frame is an onset if its flux is the maximum of the <code>peakRange</code>
+ * frames before and after it, and if it is above an adaptive threshold:
+ * <code>offset + multiplier * m</code>, where <code>m</code> is the mean or
+ * the median of the flux of the <code>windowSize</code> frames before it.
+ * Because of the frames after it, an onset is detected with a delay of
+ * <code>peakRange + 1</code> frames.
+ * <p>
+ * The flux of a frame is calculated only once, when the frame is new,
+ * and the flux values of the threshold window are kept sorted,
+ * so the work per analysis step only depends on the window size.
+ * As part of a {@link DetectorStage}, the flux comes from the stage,
+ * which calculates it once per frame for all detectors.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public class SpectralFluxFeatureDetector extends FeatureDetector
+{
+    /**
+     * Statistics of the flux values that the threshold adapts to.
+     */
+    public enum ThresholdMode
+    {
+        MEAN("Mean"),
+        MEDIAN("Median");
+
+        private ThresholdMode(String name)
+        {
+            this.name = name;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+
+        private final String name;
+    }
+
+    /**
+     * Creates a new spectral flux feature detector with a median threshold.
+     *
+     * @param name      the name of the feature
+     * @param bitNum    the feature bit number to set
+     * @param freqLow   the lower end of the spectrum to observe
+     * @param freqHigh  the upper end of the spectrum to observe
+     */
+    public SpectralFluxFeatureDetector(String name, int bitNum, float freqLow, float freqHigh)
+    {
+        this(name, bitNum, freqLow, freqHigh, ThresholdMode.MEDIAN, 20, 1.5f, 0.002f, 3);
+    }
+
+    /**
+     * Creates a new spectral flux feature detector.
+     *
+     * @param name        the name of the feature
+     * @param bitNum      the feature bit number to set
+     * @param freqLow     the lower end of the spectrum to observe
+     * @param freqHigh    the upper end of the spectrum to observe
+     * @param mode        the statistics the threshold adapts to
+     * @param windowSize  the number of frames that the threshold adapts to
+     * @param multiplier  the factor for the mean or median of the flux
+     * @param offset      the minimum flux above the mean or median
+     * @param peakRange   the number of frames before and after an onset
+     *                    that must have a lower flux
+     */
+    public SpectralFluxFeatureDetector(String name, int bitNum, float freqLow, float freqHigh,
+                                       ThresholdMode mode, int windowSize, float multiplier, float offset, int peakRange)
+    {
+        super(new Feature(name, bitNum));
+        if ( (windowSize < 1) || (peakRange < 1) )
+        {
+            throw new IllegalArgumentException("Invalid window size or peak range");
+        }
+        this.freqLow    = freqLow;
+        this.freqHigh   = freqHigh;
+        this.mode       = mode;
+        this.multiplier = multiplier;
+        this.offset     = offset;
+        this.peakRange  = peakRange;
+
+        specIdxFrom = -1;
+        specIdxTo   = -1;
+        flux        = new float[Math.max(windowSize, peakRange) + peakRange + 1];
+        window      = new float[windowSize];
+        spectrum    = new float[0];
+        previous    = new float[0];
+        lastFrame   = -1;
+    }
+
+    private void determineSpectrumIndices(FFTEngine fft)
+    {
+        if ( specIdxFrom < 0 )
+        {
+            specIdxFrom = fft.freqToIndex(freqLow);
+            specIdxTo   = fft.freqToIndex(freqHigh);
+            specCount   = 1 + specIdxTo - specIdxFrom;
+            spectrum    = new float[specCount];
+            previous    = new float[specCount];
+            LOG.log(Level.FINE,
+                    "Spectral flux feature detector ''{0}'': analysing spectrum indices {1} to {2}",
+                    new Object[] {getFeature().getName(), specIdxFrom, specIdxTo});
+        }
+    }
+
+    /**
+     * Gets the statistics of the flux values that the threshold adapts to.
+     *
+     * @return the threshold mode
+     */
+    public ThresholdMode getThresholdMode()
+    {
+        return mode;
+    }
+
+    @Override
+    public boolean detectFeature(SpectrumAnalyser analyser)
+    {
+        return detect(analyser, null);
+    }
+
+    @Override
+    public boolean detectFeature(DetectorStage stage)
+    {
+        return detect(stage.getAnalyser(), stage);
+    }
+
+    /**
+     * Runs the feature detection.
+     *
+     * @param analyser  the analyser to run the detection on
+     * @param stage     the detector stage with the spectral flux
+     *                  or <code>null</code> to calculate the flux from the raw intensities
+     * @return <code>true</code> if the feature was detected,
+     *         <code>false</code> if not
+     */
+    private boolean detect(SpectrumAnalyser analyser, DetectorStage stage)
+    {
+        // most recent frame in the history
+        // (in a detector stage, the analysis may have moved on already)
+        long frame = (stage != null) ? stage.getFrame() : analyser.getFrameCount() - 1;
+        if ( (frame < flux.length) || (analyser.getHistorySize() < getHistoryLength()) )
+        {
+            // not enough history for the detection yet
+            lastFrame = -1;
+            return false;
+        }
+
+        // what spectrum index is the watch frequency range?
+        determineSpectrumIndices(analyser.getFFTEngine());
+
+        boolean updated = (frame == lastFrame + 1) ? addFrame(analyser, stage, frame) : fillWindows(analyser, stage, frame);
+        if ( !updated )
+        {
+            lastFrame = -1;
+            return false;
+        }
+        lastFrame = frame;
+
+        // peak picking: the candidate is the maximum of its neighbourhood
+        // (the first of equal values wins)
+        long  candidate = frame - peakRange;
+        float value     = flux(candidate);
+        for ( int i = 1 ; i <= peakRange ; i++ )
+        {
+            if ( (flux(candidate - i) >= value) || (flux(candidate + i) > value) ) return false;
+        }
+        return value > offset + multiplier * windowStatistics();
+    }
+
+    /**
+     * Adds the flux of the next frame and moves the threshold window on.
+     *
+     * @param analyser  the analyser to get the frame from
+     * @param stage     the detector stage or <code>null</code>
+     * @param frame     the number of the new frame
+     * @return <code>true</code> if the frame was added,
+     *         <code>false</code> if it is not in the history
+     */
+    private boolean addFrame(SpectrumAnalyser analyser, DetectorStage stage, long frame)
+    {
+        float added = bandFlux(analyser, stage, frame, true);
+        if ( Float.isNaN(added) ) return false;
+
+        // the previous candidate enters the threshold window, the oldest value leaves it
+        // (before its slot in the ring is reused)
+        long candidate = frame - peakRange;
+        removeFromWindow(flux(candidate - 1 - window.length));
+        insertIntoWindow(flux(candidate - 1));
+        flux[slot(frame)] = added;
+        return true;
+    }
+
+    /**
+     * Fills the ring with the flux of all frames from the history,
+     * e.g., at the start or after frames have been missed.
+     *
+     * @param analyser  the analyser to get the frames from
+     * @param stage     the detector stage or <code>null</code>
+     * @param frame     the number of the most recent frame
+     * @return <code>true</code> if the ring was filled,
+     *         <code>false</code> if a frame is not in the history
+     */
+    private boolean fillWindows(SpectrumAnalyser analyser, DetectorStage stage, long frame)
+    {
+        // oldest frame first, so the spectrum of the previous frame can be reused
+        for ( int i = flux.length - 1 ; i >= 0 ; i-- )
+        {
+            float f = bandFlux(analyser, stage, frame - i, i < flux.length - 1);
+            if ( Float.isNaN(f) ) return false;
+            flux[slot(frame - i)] = f;
+        }
+        long candidate = frame - peakRange;
+        for ( int i = 0 ; i < window.length ; i++ )
+        {
+            window[i] = flux(candidate - 1 - i);
+        }
+        Arrays.sort(window);
+        return true;
+    }
+
+    /**
+     * Calculates the spectral flux of the observed frequency range.
+     *
+     * @param analyser      the analyser to get the frames from
+     * @param stage         the detector stage with the spectral flux
+     *                      or <code>null</code> to calculate it from the raw intensities
+     * @param frame         the frame number
+     * @param havePrevious  <code>true</code> if the raw intensities of the previous frame
+     *                      are the ones read in the last call
+     * @return the average increase of the intensity
+     *         or <code>NaN</code> if the frame or its previous frame is not in the history
+     */
+    private float bandFlux(SpectrumAnalyser analyser, DetectorStage stage, long frame, boolean havePrevious)
+    {
+        if ( stage != null )
+        {
+            return (float) (stage.getBandFlux(frame, specIdxFrom, specIdxTo) / specCount);
+        }
+
+        if ( havePrevious )
+        {
+            // the spectrum of the last call becomes the previous one
+            float[] swap = previous;
+            previous = spectrum;
+            spectrum = swap;
+        }
+        else
+        {
+            if ( !analyser.getIntensityRaw(frame - 1, specIdxFrom, specCount, previous) ) return Float.NaN;
+        }
+        if ( !analyser.getIntensityRaw(frame, specIdxFrom, specCount, spectrum) ) return Float.NaN;
+
+        float f = 0.0f;
+        for ( int i = 0 ; i < specCount ; i++ )
+        {
+            f += Math.max(0.0f, spectrum[i] - previous[i]);
+        }
+        return f / specCount;
+    }
+
+    /**
+     * Calculates the mean or median of the threshold window.
+     *
+     * @return the mean or median flux
+     */
+    private float windowStatistics()
+    {
+        if ( mode == ThresholdMode.MEDIAN )
+        {
+            int mid = window.length / 2;
+            return ((window.length & 1) != 0) ? window[mid] : (window[mid - 1] + window[mid]) / 2;
+        }
+        // summing up the sorted values does not depend on the order the frames came in
+        float sum = 0;
+        for ( float f : window )
+        {
+            sum += f;
+        }
+        return sum / window.length;
+    }
+
+    private void removeFromWindow(float value)
+    {
+        int idx = Arrays.binarySearch(window, value);
+        System.arraycopy(window, idx + 1, window, idx, window.length - 1 - idx);
+    }
+
+    private void insertIntoWindow(float value)
+    {
+        // the last element is free after the removal
+        int count = window.length - 1;
+        int idx   = Arrays.binarySearch(window, 0, count, value);
+        if ( idx < 0 ) idx = -idx - 1;
+        System.arraycopy(window, idx, window, idx + 1, count - idx);
+        window[idx] = value;
+    }
+
+    private float flux(long frame)
+    {
+        return flux[slot(frame)];
+    }
+
+    private int slot(long frame)
+    {
+        return (int) (frame % flux.length);
+    }
+
+    @Override
+    public int getDetectionDelay()
+    {
+        return peakRange + 1;
+    }
+
+    @Override
+    public int getHistoryLength()
+    {
+        // the flux of the oldest frame needs the frame before it
+        return flux.length + 1;
+    }
+
+    private float          freqLow, freqHigh;
+    private ThresholdMode  mode;
+    private float          multiplier, offset;
+    private int            peakRange;
+    private int            specIdxFrom, specIdxTo, specCount;
+    // flux of the most recent frames, indexed by frame number
+    private float[]        flux;
+    // flux of the frames before the candidate, sorted
+    private float[]        window;
+    // raw intensities of the observed range of the current and the previous frame
+    private float[]        spectrum, previous;
+    // most recent frame in the ring
+    private long           lastFrame;
+
+    private static final Logger LOG = Logger.getLogger(SpectralFluxFeatureDetector.class.getName());
+}
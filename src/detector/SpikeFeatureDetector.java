@@ -1,20 +1,34 @@
 package detector;
 
+import analyser.DetectorStage;
+import analyser.FFTEngine;
 import analyser.SpectrumAnalyser;
-import analyser.SpectrumInfo;
-import ddf.minim.analysis.FFT;
 
 /**
  * Spike feature detector.
- * 
+ * <p>
+ * The detector compares the average intensity of the observed frequency range
+ * over the most recent <code>peakSize</code> frames with the average over the
+ * <code>avgSize</code> frames before them.
+ * The average intensity of each frame is calculated only once, when the frame
+ * is new. The sums of both windows are updated as the frames move through them,
+ * and only when the result is close to the detection threshold,
+ * the averages are calculated exactly to decide.
+ * As part of a {@link DetectorStage}, the average intensity of a frame
+ * comes from the band sums of the stage instead of summing up the range.
+ *
  * @author  Stefan Marks
  * @version 1.0 - 16.05.2013: Created
+ * @version 1.1 - 17.10.2026: History length
+ *                            Incremental calculation with running sums
+ *                            Band sums of the detector stage
+ *                            Frame of the detector stage for worker threads
  */
 public class SpikeFeatureDetector extends FeatureDetector
-{ 
+{
     /**
      * Creates a new spike feature detector.
-     * 
+     *
      * @param name      the name of the feature
      * @param bitNum    the feature bit number to set
      * @param freqLow   the lower end of the spectrum to observe
@@ -27,94 +41,242 @@ public class SpikeFeatureDetector extends FeatureDetector
         super(new Feature(name, bitNum));
         this.freqLow  = freqLow;
         this.freqHigh = freqHigh;
-       
+
         specIdxFrom = -1;
         specIdxTo   = -1;
-        info     = new SpectrumInfo[peakSize + avgSize];
-        sum      = new float[info.length];
+        sum      = new float[peakSize + avgSize];
         this.peakSize = peakSize;
+        lastFrame = -1;
     }
-    
-    private void determineSpectrumIndices(FFT fft)
+
+    private void determineSpectrumIndices(FFTEngine fft)
     {
         if ( specIdxFrom < 0 )
         {
             specIdxFrom = fft.freqToIndex(freqLow);
             specIdxTo   = fft.freqToIndex(freqHigh);
             specCount   = 1 + specIdxTo - specIdxFrom;
+            spectrum    = new float[specCount];
             System.out.println(
-                "Spike Feature detector '" + getFeature().getName() + 
+                "Spike Feature detector '" + getFeature().getName() +
                 "': analysing spectrum indices " + specIdxFrom + " to " + specIdxTo);
         }
     }
-    
+
     @Override
     public boolean detectFeature(SpectrumAnalyser analyser)
     {
-        boolean detected = false;
-        
-        // get current and previous spectrum intensities
-        boolean allDefined = true;
-        for ( int i = 0 ; i < info.length ; i++ )
+        return detect(analyser, null);
+    }
+
+    @Override
+    public boolean detectFeature(DetectorStage stage)
+    {
+        return detect(stage.getAnalyser(), stage);
+    }
+
+    /**
+     * Runs the feature detection.
+     *
+     * @param analyser  the analyser to run the detection on
+     * @param stage     the detector stage with the band sums
+     *                  or <code>null</code> to sum up the raw intensities
+     * @return <code>true</code> if the feature was detected,
+     *         <code>false</code> if not
+     */
+    private boolean detect(SpectrumAnalyser analyser, DetectorStage stage)
+    {
+        // most recent frame in the history
+        // (in a detector stage, the analysis may have moved on already)
+        long frame = (stage != null) ? stage.getFrame() : analyser.getFrameCount() - 1;
+        if ( (frame < sum.length - 1) || (analyser.getHistorySize() < sum.length) )
         {
-            info[i] = analyser.getSpectrumInfo(i);
-            if ( info[i] == null ) 
-            {
-                // all info entries must be non-null for the next part of the analysis
-                allDefined = false;
-            }
+            // not enough history for the detection yet
+            lastFrame = -1;
+            return false;
         }
-        
-        // did we get all the spectrum info?
-        if ( allDefined )
+
+        // what spectrum index is the watch frequency range?
+        determineSpectrumIndices(analyser.getFFTEngine());
+
+        boolean updated = (frame == lastFrame + 1) ? addFrame(analyser, stage, frame) : fillWindows(analyser, stage, frame);
+        if ( !updated )
         {
-            // what spectrum index is the watch frequency range?
-            determineSpectrumIndices(analyser.getFFT());
+            lastFrame = -1;
+            return false;
+        }
+        lastFrame = frame;
 
-            // calculate sums
-            for ( int iIdx = 0 ; iIdx < info.length ; iIdx++ )
-            {
-                SpectrumInfo si = info[iIdx];
-                sum[iIdx] = 0.0f;        
-                for ( int sIdx = specIdxFrom ; sIdx <= specIdxTo ; sIdx++ )
-                {
-                    sum[iIdx] += si.intensityRaw[sIdx];
-                }
-                sum[iIdx] /= specCount;
-            }
-            
-            // calculate average
-            float avg = 0;
-            for ( int i = peakSize ; i < sum.length ; i++ )
+        // The float sums of the exact calculation differ from the running sums by rounding errors only.
+        // Below the threshold by more than that, the feature cannot be detected.
+        int   avgSize   = sum.length - peakSize;
+        float tolerance = 4 * sum.length * Math.ulp(1.0f) *
+                          (float) (peakAbsTotal / peakSize + 1.1 * avgAbsTotal / avgSize);
+        if ( peakTotal / peakSize - 1.1 * avgTotal / avgSize < -tolerance )
+        {
+            return false;
+        }
+
+        // close to or above the threshold: calculate exactly
+        // with the same operations in the same order as summing up all frames
+        float avg = 0;
+        for ( int i = peakSize ; i < sum.length ; i++ )
+        {
+            avg += sum(frame - i);
+        }
+        avg /= avgSize;
+
+        int aboveCount = 0;
+        float peakSum = 0;
+        for ( int i = 0 ; i < peakSize ; i++ )
+        {
+            float s = sum(frame - i);
+            peakSum += s;
+            if ( s > avg ) { aboveCount++; }
+        }
+        peakSum /= peakSize;
+        return (peakSum > 1.1 * avg) &&
+               (aboveCount > peakSize * 4 / 5);
+    }
+
+    /**
+     * Adds the next frame to the windows.
+     *
+     * @param analyser  the analyser to get the frame from
+     * @param stage     the detector stage or <code>null</code>
+     * @param frame     the number of the new frame
+     * @return <code>true</code> if the frame was added,
+     *         <code>false</code> if it is not in the history
+     */
+    private boolean addFrame(SpectrumAnalyser analyser, DetectorStage stage, long frame)
+    {
+        float added = bandAverage(analyser, stage, frame);
+        if ( Float.isNaN(added) ) return false;
+
+        // the frame leaving the peak window enters the average window,
+        // the oldest frame leaves the average window (and its slot is reused)
+        float oldest = sum(frame - sum.length);
+        float moved  = sum(frame - peakSize);
+        sum[slot(frame)] = added;
+
+        if ( slot(frame) == 0 )
+        {
+            // once per round, start again with exact sums to avoid drifting
+            updateTotals(frame);
+        }
+        else
+        {
+            peakTotal    += added - moved;
+            peakAbsTotal += Math.abs(added) - Math.abs(moved);
+            avgTotal     += moved - oldest;
+            avgAbsTotal  += Math.abs(moved) - Math.abs(oldest);
+        }
+        return true;
+    }
+
+    /**
+     * Fills the windows with all frames from the history,
+     * e.g., at the start or after frames have been missed.
+     *
+     * @param analyser  the analyser to get the frames from
+     * @param stage     the detector stage or <code>null</code>
+     * @param frame     the number of the most recent frame
+     * @return <code>true</code> if the windows were filled,
+     *         <code>false</code> if a frame is not in the history
+     */
+    private boolean fillWindows(SpectrumAnalyser analyser, DetectorStage stage, long frame)
+    {
+        for ( int i = 0 ; i < sum.length ; i++ )
+        {
+            float s = bandAverage(analyser, stage, frame - i);
+            if ( Float.isNaN(s) ) return false;
+            sum[slot(frame - i)] = s;
+        }
+        updateTotals(frame);
+        return true;
+    }
+
+    /**
+     * Calculates the sums of both windows.
+     *
+     * @param frame  the number of the most recent frame
+     */
+    private void updateTotals(long frame)
+    {
+        peakTotal = peakAbsTotal = avgTotal = avgAbsTotal = 0;
+        for ( int i = 0 ; i < sum.length ; i++ )
+        {
+            float s = sum(frame - i);
+            if ( i < peakSize )
             {
-                avg += sum[i];
+                peakTotal    += s;
+                peakAbsTotal += Math.abs(s);
             }
-            avg /= sum.length - peakSize;
-            
-            int aboveCount = 0;
-            float peakSum = 0;
-            for ( int i = 0 ; i < peakSize ; i++ )
+            else
             {
-                peakSum += sum[i];
-                if ( sum[i] > avg ) { aboveCount++; }
+                avgTotal    += s;
+                avgAbsTotal += Math.abs(s);
             }
-            peakSum /= peakSize;
-            detected = (peakSum > 1.1 * avg) &&
-                       (aboveCount > peakSize * 4 / 5);
         }
-        return detected;
     }
-    
+
+    /**
+     * Calculates the average raw intensity of the observed frequency range.
+     *
+     * @param analyser  the analyser to get the frame from
+     * @param stage     the detector stage with the band sums
+     *                  or <code>null</code> to sum up the raw intensities
+     * @param frame     the frame number
+     * @return the average intensity or <code>NaN</code> if the frame is not in the history
+     */
+    private float bandAverage(SpectrumAnalyser analyser, DetectorStage stage, long frame)
+    {
+        if ( stage != null )
+        {
+            return (float) (stage.getBandSum(frame, specIdxFrom, specIdxTo) / specCount);
+        }
+
+        if ( !analyser.getIntensityRaw(frame, specIdxFrom, specCount, spectrum) ) return Float.NaN;
+        float s = 0.0f;
+        for ( int i = 0 ; i < specCount ; i++ )
+        {
+            s += spectrum[i];
+        }
+        return s / specCount;
+    }
+
+    private float sum(long frame)
+    {
+        return sum[slot(frame)];
+    }
+
+    private int slot(long frame)
+    {
+        return (int) (frame % sum.length);
+    }
+
     @Override
     public int getDetectionDelay()
     {
-        return peakSize; 
+        return peakSize;
     }
-    
+
+    @Override
+    public int getHistoryLength()
+    {
+        return sum.length;
+    }
+
     private float          freqLow, freqHigh;
     private int            specIdxFrom, specIdxTo, specCount;
-    private SpectrumInfo[] info;
+    // raw intensities of the frequency range of a frame
+    private float[]        spectrum;
+    // average intensity of the frames in the windows, indexed by frame number
     private float[]        sum;
     private int            peakSize;
-    
+    // most recent frame in the windows
+    private long           lastFrame;
+    // running sums of the peak and average windows (and of their absolute values)
+    private double         peakTotal, peakAbsTotal, avgTotal, avgAbsTotal;
+
 }
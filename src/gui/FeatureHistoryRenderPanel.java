@@ -1,7 +1,6 @@
 package gui;
 
 import analyser.SpectrumAnalyser;
-import analyser.SpectrumInfo;
 import detector.Feature;
 import java.awt.Color;
 import java.awt.Dimension;
@@ -16,6 +15,7 @@ import javax.swing.JPanel;
  * 
  * @author  Stefan Marks
  * @version 1.0 - 10.05.2013: Created
+ * @version 1.1 - 17.10.2026: Features are read without creating frame views
  */
 public class FeatureHistoryRenderPanel 
     extends JPanel 
@@ -54,15 +54,14 @@ public class FeatureHistoryRenderPanel
         // draw features
         List<Feature> features = analyser.getDetectedFeatures();
         int ySize = bounds.height / features.size();
-        for ( int x = 0 ; x < analyser.getHistorySize() ; x++ )
+        long frame = analyser.getFrameCount() - 1;
+        int  count = (int) Math.min(analyser.getHistorySize(), frame + 1);
+        for ( int x = 0 ; x < count ; x++ )
         {   
-            SpectrumInfo info = analyser.getSpectrumInfo(x);
-            if ( info == null ) break;
-            
             int y = 0;
             for ( Feature f : features )
             {
-                if ( info.hasFeature(f) )
+                if ( analyser.hasFeature(frame - x, f) )
                 {
                     g.drawLine(x, y, x, y + ySize - 1);
                 }
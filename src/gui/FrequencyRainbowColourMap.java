@@ -22,11 +22,11 @@ public class FrequencyRainbowColourMap implements ColourMap
     @Override
     public Color getColor(SpectrumInfo info, int frequencyIdx)
     {
-        if ( (map == null) || (map.length != info.intensity.length) ) 
+        if ( (map == null) || (map.length != info.getIntensityCount()) ) 
         {
-            initColourMap(info.intensity.length);
+            initColourMap(info.getIntensityCount());
         }
-        float intensity = info.intensity[frequencyIdx];
+        float intensity = info.getIntensity(frequencyIdx);
         int maxIdx = map[0].length;
         int idx = (int) (intensity * maxIdx);
         if ( idx < 0       ) { idx = 0;          }
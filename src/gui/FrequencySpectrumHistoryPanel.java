@@ -1,5 +1,6 @@
 package gui;
 
+import analyser.Channel;
 import analyser.SpectrumAnalyser;
 import analyser.SpectrumInfo;
 import java.awt.AWTEvent;
@@ -84,10 +85,12 @@ public class FrequencySpectrumHistoryPanel extends JPanel implements SpectrumAna
         // draw signal
         int xSize  = Math.min(bounds.width, analyser.getHistorySize());
         int ySteps = analyser.getSpectrumBandCount();
+        // fix the most recent frame so all columns refer to the same time
+        long frame = analyser.getFrameCount() - 1;
         
         for ( int x = 0 ; x < xSize ; x++ )
         {   
-            SpectrumInfo info = analyser.getSpectrumInfo(x);
+            SpectrumInfo info = analyser.getSpectrumInfoForFrame(frame - x);
             if ( info == null ) break;
             
             for ( int i = 0; i < ySteps ; i++ )
@@ -109,12 +112,16 @@ public class FrequencySpectrumHistoryPanel extends JPanel implements SpectrumAna
             g.drawLine(0, y, bounds.width, y);
             // draw intensity curve for that band
             g.setColor(Color.white);
+            if ( (curve == null) || (curve.length < xSize) )
+            {
+                curve = new float[xSize];
+            }
+            Channel channel = analyser.getChannels().iterator().next();
+            int     count   = analyser.getBandHistory(channel, idx, frame, xSize, curve);
             int yOld = yBase;    
-            for ( int x = 0 ; x < xSize ; x++ )
+            for ( int x = 0 ; x < count ; x++ )
             {   
-                SpectrumInfo info = analyser.getSpectrumInfo(x);
-                if ( info == null ) break;
-                y = yBase - (int) (info.intensity[idx] * bounds.height / maxSI);
+                y = yBase - (int) (curve[x] * bounds.height / maxSI);
                 g.drawLine(x-1, yOld, x, y);
                 yOld = y;
             } 
@@ -123,4 +130,5 @@ public class FrequencySpectrumHistoryPanel extends JPanel implements SpectrumAna
     
     private SpectrumAnalyser analyser;   
     private ColourMap        colourMap;
+    private float[]          curve;
 }
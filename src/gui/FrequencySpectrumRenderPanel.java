@@ -27,7 +27,8 @@ public class FrequencySpectrumRenderPanel
     {
         super(null, false);
         
-        spectrum = null;
+        // the panel paints from its own copy of the most recent spectrum
+        spectrum = new SpectrumInfo();
         
         strokeCentreLine = new BasicStroke(1);
         strokeSignal     = new BasicStroke(1);
@@ -81,7 +82,6 @@ public class FrequencySpectrumRenderPanel
     @Override
     public void analysisUpdated(SpectrumAnalyser analyser)
     {
-        spectrum = analyser.getSpectrumInfo(0);
         repaint();
     }
   
@@ -99,12 +99,12 @@ public class FrequencySpectrumRenderPanel
         Rectangle r = new Rectangle();
         
         // draw signal
-        if ( (spectrum != null) && spectrum.isDefined() )
+        if ( analyser.copySpectrumInfo(analyser.getFrameCount() - 1, spectrum) )
         {   
             Point mp = getMousePosition();
-            xScale = getBounds().width / spectrum.intensity.length;
+            xScale = getBounds().width / spectrum.getIntensityCount();
             g.setStroke(strokeSignal);
-            for ( int i = 0 ; i < spectrum.intensity.length ; i++ )
+            for ( int i = 0 ; i < spectrum.getIntensityCount() ; i++ )
             {
                 // calculate rectangle for full bar
                 r.x      = i * xScale + 1;
@@ -117,7 +117,7 @@ public class FrequencySpectrumRenderPanel
                 
                 // calculate real bar height based on intensity
                 final float maxSI = SpectrumInfo.MAX_SPECTRUM;
-                float si = spectrum.intensity[i];
+                float si = spectrum.getIntensity(i);
                 r.height = (int) (yScale * si / maxSI);
                 r.y = yPos - r.height;
                 g.setColor(colourMap.getColor(spectrum, i));
@@ -127,7 +127,7 @@ public class FrequencySpectrumRenderPanel
                     g.drawRect(r.x, r.y, r.width, r.height);
                     // draw frequency info
                     g.setColor(getForeground());
-                    String str = String.format("Frequency: %.0f Hz", analyser.getFFT().getAverageCenterFrequency(i));
+                    String str = String.format("Frequency: %.0f Hz", analyser.getFFTEngine().getAverageCenterFrequency(i));
                     g.drawString(str, getBounds().width / 2, 20);
                     str = String.format("Amplitude: %.2f", si);
                     g.drawString(str, getBounds().width / 2, 40);
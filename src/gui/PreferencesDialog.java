@@ -12,6 +12,7 @@ import output.OscOutputModule;
  * @author  Stefan Marks
  * @version 1.0 - 15.06.2013: Created
  * @version 1.1 - 20.06.2013: Adapted to selectable colour maps and OSC output
+ * @version 1.2 - 17.10.2026: Segment length, size and retention of the file output
  */
 public class PreferencesDialog extends javax.swing.JDialog
 {
@@ -51,12 +52,18 @@ public class PreferencesDialog extends javax.swing.JDialog
     {
         chkEnableLogfileOutput.setSelected(output.isEnabled());
         txtOutputFilename.setText(output.getOutputFilename());
+        spnSegmentDuration.setValue(output.getSegmentDuration() / 60);
+        spnSegmentSize.setValue((int) (output.getSegmentSize() / BYTES_PER_MB));
+        spnMaxSegments.setValue(output.getMaxSegments());
     }
 
     public void applyFileOutputSettings(FileSpectrumOutputModule output)
     {
         output.setEnabled(chkEnableLogfileOutput.isSelected());
         output.setOutputFilename(txtOutputFilename.getText());
+        output.setSegmentDuration(((Number) spnSegmentDuration.getValue()).intValue() * 60);
+        output.setSegmentSize(((Number) spnSegmentSize.getValue()).longValue() * BYTES_PER_MB);
+        output.setMaxSegments(((Number) spnMaxSegments.getValue()).intValue());
     }
 
     public void loadOscOutputSettings(OscOutputModule output)
@@ -100,6 +107,12 @@ public class PreferencesDialog extends javax.swing.JDialog
         chkEnableLogfileOutput = new javax.swing.JCheckBox();
         javax.swing.JLabel lblOutputFilename = new javax.swing.JLabel();
         txtOutputFilename = new javax.swing.JTextField();
+        javax.swing.JLabel lblSegmentDuration = new javax.swing.JLabel();
+        spnSegmentDuration = new javax.swing.JSpinner();
+        javax.swing.JLabel lblSegmentSize = new javax.swing.JLabel();
+        spnSegmentSize = new javax.swing.JSpinner();
+        javax.swing.JLabel lblMaxSegments = new javax.swing.JLabel();
+        spnMaxSegments = new javax.swing.JSpinner();
         pnlOscOutput = new javax.swing.JPanel();
         javax.swing.JLabel lblEnableOscOutput = new javax.swing.JLabel();
         chkEnableOscOutput = new javax.swing.JCheckBox();
@@ -156,6 +169,60 @@ public class PreferencesDialog extends javax.swing.JDialog
         gridBagConstraints.insets = new java.awt.Insets(6, 0, 0, 0);
         pnlFileOutput.add(txtOutputFilename, gridBagConstraints);
 
+        lblSegmentDuration.setText("Segment Length (min):");
+        lblSegmentDuration.setToolTipText("0: not limited, live input is split every hour");
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 2;
+        gridBagConstraints.fill = java.awt.GridBagConstraints.BOTH;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
+        gridBagConstraints.insets = new java.awt.Insets(6, 0, 0, 6);
+        pnlFileOutput.add(lblSegmentDuration, gridBagConstraints);
+
+        spnSegmentDuration.setModel(new javax.swing.SpinnerNumberModel(0, 0, 1440, 1));
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 1;
+        gridBagConstraints.gridy = 2;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_START;
+        gridBagConstraints.insets = new java.awt.Insets(6, 0, 0, 0);
+        pnlFileOutput.add(spnSegmentDuration, gridBagConstraints);
+
+        lblSegmentSize.setText("Segment Size (MB):");
+        lblSegmentSize.setToolTipText("0: not limited");
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 3;
+        gridBagConstraints.fill = java.awt.GridBagConstraints.BOTH;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
+        gridBagConstraints.insets = new java.awt.Insets(6, 0, 0, 6);
+        pnlFileOutput.add(lblSegmentSize, gridBagConstraints);
+
+        spnSegmentSize.setModel(new javax.swing.SpinnerNumberModel(0, 0, 100000, 10));
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 1;
+        gridBagConstraints.gridy = 3;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_START;
+        gridBagConstraints.insets = new java.awt.Insets(6, 0, 0, 0);
+        pnlFileOutput.add(spnSegmentSize, gridBagConstraints);
+
+        lblMaxSegments.setText("Segments Kept:");
+        lblMaxSegments.setToolTipText("0: all segments, the last 24 of live input");
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 0;
+        gridBagConstraints.gridy = 4;
+        gridBagConstraints.fill = java.awt.GridBagConstraints.BOTH;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
+        gridBagConstraints.insets = new java.awt.Insets(6, 0, 0, 6);
+        pnlFileOutput.add(lblMaxSegments, gridBagConstraints);
+
+        spnMaxSegments.setModel(new javax.swing.SpinnerNumberModel(0, 0, 10000, 1));
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 1;
+        gridBagConstraints.gridy = 4;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.LINE_START;
+        gridBagConstraints.insets = new java.awt.Insets(6, 0, 0, 0);
+        pnlFileOutput.add(spnMaxSegments, gridBagConstraints);
+
         panelTabs.addTab("File Output", pnlFileOutput);
 
         pnlOscOutput.setBorder(javax.swing.BorderFactory.createEmptyBorder(5, 5, 5, 5));
@@ -281,6 +348,9 @@ public class PreferencesDialog extends javax.swing.JDialog
     private javax.swing.JPanel pnlColourMap;
     private javax.swing.JPanel pnlFileOutput;
     private javax.swing.JPanel pnlOscOutput;
+    private javax.swing.JSpinner spnMaxSegments;
+    private javax.swing.JSpinner spnSegmentDuration;
+    private javax.swing.JSpinner spnSegmentSize;
     private javax.swing.JTextField txtNetworkAddress;
     private javax.swing.JTextField txtOscAddress;
     private javax.swing.JTextField txtOutputFilename;
@@ -288,4 +358,6 @@ public class PreferencesDialog extends javax.swing.JDialog
 
     private UserChoice userChoice;
     private DefaultComboBoxModel<ColourMap> cbxModelColourMap;
+
+    private static final long BYTES_PER_MB = 1024 * 1024;
 }
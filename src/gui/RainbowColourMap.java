@@ -25,7 +25,7 @@ public class RainbowColourMap implements ColourMap
         {
             initColourMap();
         }
-        float intensity = info.intensity[frequencyIdx];
+        float intensity = info.getIntensity(frequencyIdx);
         int idx = (int) (intensity * map.length);
         if ( idx < 0           ) { idx = 0; }
         if ( idx >= map.length ) { idx = map.length - 1; }
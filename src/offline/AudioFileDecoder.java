@@ -0,0 +1,142 @@
+package offline;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Class for decoding an audio file into blocks of float samples
+ * without an audio device.
+ * <p>
+ * The file is converted to 16 bit signed PCM by the Java Sound API
+ * and scaled to the range -1...1 the same way minim does it.
+ * Mono files are returned with identical left and right channels,
+ * files with more than two channels are reduced to the first two.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public class AudioFileDecoder implements Closeable
+{
+    /**
+     * Opens an audio file for decoding.
+     *
+     * @param file  the audio file
+     * @throws IOException                    if the file cannot be read
+     * @throws UnsupportedAudioFileException  if the file format is not supported
+     */
+    public AudioFileDecoder(File file) throws IOException, UnsupportedAudioFileException
+    {
+        AudioInputStream source = AudioSystem.getAudioInputStream(file);
+        AudioFormat      format = source.getFormat();
+        channels   = Math.max(1, format.getChannels());
+        sampleRate = format.getSampleRate();
+        frameCount = source.getFrameLength();
+
+        AudioFormat pcm = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
+                                          sampleRate, 16, channels, channels * 2,
+                                          sampleRate, false);
+        stream = AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding()) &&
+                 (format.getSampleSizeInBits() == 16) && !format.isBigEndian() ?
+                 source : AudioSystem.getAudioInputStream(pcm, source);
+        bytes  = new byte[0];
+    }
+
+    /**
+     * Gets the sample rate of the file.
+     *
+     * @return the sample rate in Hz
+     */
+    public float getSampleRate()
+    {
+        return sampleRate;
+    }
+
+    /**
+     * Gets the number of channels in the file.
+     *
+     * @return the number of channels
+     */
+    public int getChannels()
+    {
+        return channels;
+    }
+
+    /**
+     * Gets the length of the file.
+     *
+     * @return the number of samples per channel or -1 if unknown
+     */
+    public long getLength()
+    {
+        return (frameCount == AudioSystem.NOT_SPECIFIED) ? -1 : frameCount;
+    }
+
+    /**
+     * Gets the length of the file in seconds.
+     *
+     * @return the length in seconds or -1 if unknown
+     */
+    public double getDuration()
+    {
+        return (getLength() < 0) ? -1 : getLength() / (double) sampleRate;
+    }
+
+    /**
+     * Decodes the next block of samples.
+     * The method blocks until the arrays are filled or the end of the file is reached.
+     *
+     * @param left   the array for the left channel samples
+     * @param right  the array for the right channel samples (same length as <code>left</code>)
+     * @return the number of samples per channel that were decoded
+     *         or -1 if the end of the file has been reached
+     * @throws IOException  if the file cannot be read
+     */
+    public int read(float[] left, float[] right) throws IOException
+    {
+        int frameSize = channels * 2;
+        int size      = left.length * frameSize;
+        if ( bytes.length < size )
+        {
+            bytes = new byte[size];
+        }
+
+        int filled = 0;
+        while ( filled < size )
+        {
+            int count = stream.read(bytes, filled, size - filled);
+            if ( count < 0 ) break;
+            filled += count;
+        }
+        int samples = filled / frameSize;
+        if ( samples == 0 ) return -1;
+
+        for ( int i = 0, b = 0 ; i < samples ; i++, b += frameSize )
+        {
+            left[i] = sample(b);
+            right[i] = (channels > 1) ? sample(b + 2) : left[i];
+        }
+        return samples;
+    }
+
+    private float sample(int idx)
+    {
+        return (short) ((bytes[idx] & 0xFF) | (bytes[idx + 1] << 8)) / 32768f;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        stream.close();
+    }
+
+    private final AudioInputStream stream;
+    private final int              channels;
+    private final float            sampleRate;
+    private final long             frameCount;
+    private byte[]                 bytes;
+}
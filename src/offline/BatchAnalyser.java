@@ -0,0 +1,337 @@
+package offline;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * Class for analysing many audio files in parallel.
+ * <p>
+ * The files are distributed over a fixed number of worker threads.
+ * Each worker creates its own {@link OfflineAnalyser} (including the spectrum
+ * analyser, detectors and output modules) once and analyses one file at a time
+ * with it, so the workers share no analysis state.
+ * A file that cannot be analysed is reported in its result
+ * and does not stop the batch.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public class BatchAnalyser
+{
+    /**
+     * Factory for the offline analysers of the worker threads.
+     */
+    public interface AnalyserFactory
+    {
+        /**
+         * Creates an offline analyser for a worker thread.
+         *
+         * @return the offline analyser
+         */
+        OfflineAnalyser createAnalyser();
+    }
+
+    /**
+     * Result of the analysis of one file.
+     */
+    public static class Result
+    {
+        Result(File file, double duration, double time, Exception error)
+        {
+            this.file     = file;
+            this.duration = duration;
+            this.time     = time;
+            this.error    = error;
+        }
+
+        /**
+         * Gets the analysed file.
+         *
+         * @return the file
+         */
+        public File getFile()
+        {
+            return file;
+        }
+
+        /**
+         * Gets the length of the analysed audio.
+         *
+         * @return the length in seconds
+         */
+        public double getDuration()
+        {
+            return duration;
+        }
+
+        /**
+         * Gets the time it took to analyse the file.
+         *
+         * @return the analysis time in seconds
+         */
+        public double getTime()
+        {
+            return time;
+        }
+
+        /**
+         * Gets the error that stopped the analysis of the file.
+         *
+         * @return the error or <code>null</code> if the file was analysed successfully
+         */
+        public Exception getError()
+        {
+            return error;
+        }
+
+        /**
+         * Checks if the file was analysed successfully.
+         *
+         * @return <code>true</code> if the file was analysed,
+         *         <code>false</code> if there was an error
+         */
+        public boolean isSuccessful()
+        {
+            return error == null;
+        }
+
+        private final File      file;
+        private final double    duration, time;
+        private final Exception error;
+    }
+
+    /**
+     * Creates a batch analyser with one worker per processor core.
+     *
+     * @param factory  the factory for the offline analysers of the workers
+     */
+    public BatchAnalyser(AnalyserFactory factory)
+    {
+        this(factory, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a batch analyser.
+     *
+     * @param factory  the factory for the offline analysers of the workers
+     * @param threads  the number of worker threads
+     */
+    public BatchAnalyser(final AnalyserFactory factory, int threads)
+    {
+        this.threads = Math.max(1, threads);
+        workerAnalyser = new ThreadLocal<OfflineAnalyser>()
+        {
+            @Override
+            protected OfflineAnalyser initialValue()
+            {
+                return factory.createAnalyser();
+            }
+        };
+    }
+
+    /**
+     * Gets the number of worker threads.
+     *
+     * @return the number of worker threads
+     */
+    public int getThreadCount()
+    {
+        return threads;
+    }
+
+    /**
+     * Analyses a list of files.
+     *
+     * @param files  the files to analyse
+     * @return the results in the order of the files
+     * @throws InterruptedException  if the calling thread is interrupted while waiting
+     */
+    public List<Result> analyse(List<File> files) throws InterruptedException
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())), new WorkerThreadFactory());
+        try
+        {
+            List<Future<Result>> futures = new ArrayList<Future<Result>>(files.size());
+            for ( final File file : files )
+            {
+                futures.add(pool.submit(new Callable<Result>()
+                {
+                    @Override
+                    public Result call()
+                    {
+                        return analyseFile(file);
+                    }
+                }));
+            }
+
+            List<Result> results = new ArrayList<Result>(files.size());
+            for ( int i = 0 ; i < futures.size() ; i++ )
+            {
+                try
+                {
+                    results.add(futures.get(i).get());
+                }
+                catch ( ExecutionException e )
+                {
+                    // analyseFile() catches all exceptions, this is an error of the worker itself
+                    results.add(new Result(files.get(i), 0, 0, new Exception(e.getCause())));
+                }
+            }
+            return results;
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    private Result analyseFile(File file)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            double duration = workerAnalyser.get().analyse(file);
+            return new Result(file, duration, (System.nanoTime() - start) / 1e9, null);
+        }
+        catch ( Exception e )
+        {
+            return new Result(file, 0, (System.nanoTime() - start) / 1e9, e);
+        }
+    }
+
+    /**
+     * Collects the audio files for a batch.
+     * Directories are searched (not recursively) for files with an extension
+     * that the Java Sound API can read, other entries are used as they are.
+     *
+     * @param paths  the files and directories
+     * @return the list of files
+     */
+    public static List<File> collectFiles(String... paths)
+    {
+        List<String> extensions = new LinkedList<String>();
+        for ( AudioFileFormat.Type type : AudioSystem.getAudioFileTypes() )
+        {
+            extensions.add("." + type.getExtension().toLowerCase());
+        }
+
+        List<File> files = new ArrayList<File>();
+        for ( String path : paths )
+        {
+            File file = new File(path);
+            if ( file.isDirectory() )
+            {
+                File[] entries = file.listFiles();
+                if ( entries == null ) continue;
+                Arrays.sort(entries);
+                for ( File entry : entries )
+                {
+                    String name = entry.getName().toLowerCase();
+                    for ( String extension : extensions )
+                    {
+                        if ( entry.isFile() && name.endsWith(extension) )
+                        {
+                            files.add(entry);
+                            break;
+                        }
+                    }
+                }
+            }
+            else
+            {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Analyses the audio files and directories given on the command line and
+     * writes the spectrum of each file into a text file next to it.
+     * <p>
+     * Usage: <code>java offline.BatchAnalyser [-t threads] &lt;file or directory&gt; ...</code>
+     *
+     * @param args  the command line arguments
+     * @throws InterruptedException  if the batch is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException
+    {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int first   = 0;
+        if ( (args.length >= 2) && args[0].equals("-t") )
+        {
+            threads = Integer.parseInt(args[1]);
+            first   = 2;
+        }
+        if ( first >= args.length )
+        {
+            System.err.println("Usage: java offline.BatchAnalyser [-t threads] <file or directory> ...");
+            System.exit(1);
+        }
+
+        List<File> files = collectFiles(Arrays.copyOfRange(args, first, args.length));
+        BatchAnalyser batch = new BatchAnalyser(new AnalyserFactory()
+        {
+            @Override
+            public OfflineAnalyser createAnalyser()
+            {
+                return OfflineAnalyser.createWithFileOutput();
+            }
+        }, threads);
+
+        long         start   = System.nanoTime();
+        List<Result> results = batch.analyse(files);
+        double       time    = (System.nanoTime() - start) / 1e9;
+
+        double audio  = 0;
+        int    errors = 0;
+        for ( Result result : results )
+        {
+            if ( result.isSuccessful() )
+            {
+                audio += result.getDuration();
+                System.out.printf("%s: %.1fs of audio in %.2fs%n",
+                                  result.getFile().getName(), result.getDuration(), result.getTime());
+            }
+            else
+            {
+                errors++;
+                System.err.println(result.getFile().getName() + ": " + result.getError());
+            }
+        }
+        System.out.printf("%d files (%d failed), %.1fs of audio in %.2fs with %d threads: %.1f audio-seconds per second%n",
+                          results.size(), errors, audio, time, batch.getThreadCount(), audio / time);
+        System.exit((errors > 0) ? 1 : 0);
+    }
+
+    /**
+     * Thread factory for named daemon worker threads.
+     */
+    private static class WorkerThreadFactory implements ThreadFactory
+    {
+        @Override
+        public Thread newThread(Runnable r)
+        {
+            Thread thread = new Thread(r, "BatchAnalyser-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+        private final AtomicInteger counter = new AtomicInteger();
+    }
+
+    private final int                         threads;
+    private final ThreadLocal<OfflineAnalyser> workerAnalyser;
+}
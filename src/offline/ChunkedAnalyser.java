@@ -0,0 +1,478 @@
+package offline;
+
+import analyser.SpectrumAnalyser;
+import analyser.SpectrumInfo;
+import detector.FeatureDetector;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import output.FileSpectrumOutputModule;
+import output.OutputModule;
+
+/**
+ * Class for analysing a single long audio file on several processor cores.
+ * <p>
+ * The file is split into chunks of analysis frames that are analysed in parallel
+ * by a fork/join pool, each chunk with its own spectrum analyser.
+ * The samples of consecutive chunks overlap by the FFT window,
+ * so the frames at the chunk boundaries are calculated from the same samples
+ * as in an analysis of the whole file.
+ * In addition, each chunk starts with the warm-up frames that the feature detectors
+ * need (see {@link SpectrumAnalyser#getDetectorWarmUp()}). The detectors run on the
+ * warm-up frames without setting features, and the features that a chunk detects
+ * in its warm-up frames, because of the detection delay, are added to the previous chunk.
+ * The detected features are therefore the same as in a sequential analysis.
+ * Detectors that depend on the whole stream (see {@link FeatureDetector#getWarmUp()})
+ * can not run in chunks.
+ * <p>
+ * The analysed chunks are stitched back together in order and published
+ * through the main analyser (see {@link SpectrumAnalyser#publishFrame(SpectrumInfo, SpectrumInfo)}),
+ * so its listeners and output modules receive one ordered spectrum stream.
+ * The feature detectors of the main analyser are not used.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public class ChunkedAnalyser
+{
+    /**
+     * Factory for the spectrum analysers of the chunks.
+     */
+    public interface AnalyserFactory
+    {
+        /**
+         * Creates a spectrum analyser for a chunk.
+         * The analyser has to use the same settings as the main analyser
+         * and needs its own instances of the feature detectors.
+         *
+         * @param historySize  the history size that is necessary to keep all frames of the chunk
+         * @return the spectrum analyser
+         */
+        SpectrumAnalyser createAnalyser(int historySize);
+    }
+
+    /**
+     * Default length of a chunk in seconds.
+     */
+    public static final double DEFAULT_CHUNK_LENGTH = 30;
+
+    /**
+     * Creates a chunked analyser with one worker per processor core.
+     *
+     * @param analyser  the main analyser that the chunks are published through
+     * @param factory   the factory for the analysers of the chunks
+     */
+    public ChunkedAnalyser(SpectrumAnalyser analyser, AnalyserFactory factory)
+    {
+        this(analyser, factory, Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_LENGTH);
+    }
+
+    /**
+     * Creates a chunked analyser.
+     *
+     * @param analyser     the main analyser that the chunks are published through
+     * @param factory      the factory for the analysers of the chunks
+     * @param threads      the number of worker threads
+     * @param chunkLength  the length of a chunk in seconds
+     */
+    public ChunkedAnalyser(SpectrumAnalyser analyser, AnalyserFactory factory, int threads, double chunkLength)
+    {
+        this.analyser    = analyser;
+        this.factory     = factory;
+        this.threads     = Math.max(1, threads);
+        this.chunkLength = chunkLength;
+        blockSize        = OfflineAnalyser.DEFAULT_BLOCK_SIZE;
+        outputModules    = new LinkedList<OutputModule>();
+    }
+
+    /**
+     * Gets the main spectrum analyser.
+     *
+     * @return the spectrum analyser
+     */
+    public SpectrumAnalyser getAnalyser()
+    {
+        return analyser;
+    }
+
+    /**
+     * Gets the number of worker threads.
+     *
+     * @return the number of worker threads
+     */
+    public int getThreadCount()
+    {
+        return threads;
+    }
+
+    /**
+     * Gets the length of a chunk.
+     *
+     * @return the length of a chunk in seconds
+     */
+    public double getChunkLength()
+    {
+        return chunkLength;
+    }
+
+    /**
+     * Adds an output module that is informed about the analysed files.
+     * The module has to be registered as a listener of the main analyser already.
+     *
+     * @param module  the output module to add
+     */
+    public void addOutputModule(OutputModule module)
+    {
+        outputModules.add(module);
+    }
+
+    /**
+     * Analyses an audio file.
+     *
+     * @param file  the audio file to analyse
+     * @return the length of the analysed audio in seconds
+     * @throws IOException                    if the file cannot be read
+     * @throws UnsupportedAudioFileException  if the file format is not supported
+     * @throws IllegalStateException          if the feature detectors can not run in chunks
+     */
+    public double analyse(File file) throws IOException, UnsupportedAudioFileException
+    {
+        AudioFileDecoder decoder = new AudioFileDecoder(file);
+        try
+        {
+            float rate   = decoder.getSampleRate();
+            long  length = decoder.getLength();
+            analyser.attachToStream(rate, blockSize, length);
+            int step   = analyser.getAnalysisStep();
+            int window = analyser.getFFTEngine().timeSize();
+            int chunkFrames = Math.max(1, (int) Math.round(chunkLength * rate / step));
+
+            // the first chunk has no warm-up frames, so its analyser only keeps the frames of the chunk
+            // and tells the warm-up of the detectors
+            SpectrumAnalyser firstAnalyser = factory.createAnalyser(chunkFrames);
+            int warmUp = firstAnalyser.getDetectorWarmUp();
+            if ( warmUp == FeatureDetector.UNBOUNDED_WARM_UP )
+            {
+                throw new IllegalStateException("The feature detectors depend on the whole stream and can not analyse chunks");
+            }
+            if ( warmUp > chunkFrames )
+            {
+                // a chunk must not be shorter than the warm-up,
+                // otherwise delayed features could reach beyond the previous chunk
+                chunkFrames   = warmUp;
+                firstAnalyser = factory.createAnalyser(chunkFrames);
+            }
+
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try
+            {
+                for ( OutputModule outputModule : outputModules )
+                {
+                    outputModule.audioFileOpened(file);
+                }
+
+                ChunkReader      reader  = new ChunkReader(decoder, blockSize);
+                Deque<ChunkTask> pending = new ArrayDeque<ChunkTask>();
+                boolean          endOfFile = false;
+                for ( long ownFrame = 0 ; !endOfFile ; ownFrame += chunkFrames )
+                {
+                    long firstFrame = Math.max(0, ownFrame - warmUp);
+                    long from       = firstFrame * step;
+                    long to         = (ownFrame + chunkFrames - 1) * step + window;
+                    float[] left    = new float[(int) (to - from)];
+                    float[] right   = new float[left.length];
+                    int count = reader.read(from, to, left, right);
+                    if ( count < window ) break; // not a single frame left
+                    if ( count < left.length )
+                    {
+                        // last chunk of the file
+                        left      = Arrays.copyOf(left,  count);
+                        right     = Arrays.copyOf(right, count);
+                        endOfFile = true;
+                    }
+
+                    ChunkTask chunk = new ChunkTask((ownFrame == 0) ? firstAnalyser : null,
+                                                    rate, length, from, firstFrame, ownFrame, chunkFrames + warmUp,
+                                                    left, right);
+                    pool.execute(chunk);
+                    pending.add(chunk);
+                    // limit the number of chunks in memory
+                    while ( pending.size() > 2 * threads )
+                    {
+                        publishChunk(pending.poll(), pending.peek());
+                    }
+                }
+                while ( !pending.isEmpty() )
+                {
+                    publishChunk(pending.poll(), pending.peek());
+                }
+                return reader.getSampleCount() / (double) rate;
+            }
+            finally
+            {
+                pool.shutdownNow();
+                for ( OutputModule outputModule : outputModules )
+                {
+                    outputModule.audioFileClosed();
+                }
+            }
+        }
+        finally
+        {
+            analyser.detachFromAudio();
+            decoder.close();
+        }
+    }
+
+    /**
+     * Publishes the frames of a chunk through the main analyser.
+     *
+     * @param chunk  the chunk to publish
+     * @param next   the following chunk or <code>null</code> if this is the last chunk
+     */
+    private void publishChunk(ChunkTask chunk, ChunkTask next)
+    {
+        SpectrumAnalyser chunkAnalyser = chunk.join();
+        SpectrumAnalyser nextAnalyser  = (next != null) ? next.join() : null;
+        long endFrame = chunk.firstFrame + chunkAnalyser.getFrameCount();
+        for ( long frame = chunk.ownFrame ; frame < endFrame ; frame++ )
+        {
+            SpectrumInfo info     = chunkAnalyser.getSpectrumInfoForFrame(frame - chunk.firstFrame);
+            SpectrumInfo features = null;
+            if ( (nextAnalyser != null) && (frame >= next.firstFrame) )
+            {
+                // features of this frame that the next chunk detected with a delay
+                features = nextAnalyser.getSpectrumInfoForFrame(frame - next.firstFrame);
+            }
+            analyser.publishFrame(info, features);
+        }
+    }
+
+    /**
+     * Task for analysing the samples of one chunk.
+     */
+    private class ChunkTask extends RecursiveTask<SpectrumAnalyser>
+    {
+        /**
+         * Creates a chunk task.
+         *
+         * @param chunkAnalyser  the analyser of the chunk
+         *                       or <code>null</code> to create one with the factory
+         * @param rate           the sample rate
+         * @param length         the length of the file in samples or -1 if unknown
+         * @param start          the index of the first sample of the chunk in the file
+         * @param firstFrame     the number of the first frame, including the warm-up frames
+         * @param ownFrame       the number of the first frame that belongs to this chunk
+         * @param historySize    the number of frames to keep
+         * @param left           the left channel samples, starting with the first frame
+         * @param right          the right channel samples, starting with the first frame
+         */
+        ChunkTask(SpectrumAnalyser chunkAnalyser, float rate, long length, long start,
+                  long firstFrame, long ownFrame, int historySize, float[] left, float[] right)
+        {
+            this.chunkAnalyser = chunkAnalyser;
+            this.rate          = rate;
+            this.length        = length;
+            this.start         = start;
+            this.firstFrame    = firstFrame;
+            this.ownFrame      = ownFrame;
+            this.historySize   = historySize;
+            this.left          = left;
+            this.right         = right;
+        }
+
+        @Override
+        protected SpectrumAnalyser compute()
+        {
+            if ( chunkAnalyser == null )
+            {
+                chunkAnalyser = factory.createAnalyser(historySize);
+            }
+            chunkAnalyser.setWarmUpFrames(ownFrame - firstFrame);
+            chunkAnalyser.attachToStream(rate, blockSize, length, start);
+            if ( chunkAnalyser.getAnalysisStep() != analyser.getAnalysisStep() )
+            {
+                throw new IllegalStateException("Chunk analyser settings differ from the main analyser");
+            }
+
+            for ( int offset = 0 ; offset < left.length ; offset += blockSize )
+            {
+                int end = Math.min(left.length, offset + blockSize);
+                chunkAnalyser.samples(Arrays.copyOfRange(left, offset, end),
+                                      Arrays.copyOfRange(right, offset, end));
+            }
+            // the samples are not needed any more while the chunk waits to be published
+            left = right = null;
+            return chunkAnalyser;
+        }
+
+        private SpectrumAnalyser chunkAnalyser;
+        private final float      rate;
+        private final long       length, start, firstFrame, ownFrame;
+        private final int        historySize;
+        private float[]          left, right;
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Class for reading overlapping ranges of samples from a decoder.
+     */
+    private static class ChunkReader
+    {
+        ChunkReader(AudioFileDecoder decoder, int blockSize)
+        {
+            this.decoder = decoder;
+            blockL  = new float[blockSize];
+            blockR  = new float[blockSize];
+            bufferL = bufferR = new float[0];
+            start   = end = 0;
+        }
+
+        /**
+         * Reads a range of samples.
+         * The ranges have to be requested in increasing order.
+         *
+         * @param from   the index of the first sample
+         * @param to     the index after the last sample
+         * @param left   the array for the left channel samples
+         * @param right  the array for the right channel samples
+         * @return the number of samples that were read,
+         *         less than requested at the end of the file
+         * @throws IOException  if the file cannot be read
+         */
+        int read(long from, long to, float[] left, float[] right) throws IOException
+        {
+            // discard the samples before the range
+            int keep = (int) Math.max(0, end - from);
+            System.arraycopy(bufferL, (int) (end - start) - keep, bufferL, 0, keep);
+            System.arraycopy(bufferR, (int) (end - start) - keep, bufferR, 0, keep);
+            start = end - keep;
+
+            // decode until the range is complete
+            while ( !endOfFile && (end < to) )
+            {
+                int count = decoder.read(blockL, blockR);
+                if ( count < 0 )
+                {
+                    endOfFile = true;
+                    break;
+                }
+                int used = (int) (end - start);
+                if ( used + count > bufferL.length )
+                {
+                    bufferL = Arrays.copyOf(bufferL, Math.max(used + count, (int) (to - start)));
+                    bufferR = Arrays.copyOf(bufferR, bufferL.length);
+                }
+                System.arraycopy(blockL, 0, bufferL, used, count);
+                System.arraycopy(blockR, 0, bufferR, used, count);
+                end += count;
+            }
+
+            int count = (int) Math.max(0, Math.min(to, end) - from);
+            System.arraycopy(bufferL, (int) (from - start), left,  0, count);
+            System.arraycopy(bufferR, (int) (from - start), right, 0, count);
+            return count;
+        }
+
+        /**
+         * Gets the number of samples that have been decoded.
+         *
+         * @return the number of samples per channel
+         */
+        long getSampleCount()
+        {
+            return end;
+        }
+
+        private final AudioFileDecoder decoder;
+        private final float[]          blockL, blockR;
+        private float[]                bufferL, bufferR;
+        // sample index of the first buffered sample and after the last one
+        private long                   start, end;
+        private boolean                endOfFile;
+    }
+
+    /**
+     * Analyses the audio files given on the command line, one after the other,
+     * each split into chunks that are analysed in parallel,
+     * and writes the spectrum of each file into a text file next to it.
+     * <p>
+     * Usage: <code>java offline.ChunkedAnalyser [-t threads] [-c chunk seconds] &lt;audio file&gt; ...</code>
+     *
+     * @param args  the command line arguments
+     */
+    public static void main(String[] args)
+    {
+        int    threads     = Runtime.getRuntime().availableProcessors();
+        double chunkLength = DEFAULT_CHUNK_LENGTH;
+        int    first       = 0;
+        while ( (first + 1 < args.length) && args[first].startsWith("-") )
+        {
+            if ( args[first].equals("-t") )
+            {
+                threads = Integer.parseInt(args[first + 1]);
+            }
+            else if ( args[first].equals("-c") )
+            {
+                chunkLength = Double.parseDouble(args[first + 1]);
+            }
+            else
+            {
+                break;
+            }
+            first += 2;
+        }
+        if ( first >= args.length )
+        {
+            System.err.println("Usage: java offline.ChunkedAnalyser [-t threads] [-c chunk seconds] <audio file> ...");
+            System.exit(1);
+        }
+
+        SpectrumAnalyser         analyser   = new SpectrumAnalyser(200, 2048);
+        FileSpectrumOutputModule fileOutput = new FileSpectrumOutputModule(analyser);
+        fileOutput.setEnabled(true);
+        ChunkedAnalyser chunked = new ChunkedAnalyser(analyser, new AnalyserFactory()
+        {
+            @Override
+            public SpectrumAnalyser createAnalyser(int historySize)
+            {
+                return new SpectrumAnalyser(200, historySize);
+            }
+        }, threads, chunkLength);
+        chunked.addOutputModule(fileOutput);
+
+        int errors = 0;
+        for ( int i = first ; i < args.length ; i++ )
+        {
+            File file = new File(args[i]);
+            try
+            {
+                long   start    = System.nanoTime();
+                double duration = chunked.analyse(file);
+                double time     = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%s: %.1fs of audio in %.2fs with %d threads (%.0fx realtime)%n",
+                                  file.getName(), duration, time, chunked.getThreadCount(), duration / time);
+            }
+            catch ( IOException | UnsupportedAudioFileException e )
+            {
+                System.err.println(file.getName() + ": " + e.getMessage());
+                errors++;
+            }
+        }
+        System.exit((errors > 0) ? 1 : 0);
+    }
+
+    private final SpectrumAnalyser   analyser;
+    private final AnalyserFactory    factory;
+    private final int                threads, blockSize;
+    private final double             chunkLength;
+    private final List<OutputModule> outputModules;
+}
@@ -0,0 +1,764 @@
+package offline;
+
+import analyser.DetectorStage;
+import analyser.SpectrumAnalyser;
+import analyser.SpectrumInfo;
+import detector.BeatTracker;
+import detector.Feature;
+import detector.SpectralFluxFeatureDetector;
+import detector.SpikeFeatureDetector;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import output.OutputModule;
+
+/**
+ * Class for evaluating the feature detectors against labelled audio files.
+ * <p>
+ * A label file is a text file with one label per line: start time and end time
+ * in seconds and the name of the label class, separated by tabs
+ * (e.g., <code>B</code> for bass drum, <code>S</code> for snare drum).
+ * It is found next to the audio file it belongs to, e.g.,
+ * <code>loop.labels.txt</code> for <code>loop.wav</code>.
+ * <p>
+ * Each file is analysed offline with a new analyser from the factory.
+ * Consecutive frames with a feature count as one detection at the time of the
+ * first frame (the centre of its analysis window). A detection hits a label
+ * of the class that the feature stands for if its time is within the tolerance
+ * of the start time of the label, each label and detection is used at most once.
+ * The result contains precision, recall, F-measure and timing error per label class,
+ * the analysis speed and the run time of each detector.
+ * <p>
+ * The detectors should run in the analysis thread (no detector worker threads),
+ * so all their features are set when the analysis of a file ends.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public class DetectorEvaluation
+{
+    /**
+     * Default tolerance between the time of a detection and a label in seconds.
+     */
+    public static final double DEFAULT_TOLERANCE = 0.05;
+
+    /**
+     * Extension of the label files, replacing the extension of the audio file.
+     */
+    public static final String LABEL_EXTENSION = ".labels.txt";
+
+    /**
+     * Factory for the spectrum analysers of the evaluation.
+     */
+    public interface AnalyserFactory
+    {
+        /**
+         * Creates a spectrum analyser with new instances of the feature detectors.
+         *
+         * @return the spectrum analyser
+         */
+        SpectrumAnalyser createAnalyser();
+    }
+
+    /**
+     * A label of an audio file.
+     */
+    public static class Label
+    {
+        Label(double start, double end, String name)
+        {
+            this.start = start;
+            this.end   = end;
+            this.name  = name;
+        }
+
+        /**
+         * Gets the start time of the label.
+         *
+         * @return the start time in seconds
+         */
+        public double getStart()
+        {
+            return start;
+        }
+
+        /**
+         * Gets the end time of the label.
+         *
+         * @return the end time in seconds
+         */
+        public double getEnd()
+        {
+            return end;
+        }
+
+        /**
+         * Gets the name of the label class.
+         *
+         * @return the name of the label class
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        private final double start, end;
+        private final String name;
+    }
+
+    /**
+     * Accuracy of a feature for a label class.
+     */
+    public static class Score
+    {
+        Score(String labelClass, String feature)
+        {
+            this.labelClass = labelClass;
+            this.feature    = feature;
+        }
+
+        /**
+         * Gets the name of the label class.
+         *
+         * @return the name of the label class
+         */
+        public String getLabelClass()
+        {
+            return labelClass;
+        }
+
+        /**
+         * Gets the name of the feature.
+         *
+         * @return the name of the feature
+         */
+        public String getFeature()
+        {
+            return feature;
+        }
+
+        /**
+         * Gets the number of labels of the class.
+         *
+         * @return the number of labels
+         */
+        public int getLabelCount()
+        {
+            return labels;
+        }
+
+        /**
+         * Gets the number of detections of the feature.
+         *
+         * @return the number of detections
+         */
+        public int getDetectionCount()
+        {
+            return detections;
+        }
+
+        /**
+         * Gets the number of detections that hit a label.
+         *
+         * @return the number of hits
+         */
+        public int getHitCount()
+        {
+            return hits;
+        }
+
+        /**
+         * Gets the fraction of the detections that hit a label.
+         *
+         * @return the precision (0...1)
+         */
+        public double getPrecision()
+        {
+            return (detections > 0) ? (double) hits / detections : 0;
+        }
+
+        /**
+         * Gets the fraction of the labels that were hit.
+         *
+         * @return the recall (0...1)
+         */
+        public double getRecall()
+        {
+            return (labels > 0) ? (double) hits / labels : 0;
+        }
+
+        /**
+         * Gets the harmonic mean of precision and recall.
+         *
+         * @return the F-measure (0...1)
+         */
+        public double getFMeasure()
+        {
+            return (labels + detections > 0) ? 2.0 * hits / (labels + detections) : 0;
+        }
+
+        /**
+         * Gets the average difference between the times of the hits and their labels.
+         *
+         * @return the average timing error in ms (positive: detection after the label)
+         */
+        public double getMeanError()
+        {
+            return (hits > 0) ? errorSum / hits : 0;
+        }
+
+        /**
+         * Gets the average absolute difference between the times of the hits and their labels.
+         *
+         * @return the average absolute timing error in ms
+         */
+        public double getMeanAbsoluteError()
+        {
+            return (hits > 0) ? absErrorSum / hits : 0;
+        }
+
+        /**
+         * Adds the counts of another score, e.g., of another file.
+         *
+         * @param other  the score to add
+         */
+        public void add(Score other)
+        {
+            labels      += other.labels;
+            detections  += other.detections;
+            hits        += other.hits;
+            errorSum    += other.errorSum;
+            absErrorSum += other.absErrorSum;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s -> %s: %d labels, %d detections, %d hits, P %.3f R %.3f F %.3f, error %.1f ms (absolute %.1f ms)",
+                                 labelClass, feature, labels, detections, hits,
+                                 getPrecision(), getRecall(), getFMeasure(), getMeanError(), getMeanAbsoluteError());
+        }
+
+        private final String labelClass, feature;
+        private int          labels, detections, hits;
+        private double       errorSum, absErrorSum;
+    }
+
+    /**
+     * Result of the evaluation of one file.
+     */
+    public static class Result
+    {
+        Result(File file, double duration, long frames, double time, double cpuTime,
+               List<Score> scores, List<DetectorStage.Statistics> statistics)
+        {
+            this.file       = file;
+            this.duration   = duration;
+            this.frames     = frames;
+            this.time       = time;
+            this.cpuTime    = cpuTime;
+            this.scores     = scores;
+            this.statistics = statistics;
+        }
+
+        /**
+         * Gets the evaluated audio file.
+         *
+         * @return the file
+         */
+        public File getFile()
+        {
+            return file;
+        }
+
+        /**
+         * Gets the length of the analysed audio.
+         *
+         * @return the length in seconds
+         */
+        public double getDuration()
+        {
+            return duration;
+        }
+
+        /**
+         * Gets the number of analysed frames.
+         *
+         * @return the number of frames
+         */
+        public long getFrameCount()
+        {
+            return frames;
+        }
+
+        /**
+         * Gets the time it took to analyse the file.
+         *
+         * @return the analysis time in seconds
+         */
+        public double getTime()
+        {
+            return time;
+        }
+
+        /**
+         * Gets the CPU time of the thread that analysed the file.
+         *
+         * @return the CPU time in seconds or -1 if it cannot be measured
+         */
+        public double getCpuTime()
+        {
+            return cpuTime;
+        }
+
+        /**
+         * Gets the number of frames analysed per second.
+         *
+         * @return the frames per second
+         */
+        public double getFramesPerSecond()
+        {
+            return (time > 0) ? frames / time : 0;
+        }
+
+        /**
+         * Gets the accuracy for each label class.
+         *
+         * @return the scores
+         */
+        public List<Score> getScores()
+        {
+            return scores;
+        }
+
+        /**
+         * Gets the run time statistics of the detectors.
+         *
+         * @return the detector statistics
+         */
+        public List<DetectorStage.Statistics> getStatistics()
+        {
+            return statistics;
+        }
+
+        private final File                           file;
+        private final double                         duration, time, cpuTime;
+        private final long                           frames;
+        private final List<Score>                    scores;
+        private final List<DetectorStage.Statistics> statistics;
+    }
+
+    /**
+     * Creates a detector evaluation.
+     *
+     * @param factory    the factory for the analysers with the detectors to evaluate
+     * @param classes    the name of the feature for each label class
+     * @param tolerance  the maximum difference between the time of a detection and a label in seconds
+     */
+    public DetectorEvaluation(AnalyserFactory factory, Map<String, String> classes, double tolerance)
+    {
+        this.factory   = factory;
+        this.classes   = new LinkedHashMap<String, String>(classes);
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Evaluates the detectors for all labelled audio files in a directory.
+     * Label files without an audio file are skipped.
+     *
+     * @param directory  the directory with the audio and label files
+     * @return the results in the order of the file names
+     * @throws IOException                    if a file cannot be read
+     * @throws UnsupportedAudioFileException  if an audio file format is not supported
+     */
+    public List<Result> evaluateDirectory(File directory) throws IOException, UnsupportedAudioFileException
+    {
+        List<Result> results = new ArrayList<Result>();
+        File[] entries = directory.listFiles();
+        if ( entries == null )
+        {
+            throw new IOException("Cannot list directory " + directory);
+        }
+        Arrays.sort(entries);
+        List<File> audioFiles = BatchAnalyser.collectFiles(directory.getPath());
+        for ( File labelFile : entries )
+        {
+            String name = labelFile.getName();
+            if ( !name.endsWith(LABEL_EXTENSION) ) continue;
+            String base = name.substring(0, name.length() - LABEL_EXTENSION.length());
+            for ( File audioFile : audioFiles )
+            {
+                String audioName = audioFile.getName();
+                int    dot       = audioName.lastIndexOf('.');
+                if ( (dot > 0) && audioName.substring(0, dot).equals(base) )
+                {
+                    results.add(evaluate(audioFile, labelFile));
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Evaluates the detectors for an audio file.
+     *
+     * @param audioFile  the audio file
+     * @param labelFile  the label file
+     * @return the evaluation result
+     * @throws IOException                    if a file cannot be read
+     * @throws UnsupportedAudioFileException  if the audio file format is not supported
+     */
+    public Result evaluate(File audioFile, File labelFile) throws IOException, UnsupportedAudioFileException
+    {
+        List<Label>      labels   = readLabels(labelFile);
+        SpectrumAnalyser analyser = factory.createAnalyser();
+        FeatureRecorder  recorder = new FeatureRecorder(analyser);
+        OfflineAnalyser  offline  = new OfflineAnalyser(analyser);
+        offline.addOutputModule(recorder);
+
+        ThreadMXBean threads  = ManagementFactory.getThreadMXBean();
+        boolean      cpu      = threads.isCurrentThreadCpuTimeSupported();
+        long         cpuStart = cpu ? threads.getCurrentThreadCpuTime() : 0;
+        long         start    = System.nanoTime();
+        double       duration = offline.analyse(audioFile);
+        double       time     = (System.nanoTime() - start) / 1e9;
+        double       cpuTime  = cpu ? (threads.getCurrentThreadCpuTime() - cpuStart) / 1e9 : -1;
+        analyser.unregisterListener(recorder);
+
+        List<Score> scores = new ArrayList<Score>();
+        for ( Map.Entry<String, String> entry : classes.entrySet() )
+        {
+            List<Double> detections = recorder.detections.get(entry.getValue());
+            if ( detections == null ) continue; // no such detector
+            scores.add(score(entry.getKey(), entry.getValue(), labels, detections));
+        }
+        return new Result(audioFile, duration, recorder.frames, time, cpuTime,
+                          scores, analyser.getDetectorStage().getStatistics());
+    }
+
+    /**
+     * Matches the detections of a feature with the labels of a class.
+     * Each label is matched with the closest detection within the tolerance
+     * that has not been matched yet, in the order of the labels.
+     *
+     * @param labelClass  the name of the label class
+     * @param feature     the name of the feature
+     * @param labels      all labels of the file
+     * @param detections  the times of the detections in seconds, in ascending order
+     * @return the score
+     */
+    private Score score(String labelClass, String feature, List<Label> labels, List<Double> detections)
+    {
+        Score     score = new Score(labelClass, feature);
+        boolean[] used  = new boolean[detections.size()];
+        score.detections = detections.size();
+        int first = 0;
+        for ( Label label : labels )
+        {
+            if ( !label.getName().equals(labelClass) ) continue;
+            score.labels++;
+
+            // skip detections that are too early for this and all later labels
+            while ( (first < detections.size()) && (detections.get(first) < label.getStart() - tolerance) )
+            {
+                first++;
+            }
+            int    best      = -1;
+            double bestError = 0;
+            for ( int i = first ; (i < detections.size()) && (detections.get(i) <= label.getStart() + tolerance) ; i++ )
+            {
+                double error = detections.get(i) - label.getStart();
+                if ( !used[i] && ((best < 0) || (Math.abs(error) < Math.abs(bestError))) )
+                {
+                    best      = i;
+                    bestError = error;
+                }
+            }
+            if ( best >= 0 )
+            {
+                used[best] = true;
+                score.hits++;
+                score.errorSum    += bestError * 1000;
+                score.absErrorSum += Math.abs(bestError) * 1000;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Reads a label file.
+     *
+     * @param file  the label file
+     * @return the labels in the order of the file (sorted by start time)
+     * @throws IOException  if the file cannot be read or has an invalid line
+     */
+    public static List<Label> readLabels(File file) throws IOException
+    {
+        List<Label> labels = new ArrayList<Label>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try
+        {
+            String line;
+            int    lineNo = 0;
+            while ( (line = reader.readLine()) != null )
+            {
+                lineNo++;
+                line = line.trim();
+                if ( line.isEmpty() ) continue;
+                String[] parts = line.split("\t");
+                if ( parts.length < 3 )
+                {
+                    throw new IOException(file.getName() + ", line " + lineNo + ": expected start, end and name");
+                }
+                try
+                {
+                    labels.add(new Label(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]), parts[2].trim()));
+                }
+                catch ( NumberFormatException e )
+                {
+                    throw new IOException(file.getName() + ", line " + lineNo + ": invalid time", e);
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return labels;
+    }
+
+    /**
+     * Creates an analyser with the analysis settings and feature detectors
+     * of the application.
+     *
+     * @return the spectrum analyser
+     */
+    public static SpectrumAnalyser createDefaultAnalyser()
+    {
+        SpectrumAnalyser analyser = new SpectrumAnalyser(200, 2048);
+        analyser.registerFeatureDetector(new SpikeFeatureDetector("Bass",  0, 50, 100, 10, 50));
+        analyser.registerFeatureDetector(new SpikeFeatureDetector("Snare", 1, 2000, 7000, 15, 100));
+        analyser.registerFeatureDetector(new SpikeFeatureDetector("Cymbal", 2, 7000, 10000, 20, 100));
+        analyser.registerFeatureDetector(new SpectralFluxFeatureDetector("Onset", 3, 50, 10000));
+        analyser.registerFeatureDetector(new BeatTracker("Beat", 4, 50, 10000));
+        return analyser;
+    }
+
+    /**
+     * Evaluates the default detectors for the labelled audio files in a directory
+     * and prints the results.
+     * <p>
+     * Usage: <code>java offline.DetectorEvaluation [-t tolerance ms] [-m class=feature,...] [directory]</code>
+     * <br>
+     * By default, the files in <code>data</code> are evaluated,
+     * with the classes <code>B=Bass,S=Snare</code>.
+     *
+     * @param args  the command line arguments
+     */
+    public static void main(String[] args)
+    {
+        double              tolerance = DEFAULT_TOLERANCE;
+        Map<String, String> classes   = new LinkedHashMap<String, String>();
+        classes.put("B", "Bass");
+        classes.put("S", "Snare");
+        String directory = "data";
+        try
+        {
+            for ( int i = 0 ; i < args.length ; i++ )
+            {
+                if ( args[i].equals("-t") && (i + 1 < args.length) )
+                {
+                    tolerance = Double.parseDouble(args[++i]) / 1000;
+                }
+                else if ( args[i].equals("-m") && (i + 1 < args.length) )
+                {
+                    classes.clear();
+                    for ( String mapping : args[++i].split(",") )
+                    {
+                        String[] parts = mapping.split("=");
+                        if ( parts.length != 2 ) throw new IllegalArgumentException(mapping);
+                        classes.put(parts[0], parts[1]);
+                    }
+                }
+                else
+                {
+                    directory = args[i];
+                }
+            }
+        }
+        catch ( IllegalArgumentException e )
+        {
+            System.err.println("Usage: java offline.DetectorEvaluation [-t tolerance ms] [-m class=feature,...] [directory]");
+            System.exit(1);
+        }
+
+        DetectorEvaluation evaluation = new DetectorEvaluation(new AnalyserFactory()
+        {
+            @Override
+            public SpectrumAnalyser createAnalyser()
+            {
+                return createDefaultAnalyser();
+            }
+        }, classes, tolerance);
+
+        try
+        {
+            List<Result> results = evaluation.evaluateDirectory(new File(directory));
+
+            Map<String, Score>  totalScores = new LinkedHashMap<String, Score>();
+            Map<String, Double> totalTimes  = new LinkedHashMap<String, Double>();
+            long   frames = 0;
+            double time = 0, cpuTime = 0, audio = 0;
+            for ( Result result : results )
+            {
+                System.out.printf("%s: %.1fs of audio, %d frames in %.2fs (%.0f frames/s, CPU %.2fs)%n",
+                                  result.getFile().getName(), result.getDuration(), result.getFrameCount(),
+                                  result.getTime(), result.getFramesPerSecond(), result.getCpuTime());
+                for ( Score score : result.getScores() )
+                {
+                    System.out.println("  " + score);
+                    String key = score.getLabelClass() + "=" + score.getFeature();
+                    if ( !totalScores.containsKey(key) )
+                    {
+                        totalScores.put(key, new Score(score.getLabelClass(), score.getFeature()));
+                    }
+                    totalScores.get(key).add(score);
+                }
+                for ( DetectorStage.Statistics stats : result.getStatistics() )
+                {
+                    String name  = stats.getDetector().getFeature().getName();
+                    Double total = totalTimes.get(name);
+                    totalTimes.put(name, ((total != null) ? total : 0) + stats.getTotalTime());
+                }
+                frames  += result.getFrameCount();
+                time    += result.getTime();
+                cpuTime += result.getCpuTime();
+                audio   += result.getDuration();
+            }
+
+            System.out.printf("Total: %d files, %.1fs of audio, %d frames in %.2fs (%.0f frames/s, CPU %.2fs)%n",
+                              results.size(), audio, frames, time, (time > 0) ? frames / time : 0, cpuTime);
+            for ( Score score : totalScores.values() )
+            {
+                System.out.println("  " + score);
+            }
+            for ( Map.Entry<String, Double> entry : totalTimes.entrySet() )
+            {
+                System.out.printf("  %s: %.1f ms detector time (%.3f ms per frame)%n",
+                                  entry.getKey(), entry.getValue(), (frames > 0) ? entry.getValue() / frames : 0);
+            }
+        }
+        catch ( IOException | UnsupportedAudioFileException e )
+        {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Output module that records the times of the detected features.
+     * A frame is recorded when all detectors have run far enough
+     * that its features cannot change any more.
+     */
+    private static class FeatureRecorder implements OutputModule
+    {
+        FeatureRecorder(SpectrumAnalyser analyser)
+        {
+            this.analyser = analyser;
+            detections = new HashMap<String, List<Double>>();
+            lastFrames = new HashMap<String, Long>();
+            analyser.registerListener(this);
+        }
+
+        @Override
+        public String getName()
+        {
+            return "Feature Recorder";
+        }
+
+        @Override
+        public boolean isEnabled()
+        {
+            return true;
+        }
+
+        @Override
+        public void setEnabled(boolean enabled)
+        {
+            // always enabled
+        }
+
+        @Override
+        public void audioFileOpened(File file)
+        {
+            detections.clear();
+            lastFrames.clear();
+            features = analyser.getDetectedFeatures();
+            for ( Feature feature : features )
+            {
+                detections.put(feature.getName(), new ArrayList<Double>());
+            }
+            delay       = analyser.getDetectorStage().getDetectionDelay() + 1;
+            windowDelay = analyser.getFFTEngine().timeSize() / 2.0 / analyser.getSampleRate();
+            frames      = 0;
+        }
+
+        @Override
+        public void audioFileClosed()
+        {
+            // the remaining frames are final now
+            long count = analyser.getFrameCount();
+            for ( long frame = Math.max(0, count - delay) ; frame < count ; frame++ )
+            {
+                record(frame);
+            }
+        }
+
+        @Override
+        public void analysisUpdated(SpectrumAnalyser analyser)
+        {
+            frames = analyser.getFrameCount();
+            if ( frames > delay ) record(frames - 1 - delay);
+        }
+
+        private void record(long frame)
+        {
+            SpectrumInfo info = analyser.getSpectrumInfoForFrame(frame);
+            if ( info == null ) return;
+            for ( Feature feature : features )
+            {
+                if ( !info.hasFeature(feature) ) continue;
+                Long last = lastFrames.put(feature.getName(), frame);
+                if ( (last == null) || (last != frame - 1) )
+                {
+                    // first frame of a detection, at the centre of its analysis window
+                    detections.get(feature.getName()).add(info.getSampleIdx() / 1000.0 + windowDelay);
+                }
+            }
+        }
+
+        private final SpectrumAnalyser          analyser;
+        private final Map<String, List<Double>> detections;
+        private final Map<String, Long>         lastFrames;
+        private List<Feature>                   features;
+        private int                             delay;
+        private double                          windowDelay;
+        private long                            frames;
+    }
+
+    private final AnalyserFactory     factory;
+    private final Map<String, String> classes;
+    private final double              tolerance;
+}
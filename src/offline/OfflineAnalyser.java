@@ -0,0 +1,179 @@
+package offline;
+
+import analyser.SpectrumAnalyser;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import output.FileSpectrumOutputModule;
+import output.OutputModule;
+
+/**
+ * Class for analysing audio files without playback and without a user interface.
+ * <p>
+ * The file is decoded and pushed through the spectrum analyser, its feature
+ * detectors and the output modules as fast as possible. The analyser is
+ * attached with {@link SpectrumAnalyser#attachToStream(float, int, long)},
+ * so positions are calculated from the number of samples.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public class OfflineAnalyser
+{
+    /**
+     * Number of samples per block, same as the minim playback buffer size.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    /**
+     * Creates an offline analyser.
+     *
+     * @param analyser  the spectrum analyser to use
+     */
+    public OfflineAnalyser(SpectrumAnalyser analyser)
+    {
+        this(analyser, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates an offline analyser.
+     *
+     * @param analyser   the spectrum analyser to use
+     * @param blockSize  the number of samples to pass to the analyser at a time
+     */
+    public OfflineAnalyser(SpectrumAnalyser analyser, int blockSize)
+    {
+        this.analyser  = analyser;
+        this.blockSize = blockSize;
+        outputModules  = new LinkedList<OutputModule>();
+    }
+
+    /**
+     * Creates an offline analyser with the analysis settings of the application
+     * and a spectrum file output module that writes the spectrum of each file
+     * into a text file next to it.
+     *
+     * @return the offline analyser
+     */
+    public static OfflineAnalyser createWithFileOutput()
+    {
+        SpectrumAnalyser         analyser   = new SpectrumAnalyser(200, 2048);
+        FileSpectrumOutputModule fileOutput = new FileSpectrumOutputModule(analyser);
+        fileOutput.setEnabled(true);
+        OfflineAnalyser offline = new OfflineAnalyser(analyser);
+        offline.addOutputModule(fileOutput);
+        return offline;
+    }
+
+    /**
+     * Gets the spectrum analyser.
+     *
+     * @return the spectrum analyser
+     */
+    public SpectrumAnalyser getAnalyser()
+    {
+        return analyser;
+    }
+
+    /**
+     * Adds an output module that is informed about the analysed files.
+     * The module has to be registered as a listener of the analyser already.
+     *
+     * @param module  the output module to add
+     */
+    public void addOutputModule(OutputModule module)
+    {
+        outputModules.add(module);
+    }
+
+    /**
+     * Analyses an audio file.
+     *
+     * @param file  the audio file to analyse
+     * @return the length of the analysed audio in seconds
+     * @throws IOException                    if the file cannot be read
+     * @throws UnsupportedAudioFileException  if the file format is not supported
+     */
+    public double analyse(File file) throws IOException, UnsupportedAudioFileException
+    {
+        AudioFileDecoder decoder = new AudioFileDecoder(file);
+        try
+        {
+            analyser.attachToStream(decoder.getSampleRate(), blockSize, decoder.getLength());
+            for ( OutputModule outputModule : outputModules )
+            {
+                outputModule.audioFileOpened(file);
+            }
+
+            float[] left  = new float[blockSize];
+            float[] right = new float[blockSize];
+            long    total = 0;
+            int     count;
+            while ( (count = decoder.read(left, right)) > 0 )
+            {
+                if ( count < blockSize )
+                {
+                    // last block of the file
+                    left  = Arrays.copyOf(left,  count);
+                    right = Arrays.copyOf(right, count);
+                }
+                analyser.samples(left, right);
+                total += count;
+            }
+            return total / (double) decoder.getSampleRate();
+        }
+        finally
+        {
+            for ( OutputModule outputModule : outputModules )
+            {
+                outputModule.audioFileClosed();
+            }
+            analyser.detachFromAudio();
+            decoder.close();
+        }
+    }
+
+    /**
+     * Analyses the audio files given on the command line and writes the spectrum
+     * of each file into a text file next to it (same as the spectrum file output
+     * module of the application).
+     *
+     * @param args  the audio files to analyse
+     */
+    public static void main(String[] args)
+    {
+        if ( args.length == 0 )
+        {
+            System.err.println("Usage: java offline.OfflineAnalyser <audio file> ...");
+            System.exit(1);
+        }
+
+        OfflineAnalyser offline = createWithFileOutput();
+        int errors = 0;
+        for ( String filename : args )
+        {
+            File file = new File(filename);
+            try
+            {
+                long   start    = System.nanoTime();
+                double duration = offline.analyse(file);
+                double time     = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%s: %.1fs of audio in %.2fs (%.0fx realtime)%n",
+                                  file.getName(), duration, time, duration / time);
+            }
+            catch ( IOException | UnsupportedAudioFileException e )
+            {
+                System.err.println(file.getName() + ": " + e.getMessage());
+                errors++;
+            }
+        }
+        System.exit((errors > 0) ? 1 : 0);
+    }
+
+    private final SpectrumAnalyser   analyser;
+    private final int                blockSize;
+    private final List<OutputModule> outputModules;
+}
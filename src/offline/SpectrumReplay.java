@@ -0,0 +1,259 @@
+package offline;
+
+import analyser.SpectrumAnalyser;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import output.OscOutputModule;
+import output.OutputModule;
+import output.SpectrumFileReader;
+
+/**
+ * Class for replaying a recorded spectrum file instead of analysing audio.
+ * <p>
+ * The frames of the file (see {@link SpectrumFileReader}) are published through
+ * the spectrum analyser (see {@link SpectrumAnalyser#publishFrame(analyser.SpectrumInfo, analyser.SpectrumInfo)}),
+ * so its listeners and output modules receive the recorded spectrum stream
+ * as if the audio was analysed again, e.g., to re-send a recording over OSC
+ * or to test output modules without audio.
+ * The frames are paced by their recorded times, in real time or faster.
+ * <p>
+ * The history of the analyser takes the band count of the file.
+ * Listeners that read the band layout from the FFT engine of the analyser
+ * expect the analyser to be set up with the same number of bands per octave
+ * as the recording. The feature detectors of the analyser are not used,
+ * the features are the recorded ones.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public class SpectrumReplay
+{
+    /**
+     * Sample rate that the analyser is attached with if the file does not contain one.
+     */
+    public static final float DEFAULT_SAMPLE_RATE = 44100;
+
+    /**
+     * Creates a replay source.
+     *
+     * @param analyser  the spectrum analyser to publish the frames through
+     */
+    public SpectrumReplay(SpectrumAnalyser analyser)
+    {
+        this.analyser = analyser;
+        outputModules = new LinkedList<OutputModule>();
+        rate          = 1;
+        stopped       = false;
+    }
+
+    /**
+     * Gets the spectrum analyser.
+     *
+     * @return the spectrum analyser
+     */
+    public SpectrumAnalyser getAnalyser()
+    {
+        return analyser;
+    }
+
+    /**
+     * Adds an output module that is informed about the replayed files.
+     * The module has to be registered as a listener of the analyser already.
+     *
+     * @param module  the output module to add
+     */
+    public void addOutputModule(OutputModule module)
+    {
+        outputModules.add(module);
+    }
+
+    /**
+     * Gets the replay rate.
+     *
+     * @return the replay rate
+     */
+    public double getRate()
+    {
+        return rate;
+    }
+
+    /**
+     * Sets the replay rate.
+     *
+     * @param rate  1 for real time, 2 for twice as fast, etc.,
+     *              0 to replay as fast as possible
+     */
+    public void setRate(double rate)
+    {
+        this.rate = Math.max(0, rate);
+    }
+
+    /**
+     * Stops a running replay after the current frame.
+     */
+    public void stop()
+    {
+        stopped = true;
+    }
+
+    /**
+     * Replays a spectrum file.
+     *
+     * @param file  the spectrum file to replay
+     * @return the number of replayed frames
+     * @throws IOException if the file can not be read
+     */
+    public int play(File file) throws IOException
+    {
+        SpectrumFileReader reader = SpectrumFileReader.open(file);
+        try
+        {
+            return play(reader, file);
+        }
+        finally
+        {
+            reader.close();
+        }
+    }
+
+    /**
+     * Replays the frames of an open spectrum file.
+     *
+     * @param reader  the reader of the spectrum file
+     * @param file    the file that is passed to the output modules
+     * @return the number of replayed frames
+     */
+    public int play(SpectrumFileReader reader, File file)
+    {
+        float sampleRate = (reader.getSampleRate() > 0) ? reader.getSampleRate() : DEFAULT_SAMPLE_RATE;
+        analyser.attachToStream(sampleRate, OfflineAnalyser.DEFAULT_BLOCK_SIZE, -1);
+        stopped = false;
+        try
+        {
+            for ( OutputModule outputModule : outputModules )
+            {
+                outputModule.audioFileOpened(file);
+            }
+
+            double hopPeriod = reader.getHopPeriod();
+            double interval  = (hopPeriod > 0) ? hopPeriod : DEFAULT_INTERVAL;
+            // replay time in ms since the start
+            double time      = 0;
+            long   start     = System.nanoTime();
+            int    frames    = reader.getFrameCount();
+            int    frame;
+            for ( frame = 0 ; (frame < frames) && !stopped ; frame++ )
+            {
+                if ( frame > 0 )
+                {
+                    int step = reader.getTime(frame) - reader.getTime(frame - 1);
+                    if ( (step > 0) && (step <= MAX_INTERVAL) )
+                    {
+                        interval = step;
+                    }
+                    // otherwise, the time did not advance or jumped: keep the last interval
+                    time += interval;
+                }
+                double currentRate = rate;
+                if ( currentRate > 0 )
+                {
+                    long due = start + (long) (time * 1e6 / currentRate);
+                    long wait;
+                    while ( ((wait = due - System.nanoTime()) > 0) && !stopped )
+                    {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                else
+                {
+                    // as fast as possible: continue in real time if the rate is changed
+                    start = System.nanoTime() - (long) (time * 1e6);
+                }
+                analyser.publishFrame(reader.getFrame(frame), null);
+            }
+            return frame;
+        }
+        finally
+        {
+            for ( OutputModule outputModule : outputModules )
+            {
+                outputModule.audioFileClosed();
+            }
+            analyser.detachFromAudio();
+        }
+    }
+
+    /**
+     * Replays a spectrum file and sends the frames over OSC.
+     * <p>
+     * Usage: <code>java offline.SpectrumReplay [-r rate] [-osc host:port] &lt;spectrum file&gt;</code>
+     *
+     * @param args  the command line arguments
+     */
+    public static void main(String[] args)
+    {
+        double rate   = 1;
+        String target = null;
+        int    first  = 0;
+        while ( (first + 1 < args.length) && args[first].startsWith("-") )
+        {
+            if ( args[first].equals("-r") )
+            {
+                rate = Double.parseDouble(args[first + 1]);
+            }
+            else if ( args[first].equals("-osc") )
+            {
+                target = args[first + 1];
+            }
+            else
+            {
+                break;
+            }
+            first += 2;
+        }
+        if ( first != args.length - 1 )
+        {
+            System.err.println("Usage: java offline.SpectrumReplay [-r rate] [-osc host:port] <spectrum file>");
+            System.exit(1);
+        }
+
+        SpectrumAnalyser analyser  = new SpectrumAnalyser(200, 2048);
+        OscOutputModule  oscOutput = new OscOutputModule(analyser);
+        if ( target != null )
+        {
+            oscOutput.setTargetAddress(target);
+        }
+        oscOutput.setEnabled(true);
+        SpectrumReplay replay = new SpectrumReplay(analyser);
+        replay.addOutputModule(oscOutput);
+        replay.setRate(rate);
+
+        File file = new File(args[first]);
+        try
+        {
+            long   start  = System.nanoTime();
+            int    frames = replay.play(file);
+            double time   = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%s: %d frames in %.2fs%n", file.getName(), frames, time);
+        }
+        catch ( IOException e )
+        {
+            System.err.println(file.getName() + ": " + e.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    // interval between frames if the file has no hop size
+    private static final double DEFAULT_INTERVAL = 5;
+    // longer steps between the frame times are gaps in the recording
+    private static final int    MAX_INTERVAL     = 1000;
+
+    private final SpectrumAnalyser   analyser;
+    private final List<OutputModule> outputModules;
+    private volatile double          rate;
+    private volatile boolean         stopped;
+}
@@ -0,0 +1,314 @@
+package output;
+
+/**
+ * Block of frames of a spectrum archive (see {@link SpectrumArchiveFormat}) in columns.
+ * <p>
+ * The frames are transposed when they are added: each column holds one value
+ * (frame number, time, position, feature word or band intensity) of all frames.
+ * The intensities are quantised to integer multiples of the precision first,
+ * so the delta encoding of the columns is lossless and the quantisation error
+ * does not accumulate.
+ * <p>
+ * A column is encoded as the differences between successive values,
+ * zigzag encoded (small negative differences become small positive numbers)
+ * and written as variable length integers (7 bits per byte, the highest bit
+ * marks that another byte follows). The feature words are written as variable
+ * length integers without the difference.
+ * A block is used by a single thread.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+final class ArchiveBlock
+{
+    /**
+     * Creates an empty block.
+     *
+     * @param capacity      the maximum number of frames
+     * @param bands         the number of bands per frame
+     * @param featureWords  the number of feature words per frame
+     */
+    ArchiveBlock(int capacity, int bands, int featureWords)
+    {
+        this.capacity = capacity;
+        this.bands    = bands;
+        frames        = new long[capacity];
+        times         = new int[capacity];
+        positions     = new int[capacity];
+        features      = new long[featureWords][capacity];
+        values        = new int[bands][capacity];
+        count         = 0;
+    }
+
+    /**
+     * Gets the maximum number of frames in the block.
+     *
+     * @return the maximum number of frames
+     */
+    int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of frames in the block.
+     *
+     * @return the number of frames
+     */
+    int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Checks if the block can not take more frames.
+     *
+     * @return <code>true</code> if the block is full
+     */
+    boolean isFull()
+    {
+        return count == capacity;
+    }
+
+    /**
+     * Removes all frames.
+     */
+    void clear()
+    {
+        count = 0;
+    }
+
+    /**
+     * Adds a frame.
+     *
+     * @param frame         the frame number
+     * @param time          the time in ms
+     * @param position      the relative position in the stream
+     * @param featureWords  the feature words
+     * @param intensities   the intensities of the bands (missing bands are 0)
+     * @param precision     the quantisation step of the intensities
+     */
+    void add(long frame, int time, float position, long[] featureWords, float[] intensities, float precision)
+    {
+        int i = count++;
+        frames[i]    = frame;
+        times[i]     = time;
+        positions[i] = Float.floatToRawIntBits(position);
+        for ( int w = 0 ; w < features.length ; w++ )
+        {
+            features[w][i] = featureWords[w];
+        }
+        for ( int band = 0 ; band < bands ; band++ )
+        {
+            values[band][i] = (band < intensities.length) ? quantise(intensities[band], precision) : 0;
+        }
+    }
+
+    long getFrame(int i)
+    {
+        return frames[i];
+    }
+
+    int getTime(int i)
+    {
+        return times[i];
+    }
+
+    float getPosition(int i)
+    {
+        return Float.intBitsToFloat(positions[i]);
+    }
+
+    long getFeatureWord(int i, int word)
+    {
+        return ((word >= 0) && (word < features.length)) ? features[word][i] : 0;
+    }
+
+    /**
+     * Gets the intensity of a band of a frame.
+     *
+     * @param i          the index of the frame in the block
+     * @param band       the band
+     * @param precision  the quantisation step of the intensities
+     * @return the intensity
+     */
+    float getIntensity(int i, int band, float precision)
+    {
+        return dequantise(values[band][i], precision);
+    }
+
+    /**
+     * Calculates the maximum size of an encoded block.
+     *
+     * @return the maximum size in bytes
+     */
+    int getMaxEncodedSize()
+    {
+        return capacity * (10 + 5 + 5 + 10 * features.length + 5 * bands);
+    }
+
+    /**
+     * Encodes the frames of the block.
+     *
+     * @param target  the array to write to, at least {@link #getMaxEncodedSize()} bytes
+     * @return the number of bytes written
+     */
+    int encode(byte[] target)
+    {
+        pos = 0;
+        long lastFrame = 0;
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            writeVarLong(target, zigzag(frames[i] - lastFrame));
+            lastFrame = frames[i];
+        }
+        writeDeltas(target, times);
+        writeDeltas(target, positions);
+        for ( long[] word : features )
+        {
+            for ( int i = 0 ; i < count ; i++ )
+            {
+                writeVarLong(target, word[i]);
+            }
+        }
+        for ( int[] band : values )
+        {
+            writeDeltas(target, band);
+        }
+        return pos;
+    }
+
+    /**
+     * Decodes the frames of a block, replacing the frames in this block.
+     *
+     * @param source  the encoded block
+     * @param frames  the number of frames in the encoded block
+     * @throws IllegalArgumentException if the encoded block is too short
+     */
+    void decode(byte[] source, int frames)
+    {
+        if ( frames > capacity )
+        {
+            throw new IllegalArgumentException("Archive block of " + frames + " frames exceeds " + capacity);
+        }
+        count = frames;
+        pos   = 0;
+        long lastFrame = 0;
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            lastFrame += unzigzag(readVarLong(source));
+            this.frames[i] = lastFrame;
+        }
+        readDeltas(source, times);
+        readDeltas(source, positions);
+        for ( long[] word : features )
+        {
+            for ( int i = 0 ; i < count ; i++ )
+            {
+                word[i] = readVarLong(source);
+            }
+        }
+        for ( int[] band : values )
+        {
+            readDeltas(source, band);
+        }
+    }
+
+    /**
+     * Quantises an intensity to a multiple of the precision.
+     *
+     * @param value      the intensity
+     * @param precision  the quantisation step
+     * @return the number of quantisation steps, NaN is 0
+     */
+    static int quantise(float value, float precision)
+    {
+        // saturates at the int range
+        return Math.round(value / precision);
+    }
+
+    /**
+     * Converts a quantised intensity back.
+     *
+     * @param value      the number of quantisation steps
+     * @param precision  the quantisation step
+     * @return the intensity
+     */
+    static float dequantise(int value, float precision)
+    {
+        return (float) (value * (double) precision);
+    }
+
+    private void writeDeltas(byte[] target, int[] column)
+    {
+        int last = 0;
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            // the difference may overflow, the wrapped sum in readDeltas restores the value
+            int delta = column[i] - last;
+            writeVarLong(target, ((delta << 1) ^ (delta >> 31)) & 0xFFFFFFFFL);
+            last = column[i];
+        }
+    }
+
+    private void readDeltas(byte[] source, int[] column)
+    {
+        int last = 0;
+        for ( int i = 0 ; i < count ; i++ )
+        {
+            int zigzag = (int) readVarLong(source);
+            last += (zigzag >>> 1) ^ -(zigzag & 1);
+            column[i] = last;
+        }
+    }
+
+    private void writeVarLong(byte[] target, long value)
+    {
+        while ( (value & ~0x7FL) != 0 )
+        {
+            target[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        target[pos++] = (byte) value;
+    }
+
+    private long readVarLong(byte[] source)
+    {
+        long value = 0;
+        int  shift = 0;
+        byte b;
+        do
+        {
+            if ( pos >= source.length )
+            {
+                throw new IllegalArgumentException("Archive block is truncated");
+            }
+            b = source[pos++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        }
+        while ( (b < 0) && (shift < 64) );
+        return value;
+    }
+
+    private static long zigzag(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private final int      capacity, bands;
+    // the columns, band intensities as multiples of the precision, positions as float bits
+    private final long[]   frames;
+    private final int[]    times;
+    private final int[]    positions;
+    private final long[][] features;
+    private final int[][]  values;
+    private int            count;
+    // position in the encoded block
+    private int            pos;
+}
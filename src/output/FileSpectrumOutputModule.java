@@ -1,51 +1,192 @@
 package output;
 
-import analyser.SpectrumInfo;
+import analyser.FFTEngine;
 import analyser.SpectrumAnalyser;
-import ddf.minim.analysis.FFT;
+import detector.FeatureDetector;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
 
 /**
- * Class for logging the spectrum information to a text data file (e.g., CSV).
- * 
+ * Class for logging the spectrum information to a text data file (e.g., CSV)
+ * or to a binary file (see {@link SpectrumFileFormat}) or compressed archive
+ * (see {@link SpectrumArchiveFormat}).
+ * <p>
+ * The analysis thread only copies the intensities of each frame into a slot of
+ * a preallocated ring. A background thread formats the frames into a reusable buffer
+ * (see {@link FixedPointFormat}) and writes it in large chunks.
+ * The buffer is written when it is full or at the latest after the flush interval
+ * (see {@link #setFlushInterval(int)}). When the ring is full, the analysis thread
+ * waits for the writer, so no frame is lost. Live input can not wait, so its frames
+ * are dropped instead (see {@link #getDroppedFrames()}). Closing the file writes all frames
+ * that are still in the ring.
+ * <p>
+ * Binary files contain the features of the frames. Because the detectors set
+ * the features of a frame up to their detection delay later, the frames are handed
+ * to the writer thread only after the longest detection delay. With detector worker threads,
+ * a frame also waits until the workers have completed the detection for it
+ * (see {@link analyser.DetectorStage#getCompletedFrame()}).
+ * <p>
+ * The archive format is meant for long captures. The writer thread collects the frames
+ * in blocks (see {@link #setBlockFrames(int)}) and writes a block when it is complete,
+ * so the frames of the current block are lost if the application is not closed properly.
+ * <p>
+ * For long captures, the output can be split into segments, a new one after a number of seconds
+ * of the stream (see {@link #setSegmentDuration(int)}) or bytes (see {@link #setSegmentSize(long)}).
+ * Live input is always written in segments, by default of {@link #LIVE_SEGMENT_DURATION} seconds,
+ * of which the last {@link #LIVE_MAX_SEGMENTS} are kept. Each segment is a complete file of the selected format,
+ * named after the output file and the time the segment was started, e.g.,
+ * <code>LiveInput_20261017-221500.spa</code>. A segment is written to a file with the extension
+ * {@link #PART_EXTENSION} first, which is renamed when the segment is complete, so other
+ * programs only see complete segments. The writer thread starts the next segment and deletes
+ * the oldest segments beyond the retention limit (see {@link #setMaxSegments(int)}),
+ * the analysis thread does not wait for this.
+ *
  * @author  Stefan Marks
  * @version 1.0 - 14.05.2013: Created
+ * @version 1.1 - 17.10.2026: Tempo and beat predictions are not logged
+ *                            Flight recorder events of the written lines
+ *                            Background writer thread with frame ring and fixed point formatting
+ *                            Binary file format
+ *                            Compressed archive format
+ *                            Segmented output with time and size based rotation, live input
+ *                            Live input frames are dropped instead of waiting for the writer
+ *                            Frames wait for the detector worker threads
+ *                            Default segment length and retention of live input
  */
 public class FileSpectrumOutputModule implements OutputModule
 {
+    /**
+     * Number of frames that can wait for the writer thread.
+     */
+    public static final int RING_SIZE = 256;
+
+    /**
+     * Name of the output file for live input, without the extension.
+     */
+    public static final String LIVE_INPUT_NAME = "LiveInput";
+
+    /**
+     * Extension of a segment while it is being written.
+     */
+    public static final String PART_EXTENSION = ".part";
+
+    /**
+     * Length of the segments of live input in seconds if neither a length nor a size is set.
+     */
+    public static final int LIVE_SEGMENT_DURATION = 3600;
+
+    /**
+     * Number of complete segments of live input that are kept if no number is set.
+     */
+    public static final int LIVE_MAX_SEGMENTS = 24;
+
+    /**
+     * Output file formats.
+     */
+    public enum Format
+    {
+        TEXT("Text", ".txt", null),
+        BINARY_FLOAT("Binary", SpectrumFileFormat.EXTENSION, SpectrumFileFormat.Encoding.FLOAT32),
+        BINARY_QUANTISED("Binary (16 bit)", SpectrumFileFormat.EXTENSION, SpectrumFileFormat.Encoding.UINT16),
+        ARCHIVE("Compressed archive", SpectrumArchiveFormat.EXTENSION, null);
+
+        private Format(String name, String extension, SpectrumFileFormat.Encoding encoding)
+        {
+            this.name      = name;
+            this.extension = extension;
+            this.encoding  = encoding;
+        }
+
+        /**
+         * Gets the default file name extension of the format.
+         *
+         * @return the file name extension
+         */
+        public String getExtension()
+        {
+            return extension;
+        }
+
+        /**
+         * Gets the encoding of the intensities in a binary file.
+         *
+         * @return the encoding or <code>null</code> for the text and archive formats
+         */
+        public SpectrumFileFormat.Encoding getEncoding()
+        {
+            return encoding;
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+
+        private final String                      name, extension;
+        private final SpectrumFileFormat.Encoding encoding;
+    }
+
     /**
      * Creates a spectrum information logger.
-     * 
+     *
      * @param analyser the spectrum analyser to attach to
      */
     public FileSpectrumOutputModule(SpectrumAnalyser analyser)
     {
-        outputFile    = null;
-        output        = null;
-        headerPrinted = false;
-        enabled       = false;
+        outputFile      = null;
+        writer          = null;
+        enabled         = false;
+        flushInterval   = 1000;
+        format          = Format.TEXT;
+        quantisationMax = 1.0f;
+        blockFrames     = SpectrumArchiveFormat.DEFAULT_BLOCK_FRAMES;
+        precision       = SpectrumArchiveFormat.DEFAULT_PRECISION;
+        segmentDuration = 0;
+        segmentSize     = 0;
+        maxSegments     = 0;
+        liveInput       = false;
+        droppedFrames   = 0;
         analyser.registerListener(this);
     }
-    
+
     @Override
     public String getName()
     {
         String name = "Spectrum File Output";
-        if ( outputFile != null ) 
+        if ( outputFile != null )
         {
             name += " (" + outputFile + ")";
         }
         return name;
     }
-    
+
     @Override
     public boolean isEnabled()
     {
         return enabled;
     }
-    
+
     @Override
     public void setEnabled(boolean enabled)
     {
@@ -54,91 +195,1141 @@ public class FileSpectrumOutputModule implements OutputModule
         {
             closeFile();
         }
-    } 
-    
+    }
+
     public String getOutputFilename()
     {
         return (outputFile != null) ? outputFile.getAbsolutePath() : "";
     }
-    
+
     public void setOutputFilename(String filename)
     {
         outputFile = new File(filename);
-        headerPrinted = false;
     }
-    
+
+    /**
+     * Gets the format of the output file.
+     *
+     * @return the file format
+     */
+    public Format getFormat()
+    {
+        return format;
+    }
+
+    /**
+     * Sets the format of the output file.
+     * The format is used from the next file that is opened.
+     *
+     * @param format  the file format
+     */
+    public void setFormat(Format format)
+    {
+        this.format = format;
+    }
+
+    /**
+     * Gets the intensity that is encoded as the maximum value in 16 bit binary files.
+     *
+     * @return the quantisation maximum
+     */
+    public float getQuantisationMax()
+    {
+        return quantisationMax;
+    }
+
+    /**
+     * Sets the intensity that is encoded as the maximum value in 16 bit binary files.
+     * Larger intensities are stored as the maximum, negative ones as 0.
+     * The default of 1 covers the logarithmic spectrum shaper.
+     *
+     * @param max  the quantisation maximum
+     */
+    public void setQuantisationMax(float max)
+    {
+        if ( !(max > 0) )
+        {
+            throw new IllegalArgumentException("Quantisation maximum must be positive");
+        }
+        quantisationMax = max;
+    }
+
+    /**
+     * Gets the number of frames per block of an archive.
+     *
+     * @return the number of frames per block
+     */
+    public int getBlockFrames()
+    {
+        return blockFrames;
+    }
+
+    /**
+     * Sets the number of frames per block of an archive.
+     * Larger blocks compress better, but a reader has to decompress a whole block
+     * to read one of its frames. The number is used from the next file that is opened.
+     *
+     * @param frames  the number of frames per block
+     */
+    public void setBlockFrames(int frames)
+    {
+        if ( frames < 1 )
+        {
+            throw new IllegalArgumentException("Block must contain at least one frame");
+        }
+        blockFrames = frames;
+    }
+
+    /**
+     * Gets the quantisation step of the intensities in an archive.
+     *
+     * @return the precision
+     */
+    public float getPrecision()
+    {
+        return precision;
+    }
+
+    /**
+     * Sets the quantisation step of the intensities in an archive.
+     * The intensities are rounded to multiples of the precision. The size of an archive
+     * mostly depends on the precision, because the noise of the spectrum does not compress:
+     * with the default of 0.01, an archive is about a tenth of a binary file with floating point
+     * values, with the precision of the text format (0.001), about a sixth.
+     *
+     * @param precision  the quantisation step
+     */
+    public void setPrecision(float precision)
+    {
+        if ( !(precision > 0) )
+        {
+            throw new IllegalArgumentException("Precision must be positive");
+        }
+        this.precision = precision;
+    }
+
+    /**
+     * Gets the maximum time that written frames stay in the buffer of the writer thread.
+     *
+     * @return the flush interval in ms
+     */
+    public int getFlushInterval()
+    {
+        return flushInterval;
+    }
+
+    /**
+     * Sets the maximum time that written frames stay in the buffer of the writer thread.
+     * The buffer is also written when it is full.
+     *
+     * @param interval  the flush interval in ms,
+     *                  0 to write whenever the writer has caught up with the analysis
+     */
+    public void setFlushInterval(int interval)
+    {
+        flushInterval = Math.max(0, interval);
+    }
+
+    /**
+     * Gets the length of a segment.
+     *
+     * @return the length of a segment in seconds of the stream, 0 if the length is not limited
+     */
+    public int getSegmentDuration()
+    {
+        return segmentDuration;
+    }
+
+    /**
+     * Sets the length of a segment. A new segment is started with the first frame
+     * that is this number of seconds after the first frame of the current segment.
+     * The length is used from the next file that is opened.
+     *
+     * @param seconds  the length of a segment in seconds of the stream, 0 to not limit the length
+     *                 (live input is split after {@link #LIVE_SEGMENT_DURATION} seconds
+     *                 if the size is not limited either)
+     */
+    public void setSegmentDuration(int seconds)
+    {
+        segmentDuration = Math.max(0, seconds);
+    }
+
+    /**
+     * Gets the size of a segment.
+     *
+     * @return the size of a segment in bytes, 0 if the size is not limited
+     */
+    public long getSegmentSize()
+    {
+        return segmentSize;
+    }
+
+    /**
+     * Sets the size of a segment. A new segment is started when the current segment
+     * has reached this size. Archives are written in blocks (see {@link #setBlockFrames(int)}),
+     * so their segments can exceed the size by up to one block.
+     * The size is used from the next file that is opened.
+     *
+     * @param bytes  the size of a segment in bytes, 0 to not limit the size
+     */
+    public void setSegmentSize(long bytes)
+    {
+        segmentSize = Math.max(0, bytes);
+    }
+
+    /**
+     * Gets the number of complete segments that are kept.
+     *
+     * @return the number of segments, 0 if all segments are kept
+     */
+    public int getMaxSegments()
+    {
+        return maxSegments;
+    }
+
+    /**
+     * Sets the number of complete segments that are kept. When a segment is complete,
+     * the oldest segments of the same output file are deleted, including those of
+     * earlier runs. Segments that were not completed (see {@link #PART_EXTENSION}) are kept.
+     * The number is used from the next file that is opened.
+     *
+     * @param count  the number of segments, 0 to keep all segments
+     *               (of live input, {@link #LIVE_MAX_SEGMENTS} are kept)
+     */
+    public void setMaxSegments(int count)
+    {
+        maxSegments = Math.max(0, count);
+    }
+
+    /**
+     * Checks if the output is written in segments.
+     *
+     * @return <code>true</code> if the output is written in segments
+     */
+    public boolean isSegmented()
+    {
+        return liveInput || (segmentDuration > 0) || (segmentSize > 0);
+    }
+
+    /**
+     * Gets the number of live input frames that were not written
+     * because the writer thread could not keep up.
+     *
+     * @return the number of dropped frames
+     */
+    public long getDroppedFrames()
+    {
+        return droppedFrames;
+    }
+
     @Override
-    public void audioFileOpened(File file) 
+    public void audioFileOpened(File file)
     {
-        setOutputFilename(file.getAbsolutePath() + ".txt");
+        liveInput = false;
+        setOutputFilename(file.getAbsolutePath() + format.getExtension());
     }
-    
+
+    @Override
+    public void liveInputOpened()
+    {
+        // the segments are written next to the previous output file
+        File directory = (outputFile != null) ? outputFile.getAbsoluteFile().getParentFile() : null;
+        liveInput  = true;
+        outputFile = new File(directory, LIVE_INPUT_NAME + format.getExtension());
+    }
+
     @Override
     public void audioFileClosed()
     {
         closeFile();
     }
-    
-    private void ensureFileIsOpen()
+
+    private void ensureFileIsOpen(SpectrumAnalyser analyser)
     {
-        if ( output == null )
+        if ( writer == null )
         {
             try
             {
-                output = new PrintStream(outputFile);
+                FFTEngine fft   = analyser.getFFTEngine();
+                int       bands = fft.avgSize();
+                if ( format == Format.TEXT )
+                {
+                    StringBuilder header = new StringBuilder("time");
+                    for ( int i = 0 ; i < bands ; i++ )
+                    {
+                        header.append(String.format("\t%.0fHz", fft.getAverageCenterFrequency(i)));
+                    }
+                    header.append(System.lineSeparator());
+                    writer = new Writer(analyser, format, header.toString().getBytes(StandardCharsets.US_ASCII), bands, 0, 0);
+                }
+                else
+                {
+                    float[] frequencies = new float[bands];
+                    for ( int i = 0 ; i < bands ; i++ )
+                    {
+                        frequencies[i] = fft.getAverageCenterFrequency(i);
+                    }
+                    int words = analyser.getFeatureWordCount();
+                    // the features of a frame are final after the longest detection delay
+                    int delay = 0;
+                    for ( FeatureDetector detector : analyser.getDetectorStage().getDetectors() )
+                    {
+                        delay = Math.max(delay, detector.getDetectionDelay());
+                    }
+                    ByteBuffer header;
+                    if ( format == Format.ARCHIVE )
+                    {
+                        header = SpectrumArchiveFormat.createHeader(
+                                analyser.getSampleRate(), analyser.getAnalysisStep(), frequencies, words,
+                                blockFrames, precision, analyser.getSpectrumShaper().getName());
+                    }
+                    else
+                    {
+                        header = SpectrumFileFormat.createHeader(
+                                format.getEncoding(), analyser.getSampleRate(), analyser.getAnalysisStep(),
+                                frequencies, words, quantisationMax, analyser.getSpectrumShaper().getName());
+                    }
+                    writer = new Writer(analyser, format, header.array(), bands, words, Math.min(delay, RING_SIZE / 2));
+                }
+                writer.openFile();
+                writer.thread.start();
             }
-            catch (FileNotFoundException e)
+            catch (IOException e)
             {
+                LOG.log(Level.SEVERE, "Could not open output file " + outputFile, e);
+                writer  = null;
                 enabled = false;
             }
         }
     }
-    
-    
-    private void closeFile()
+
+
+    private synchronized void closeFile()
     {
-        if ( output != null )
+        if ( writer != null )
         {
-            output.close();
-            output = null;
-        } 
+            writer.close();
+            writer = null;
+        }
     }
-    
+
     @Override
-    public void analysisUpdated(SpectrumAnalyser analyser)
+    public synchronized void analysisUpdated(SpectrumAnalyser analyser)
     {
         if ( !enabled ) return;
-        
-        ensureFileIsOpen();
-        
-        if ( output != null )
+
+        ensureFileIsOpen(analyser);
+
+        if ( writer != null )
         {
-            if ( !headerPrinted )
+            writer.add(analyser.getFrameCount() - 1);
+        }
+    }
+
+    /**
+     * Background thread that formats and writes the frames.
+     * The analysis thread is the only producer of frames, the writer thread the only consumer.
+     */
+    private class Writer implements Runnable
+    {
+        Writer(SpectrumAnalyser analyser, Format format, byte[] header, int bands, int featureWords, int featureDelay)
+        {
+            this.analyser     = analyser;
+            this.format       = format;
+            this.header       = header;
+            this.bands        = bands;
+            this.featureDelay = featureDelay;
+            dropFrames        = liveInput;
+            quantisationMax   = FileSpectrumOutputModule.this.quantisationMax;
+            precision         = FileSpectrumOutputModule.this.precision;
+            newLine           = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+            frames            = new long[RING_SIZE];
+            times             = new int[RING_SIZE];
+            positions         = new float[RING_SIZE];
+            features          = new long[RING_SIZE][featureWords];
+            values            = new float[RING_SIZE][bands];
+            text              = new byte[Math.max(1 << 16, 4 * lineLength(bands))];
+            buffer            = ByteBuffer.wrap(text).order(ByteOrder.LITTLE_ENDIAN);
+            index             = new long[64];
+            if ( format == Format.ARCHIVE )
+            {
+                block       = new ArchiveBlock(blockFrames, bands, featureWords);
+                encoded     = new byte[block.getMaxEncodedSize()];
+                compressed  = new byte[encoded.length / 4 + 64];
+                firstFrames = new long[index.length];
+                blockTimes  = new int[2 * index.length];
+                deflater    = new Deflater(Deflater.BEST_COMPRESSION);
+            }
+            else
             {
-                output.print("time");
-                FFT fft = analyser.getFFT();
-                for ( int i = 0 ; i < fft.avgSize() ; i++ )
+                block       = null;
+                encoded     = null;
+                deflater    = null;
+            }
+            lock              = new Object();
+            thread            = new Thread(this, "FileSpectrumOutputModule");
+            thread.setDaemon(true);
+
+            target            = outputFile.getAbsoluteFile();
+            segmented         = isSegmented();
+            segmentSize       = FileSpectrumOutputModule.this.segmentSize;
+            int duration      = FileSpectrumOutputModule.this.segmentDuration;
+            int kept          = FileSpectrumOutputModule.this.maxSegments;
+            if ( liveInput )
+            {
+                // a live capture has no end, it must not grow into a single file
+                if ( (duration == 0) && (segmentSize == 0) ) duration = LIVE_SEGMENT_DURATION;
+                if ( kept == 0 ) kept = LIVE_MAX_SEGMENTS;
+            }
+            segmentDuration   = duration * 1000L;
+            maxSegments       = kept;
+            // segment names: file name, start time, number if there are several per second, extension
+            String name       = target.getName();
+            int    dot        = name.lastIndexOf('.');
+            segmentBase       = (dot > 0) ? name.substring(0, dot) : name;
+            segmentExtension  = (dot > 0) ? name.substring(dot) : "";
+            segmentPattern    = Pattern.compile(Pattern.quote(segmentBase) + "_(\\d{8}-\\d{6})(?:_(\\d{1,9}))?"
+                                                + Pattern.quote(segmentExtension));
+        }
+
+        /**
+         * Opens the output file or the next segment and appends the header.
+         *
+         * @throws IOException if the file can not be opened
+         */
+        void openFile() throws IOException
+        {
+            if ( segmented )
+            {
+                // numbers of deleted segments are not used again, so the names keep their order,
+                // also if an earlier output started in the same second
+                String stamp  = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+                segmentNumber = stamp.equals(segmentStamp) ? segmentNumber + 1 : lastSegmentNumber(stamp) + 1;
+                segmentStamp  = stamp;
+                file = segmentFile(stamp, segmentNumber);
+                while ( file.exists() || partFile(file).exists() )
                 {
-                    output.printf("\t%.0fHz", fft.getAverageCenterFrequency(i));
+                    file = segmentFile(stamp, ++segmentNumber);
                 }
-                output.println();
-                headerPrinted = true;
             }
-            
-            SpectrumInfo info = analyser.getSpectrumInfo(0);
-            output.printf("%.3f", info.sampleIdx / 1000.0f);
-            for ( int i = 0 ; i < info.intensity.length ; i++ )
+            else
+            {
+                file = target;
+            }
+            channel = FileChannel.open((segmented ? partFile(file) : file).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+            indexCount   = 0;
+            frameCount   = 0;
+            fileSize     = header.length;
+            segmentBytes = 0;
+            append(header);
+        }
+
+        /**
+         * Appends the index of the current file, writes and closes it
+         * and, for a segment, renames it and deletes the oldest segments.
+         */
+        private void closeFile()
+        {
+            if ( format == Format.ARCHIVE )
             {
-                output.printf("\t%.3f", info.intensity[i]);
+                if ( block.getCount() > 0 ) appendBlock();
+                appendBlockIndex();
             }
-            output.println();
-            
-            output.flush();
+            else if ( format != Format.TEXT )
+            {
+                appendIndex();
+            }
+            writeBuffer();
+            try
+            {
+                if ( segmented && !failed )
+                {
+                    channel.force(false);
+                }
+                channel.close();
+                if ( segmented && !failed )
+                {
+                    try
+                    {
+                        Files.move(partFile(file).toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                    }
+                    catch ( AtomicMoveNotSupportedException e )
+                    {
+                        Files.move(partFile(file).toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    deleteOldSegments();
+                }
+            }
+            catch ( IOException e )
+            {
+                LOG.log(Level.SEVERE, "Could not close output file " + file, e);
+            }
+        }
+
+        /**
+         * Completes the current segment and starts the next one.
+         */
+        private void nextSegment()
+        {
+            closeFile();
+            if ( failed ) return;
+            try
+            {
+                openFile();
+            }
+            catch ( IOException e )
+            {
+                // the remaining frames are discarded, so the analysis does not wait for them
+                LOG.log(Level.SEVERE, "Could not open output file " + file, e);
+                failed  = true;
+                enabled = false;
+            }
+        }
+
+        /**
+         * Checks if a frame starts a new segment.
+         *
+         * @param slot  the slot of the frame in the ring
+         * @return <code>true</code> if the current segment is complete
+         */
+        private boolean isSegmentComplete(int slot)
+        {
+            return ((segmentDuration > 0) && (times[slot] - segmentStart >= segmentDuration)) ||
+                   ((segmentSize > 0) && (segmentBytes + buffer.position() >= segmentSize));
         }
+
+        /**
+         * Deletes the oldest complete segments beyond the retention limit.
+         */
+        private void deleteOldSegments()
+        {
+            File[] files = target.getParentFile().listFiles();
+            if ( (maxSegments == 0) || (files == null) ) return;
+            // sort keys of the segments: start time and number within the second
+            List<String> segments = new ArrayList<String>();
+            for ( File f : files )
+            {
+                Matcher matcher = segmentPattern.matcher(f.getName());
+                if ( matcher.matches() )
+                {
+                    int number = (matcher.group(2) != null) ? Integer.parseInt(matcher.group(2)) : 1;
+                    segments.add(String.format("%s_%09d %s", matcher.group(1), number, f.getName()));
+                }
+            }
+            Collections.sort(segments);
+            for ( int i = 0 ; i < segments.size() - maxSegments ; i++ )
+            {
+                String key = segments.get(i);
+                File   old = new File(target.getParentFile(), key.substring(key.indexOf(' ') + 1));
+                if ( !old.delete() )
+                {
+                    LOG.log(Level.WARNING, "Could not delete old segment {0}", old);
+                }
+            }
+        }
+
+        /**
+         * Finds the highest number of the existing segments that were started in the same second.
+         *
+         * @param stamp  the start time of the segments
+         * @return the highest number, 0 if there is no such segment
+         */
+        private int lastSegmentNumber(String stamp)
+        {
+            int      last  = 0;
+            String[] names = target.getParentFile().list();
+            if ( names == null ) return last;
+            for ( String name : names )
+            {
+                if ( name.endsWith(PART_EXTENSION) )
+                {
+                    name = name.substring(0, name.length() - PART_EXTENSION.length());
+                }
+                Matcher matcher = segmentPattern.matcher(name);
+                if ( matcher.matches() && matcher.group(1).equals(stamp) )
+                {
+                    int number = (matcher.group(2) != null) ? Integer.parseInt(matcher.group(2)) : 1;
+                    last = Math.max(last, number);
+                }
+            }
+            return last;
+        }
+
+        private File segmentFile(String stamp, int number)
+        {
+            return new File(target.getParentFile(),
+                    segmentBase + "_" + stamp + ((number > 1) ? "_" + number : "") + segmentExtension);
+        }
+
+        private File partFile(File file)
+        {
+            return new File(file.getPath() + PART_EXTENSION);
+        }
+
+        /**
+         * Copies a frame into the ring, waiting for a free slot if necessary.
+         * For live input, the frame is dropped instead of waiting.
+         * Frames are handed to the writer thread after the feature delay.
+         *
+         * @param frame  the frame number
+         */
+        void add(long frame)
+        {
+            if ( written - tail >= RING_SIZE )
+            {
+                if ( dropFrames )
+                {
+                    // the audio input does not wait for the analysis
+                    if ( dropped++ == 0 )
+                    {
+                        LOG.log(Level.WARNING, "Output file {0} can not keep up with the live input, dropping frames", target);
+                    }
+                    droppedFrames++;
+                    return;
+                }
+                synchronized ( lock )
+                {
+                    producerWaiting = true;
+                    while ( written - tail >= RING_SIZE )
+                    {
+                        try
+                        {
+                            // the detector worker threads may complete frames meanwhile
+                            lock.wait(1);
+                            publishFinalFrames();
+                        }
+                        catch ( InterruptedException e )
+                        {
+                            Thread.currentThread().interrupt();
+                            producerWaiting = false;
+                            return;
+                        }
+                    }
+                    producerWaiting = false;
+                }
+            }
+
+            int slot  = (int) (written % RING_SIZE);
+            int count = analyser.getIntensities(frame, values[slot]);
+            if ( count == 0 ) return;
+            if ( values[slot].length != count )
+            {
+                values[slot] = new float[count];
+                analyser.getIntensities(frame, values[slot]);
+            }
+            frames[slot]    = frame;
+            times[slot]     = analyser.getSampleIdx(frame, 0);
+            positions[slot] = analyser.getPosition(frame, 0);
+            long[] words = features[slot];
+            for ( int w = 0 ; w < words.length ; w++ )
+            {
+                words[w] = analyser.getFeatureWord(frame, w);
+            }
+            written++;
+
+            publishFinalFrames();
+        }
+
+        /**
+         * Hands the frames to the writer thread whose features do not change any more:
+         * frames that are older than the feature delay and whose detection is complete
+         * (see {@link analyser.DetectorStage#getCompletedFrame()}).
+         */
+        private void publishFinalFrames()
+        {
+            // before reading the features, so they are final for the frames below
+            long completed = analyser.getDetectorStage().getCompletedFrame();
+            refreshFeatures();
+            long count = head;
+            while ( (count < written - featureDelay) &&
+                    (frames[(int) (count % RING_SIZE)] <= completed - featureDelay) )
+            {
+                count++;
+            }
+            publish(count);
+        }
+
+        /**
+         * Copies the features of the frames that have not been handed to the writer thread again,
+         * the detectors may have set features since.
+         * Detectors only ever add features, so the bits of frames that are no longer
+         * in the history are kept.
+         */
+        private void refreshFeatures()
+        {
+            for ( long n = head ; n < written ; n++ )
+            {
+                int    waiting = (int) (n % RING_SIZE);
+                long[] words   = features[waiting];
+                for ( int w = 0 ; w < words.length ; w++ )
+                {
+                    words[w] |= analyser.getFeatureWord(frames[waiting], w);
+                }
+            }
+        }
+
+        /**
+         * Hands frames to the writer thread.
+         *
+         * @param count  the number of frames that the writer thread can write
+         */
+        private void publish(long count)
+        {
+            head = count;
+            if ( consumerWaiting )
+            {
+                synchronized ( lock )
+                {
+                    lock.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Writes all remaining frames, stops the thread and closes the file.
+         * Waits for the detector worker threads to complete the remaining frames first.
+         */
+        void close()
+        {
+            long timeout = System.currentTimeMillis() + DETECTION_TIMEOUT;
+            while ( (analyser.getDetectorStage().getCompletedFrame() != Long.MAX_VALUE) &&
+                    (System.currentTimeMillis() < timeout) )
+            {
+                LockSupport.parkNanos(1000000);
+            }
+            refreshFeatures();
+            publish(written);
+            closing = true;
+            synchronized ( lock )
+            {
+                lock.notifyAll();
+            }
+            try
+            {
+                thread.join();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            long lastWrite = System.currentTimeMillis();
+            while ( true )
+            {
+                long count = tail;
+                if ( head == count )
+                {
+                    long now = System.currentTimeMillis();
+                    if ( (buffer.position() > 0) && (now - lastWrite >= flushInterval) )
+                    {
+                        writeBuffer();
+                        lastWrite = now;
+                    }
+                    if ( closing && (head == count) ) break;
+                    // with an empty buffer, there is nothing to write until the next frame
+                    waitForFrames((buffer.position() > 0) ? Math.max(1, lastWrite + flushInterval - now) : 0);
+                    continue;
+                }
+
+                int slot = (int) (count % RING_SIZE);
+                if ( segmented && (frameCount > 0) && isSegmentComplete(slot) )
+                {
+                    nextSegment();
+                    lastWrite = System.currentTimeMillis();
+                }
+                if ( frameCount == 0 )
+                {
+                    segmentStart = times[slot];
+                }
+                if ( buffer.remaining() < lineLength(values[slot].length) )
+                {
+                    writeBuffer();
+                    lastWrite = System.currentTimeMillis();
+                }
+                if ( format == Format.TEXT )
+                {
+                    formatFrame(slot);
+                    frameCount++;
+                }
+                else if ( format == Format.ARCHIVE )
+                {
+                    archiveFrame(slot);
+                }
+                else
+                {
+                    encodeFrame(slot);
+                }
+                tail = count + 1;
+
+                if ( producerWaiting )
+                {
+                    synchronized ( lock )
+                    {
+                        lock.notifyAll();
+                    }
+                }
+            }
+
+            closeFile();
+            if ( deflater != null )
+            {
+                deflater.end();
+            }
+        }
+
+        /**
+         * Waits until the analysis thread adds a frame or the file is closed.
+         *
+         * @param timeout  the maximum time to wait in ms, 0 to wait without a time limit
+         */
+        private void waitForFrames(long timeout)
+        {
+            synchronized ( lock )
+            {
+                consumerWaiting = true;
+                try
+                {
+                    if ( (head == tail) && !closing )
+                    {
+                        lock.wait(timeout);
+                    }
+                }
+                catch ( InterruptedException e )
+                {
+                    closing = true;
+                }
+                consumerWaiting = false;
+            }
+        }
+
+        /**
+         * Formats a frame into the buffer.
+         *
+         * @param slot  the slot of the frame in the ring
+         */
+        private void formatFrame(int slot)
+        {
+            int pos = buffer.position();
+            pos = FixedPointFormat.format(times[slot] / 1000.0f, 3, text, pos);
+            for ( float value : values[slot] )
+            {
+                text[pos++] = '\t';
+                pos = FixedPointFormat.format(value, 3, text, pos);
+            }
+            for ( byte b : newLine )
+            {
+                text[pos++] = b;
+            }
+            buffer.position(pos);
+        }
+
+        /**
+         * Encodes a frame into the buffer and updates the time index.
+         *
+         * @param slot  the slot of the frame in the ring
+         */
+        private void encodeFrame(int slot)
+        {
+            int start = buffer.position();
+            buffer.putLong(frames[slot]);
+            buffer.putInt(times[slot]);
+            buffer.putFloat(positions[slot]);
+            for ( long word : features[slot] )
+            {
+                buffer.putLong(word);
+            }
+            // the number of bands is fixed by the header
+            float[] frame = values[slot];
+            for ( int i = 0 ; i < bands ; i++ )
+            {
+                float value = (i < frame.length) ? frame[i] : 0;
+                if ( format == Format.BINARY_FLOAT )
+                {
+                    buffer.putFloat(value);
+                }
+                else
+                {
+                    buffer.putShort(SpectrumFileFormat.quantise(value, quantisationMax));
+                }
+            }
+            while ( ((buffer.position() - start) & 7) != 0 )
+            {
+                buffer.put((byte) 0);
+            }
+
+            // index entries up to the time of this frame point to it,
+            // the index starts at the interval of the first frame
+            if ( frameCount == 0 )
+            {
+                indexStart = Math.floorDiv(times[slot], SpectrumFileFormat.INDEX_INTERVAL) * SpectrumFileFormat.INDEX_INTERVAL;
+            }
+            while ( (times[slot] >= indexStart + (long) indexCount * SpectrumFileFormat.INDEX_INTERVAL) )
+            {
+                if ( indexCount == index.length )
+                {
+                    index = Arrays.copyOf(index, index.length * 2);
+                }
+                index[indexCount++] = frameCount;
+            }
+            frameCount++;
+        }
+
+        /**
+         * Appends the time index and the trailer of a binary file.
+         */
+        private void appendIndex()
+        {
+            long indexOffset = header.length + frameCount * (long) SpectrumFileFormat.getFrameSize(
+                    format.getEncoding(), bands, features[0].length);
+            for ( int i = 0 ; i < indexCount ; i++ )
+            {
+                if ( buffer.remaining() < 8 ) writeBuffer();
+                buffer.putLong(index[i]);
+            }
+            if ( buffer.remaining() < SpectrumFileFormat.TRAILER_SIZE ) writeBuffer();
+            buffer.putLong(indexOffset);
+            buffer.putLong(frameCount);
+            buffer.putInt(SpectrumFileFormat.INDEX_INTERVAL);
+            buffer.putInt(indexCount);
+            buffer.putInt(SpectrumFileFormat.TRAILER_MAGIC);
+            buffer.putInt(indexStart);
+        }
+
+        /**
+         * Adds a frame to the current block of an archive
+         * and appends the block when it is complete.
+         *
+         * @param slot  the slot of the frame in the ring
+         */
+        private void archiveFrame(int slot)
+        {
+            block.add(frames[slot], times[slot], positions[slot], features[slot], values[slot], precision);
+            frameCount++;
+            if ( block.isFull() )
+            {
+                appendBlock();
+            }
+        }
+
+        /**
+         * Encodes and compresses the current block of an archive, appends it
+         * and adds it to the block index.
+         */
+        private void appendBlock()
+        {
+            int count = block.getCount();
+            int size  = block.encode(encoded);
+            deflater.reset();
+            deflater.setInput(encoded, 0, size);
+            deflater.finish();
+            int length = 0;
+            while ( !deflater.finished() )
+            {
+                if ( length == compressed.length )
+                {
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                }
+                length += deflater.deflate(compressed, length, compressed.length - length);
+            }
+
+            if ( indexCount == index.length )
+            {
+                index       = Arrays.copyOf(index, index.length * 2);
+                firstFrames = Arrays.copyOf(firstFrames, index.length);
+                blockTimes  = Arrays.copyOf(blockTimes, 2 * index.length);
+            }
+            index[indexCount]              = fileSize;
+            firstFrames[indexCount]        = block.getFrame(0);
+            blockTimes[2 * indexCount]     = block.getTime(0);
+            blockTimes[2 * indexCount + 1] = block.getTime(count - 1);
+
+            if ( buffer.remaining() < SpectrumArchiveFormat.BLOCK_HEADER_SIZE ) writeBuffer();
+            buffer.putInt(SpectrumArchiveFormat.BLOCK_MAGIC);
+            buffer.putInt(count);
+            buffer.putLong(firstFrames[indexCount]);
+            buffer.putInt(blockTimes[2 * indexCount]);
+            buffer.putInt(blockTimes[2 * indexCount + 1]);
+            buffer.putInt(size);
+            buffer.putInt(length);
+            append(compressed, length);
+
+            fileSize += SpectrumArchiveFormat.BLOCK_HEADER_SIZE + length;
+            indexCount++;
+            block.clear();
+        }
+
+        /**
+         * Appends the block index and the trailer of an archive.
+         */
+        private void appendBlockIndex()
+        {
+            for ( int i = 0 ; i < indexCount ; i++ )
+            {
+                if ( buffer.remaining() < SpectrumArchiveFormat.INDEX_ENTRY_SIZE ) writeBuffer();
+                buffer.putLong(index[i]);
+                buffer.putLong(firstFrames[i]);
+                buffer.putInt(blockTimes[2 * i]);
+                buffer.putInt(blockTimes[2 * i + 1]);
+            }
+            if ( buffer.remaining() < SpectrumFileFormat.TRAILER_SIZE ) writeBuffer();
+            buffer.putLong(fileSize);
+            buffer.putLong(frameCount);
+            buffer.putInt(block.getCapacity());
+            buffer.putInt(indexCount);
+            buffer.putInt(SpectrumFileFormat.TRAILER_MAGIC);
+            buffer.putInt(0);
+        }
+
+        private void append(byte[] bytes)
+        {
+            append(bytes, bytes.length);
+        }
+
+        private void append(byte[] bytes, int length)
+        {
+            if ( buffer.remaining() < length )
+            {
+                writeBuffer();
+            }
+            if ( buffer.remaining() < length )
+            {
+                // the header of a very large number of bands or a large block
+                write(ByteBuffer.wrap(bytes, 0, length));
+            }
+            else
+            {
+                buffer.put(bytes, 0, length);
+            }
+        }
+
+        /**
+         * Writes the content of the buffer to the file.
+         */
+        private void writeBuffer()
+        {
+            buffer.flip();
+            write(buffer);
+            buffer.clear();
+        }
+
+        private void write(ByteBuffer data)
+        {
+            if ( failed ) return;
+
+            // an event is only created when it is recorded
+            SendEvent event = SEND_EVENT_CHECK.isEnabled() ? new SendEvent() : null;
+            if ( event != null ) event.begin();
+            int bytes = data.remaining();
+            try
+            {
+                while ( data.hasRemaining() )
+                {
+                    channel.write(data);
+                }
+                segmentBytes += bytes;
+            }
+            catch ( IOException e )
+            {
+                // the remaining frames are discarded, so the analysis does not wait for them
+                LOG.log(Level.SEVERE, "Could not write output file " + file, e);
+                failed  = true;
+                enabled = false;
+            }
+            if ( event != null ) event.end();
+            if ( (event != null) && event.shouldCommit() )
+            {
+                event.module  = getName();
+                event.channel = "Spectrum";
+                event.bytes   = bytes;
+                event.commit();
+            }
+        }
+
+        private int lineLength(int bands)
+        {
+            // also enough for a binary frame
+            return (bands + 1) * (FixedPointFormat.MAX_LENGTH + 1) + newLine.length + 8 * features[0].length;
+        }
+
+        private FileChannel       channel;
+        private final SpectrumAnalyser analyser;
+        private final Format      format;
+        private final byte[]      header, newLine;
+        private final int         bands, featureDelay;
+        private final float       quantisationMax, precision;
+        // live input: drop frames instead of waiting for a free slot
+        private final boolean     dropFrames;
+        // number of frames dropped while writing this file (only used by the analysis thread)
+        private long              dropped;
+        // the ring of frames: frame number, time, position, features and intensities
+        private final long[]      frames;
+        private final int[]       times;
+        private final float[]     positions;
+        private final long[][]    features;
+        private final float[][]   values;
+        // number of frames added by the analysis thread (only used by the analysis thread)
+        private long              written;
+        // number of frames handed to and written by the writer thread
+        private volatile long     head, tail;
+        private volatile boolean  producerWaiting, consumerWaiting, closing;
+        private boolean           failed;
+        private final byte[]      text;
+        private final ByteBuffer  buffer;
+        // time index of a binary file: position of the first frame of each index interval,
+        // block index of an archive: offset of each block
+        private long[]            index;
+        private int               indexCount, indexStart;
+        private long              frameCount;
+        // archive: current block, encoding buffers, first frame and times of each block
+        private final ArchiveBlock block;
+        private final byte[]      encoded;
+        private byte[]            compressed;
+        private long[]            firstFrames;
+        private int[]             blockTimes;
+        private final Deflater    deflater;
+        private long              fileSize;
+        private final Object      lock;
+        private final Thread      thread;
+        // segments: configured output file, current file, naming, limits and state of the current segment
+        private final File        target;
+        private File              file;
+        private final boolean     segmented;
+        private final String      segmentBase, segmentExtension;
+        private final Pattern     segmentPattern;
+        private final long        segmentDuration, segmentSize;
+        private final int         maxSegments;
+        private long              segmentBytes;
+        private int               segmentStart;
+        private String            segmentStamp;
+        private int               segmentNumber;
     }
 
-    File        outputFile;
-    PrintStream output;
-    boolean     enabled;
-    boolean     headerPrinted;
+    File                 outputFile;
+    volatile Writer      writer;
+    volatile boolean     enabled;
+    volatile int         flushInterval;
+    volatile Format      format;
+    volatile float       quantisationMax;
+    volatile int         blockFrames;
+    volatile float       precision;
+    volatile int         segmentDuration;
+    volatile long        segmentSize;
+    volatile int         maxSegments;
+    volatile boolean     liveInput;
+    // written by the analysis thread only
+    volatile long        droppedFrames;
+
+    // checks if send events are recorded, without creating an event for each write
+    private static final SendEvent SEND_EVENT_CHECK = new SendEvent();
+
+    // longest time that closing a file waits for the detector worker threads, in ms
+    private static final int    DETECTION_TIMEOUT = 1000;
+
+    private static final Logger LOG = Logger.getLogger(FileSpectrumOutputModule.class.getName());
 }
@@ -0,0 +1,101 @@
+package output;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Formatter for floating point values with a fixed number of decimals,
+ * writing ASCII characters into a byte array.
+ * <p>
+ * The result is the same as <code>String.format(Locale.ROOT, "%.3f", value)</code>
+ * (for 3 decimals), i.e., the value is rounded half up (away from zero) and
+ * a negative value that rounds to zero keeps its sign, but the formatter
+ * does not parse a format string and does not allocate any objects.
+ * The value of a <code>float</code> multiplied with a power of ten up to
+ * 10<sup>6</sup> is exact in a <code>double</code>, so the rounding decision
+ * is exact as well. Values that are too large for that, NaN and infinity
+ * are formatted by {@link String#format(Locale, String, Object...)}.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+final class FixedPointFormat
+{
+    /**
+     * Maximum number of decimals.
+     */
+    static final int MAX_DECIMALS = 6;
+
+    /**
+     * Maximum number of characters of a formatted value.
+     */
+    static final int MAX_LENGTH = 48 + MAX_DECIMALS;
+
+    private FixedPointFormat()
+    {
+        // static methods only
+    }
+
+    /**
+     * Formats a value.
+     *
+     * @param value     the value to format
+     * @param decimals  the number of decimals (0 to {@link #MAX_DECIMALS})
+     * @param target    the array to write the characters into
+     * @param pos       the index of the first character in the array
+     * @return the index after the last character written
+     *         (at most {@link #MAX_LENGTH} characters are written)
+     */
+    static int format(float value, int decimals, byte[] target, int pos)
+    {
+        double scaled = Math.abs((double) value) * POWERS_OF_TEN[decimals];
+        if ( !(scaled < MAX_EXACT) )
+        {
+            // too large for the fast path, NaN or infinity
+            byte[] text = String.format(Locale.ROOT, "%." + decimals + "f", value).getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(text, 0, target, pos, text.length);
+            return pos + text.length;
+        }
+
+        long digits = (long) scaled;
+        if ( scaled - digits >= 0.5 )
+        {
+            digits++;
+        }
+
+        if ( (Float.floatToRawIntBits(value) & 0x80000000) != 0 )
+        {
+            target[pos++] = '-';
+        }
+
+        // integer part, then the decimals, from the last digit backwards
+        long intPart  = digits / POWERS_OF_TEN[decimals];
+        int  intCount = 1;
+        for ( long i = intPart / 10 ; i > 0 ; i /= 10 )
+        {
+            intCount++;
+        }
+        int end = pos + intCount + ((decimals > 0) ? 1 + decimals : 0);
+        int idx = end;
+        for ( int d = 0 ; d < decimals ; d++ )
+        {
+            target[--idx] = (byte) ('0' + (digits % 10));
+            digits /= 10;
+        }
+        if ( decimals > 0 )
+        {
+            target[--idx] = '.';
+        }
+        do
+        {
+            target[--idx] = (byte) ('0' + (digits % 10));
+            digits /= 10;
+        }
+        while ( digits > 0 );
+        return end;
+    }
+
+    private static final long[] POWERS_OF_TEN = { 1, 10, 100, 1000, 10000, 100000, 1000000 };
+    // below this, the scaled value and its integer part are exact
+    private static final double MAX_EXACT     = 1L << 53;
+}
@@ -2,6 +2,7 @@ package output;
 
 import analyser.SpectrumAnalyser;
 import analyser.SpectrumInfo;
+import detector.BeatTracker;
 import com.illposed.osc.OSCBundle;
 import com.illposed.osc.OSCMessage;
 import com.illposed.osc.OSCPortOut;
@@ -14,10 +15,17 @@ import java.util.logging.Logger;
 
 /**
  * An output module that sends the spectrum data via OSC.
+ * <p>
+ * The frequency spectrum is sent to the target port, the playback progress
+ * to the next port, and the tempo and beat prediction of a {@link BeatTracker}
+ * to the port after that (tempo in BPM, confidence, phase, 
+ * time until the next beat in ms, time of the next beat in ms).
  * 
  * @author Stefan Marks
  * @verison 1.0 - 21.05.2013: Created
  * @version 1.1 - 20.06.2013: Converted to send OSC messages
+ * @version 1.2 - 17.10.2026: Tempo and beat predictions
+ *                            Flight recorder events of the sent bundles
  */
 public class OscOutputModule implements OutputModule
 {
@@ -32,6 +40,9 @@ public class OscOutputModule implements OutputModule
         outputPort2       = null;
         message2          = null;
         bundle2           = null;
+        outputPort3       = null;
+        message3          = null;
+        bundle3           = null;
         analyser.registerListener(this);
     }
 
@@ -114,6 +125,11 @@ public class OscOutputModule implements OutputModule
                 message2    = new OSCMessage(oscTargetAddress);
                 bundle2     = new OSCBundle();
                 bundle2.addPacket(message2);
+                // tempo and beat prediction on the port after that
+                outputPort3 = new OSCPortOut(target.getAddress(), target.getPort() + 2);
+                message3    = new OSCMessage(oscTargetAddress);
+                bundle3     = new OSCBundle();
+                bundle3.addPacket(message3);
             } 
             catch ( Exception ex )
             {
@@ -124,7 +140,7 @@ public class OscOutputModule implements OutputModule
         }
     }
     
-    private void closeSocket()
+    private synchronized void closeSocket()
     {
         if ( outputPort1 != null )
         {
@@ -136,12 +152,18 @@ public class OscOutputModule implements OutputModule
             outputPort2.close();
             outputPort2 = null;
         }
+        if ( outputPort3 != null )
+        {
+            outputPort3.close();
+            outputPort3 = null;
+        }
         message1 = null;
         message2 = null;
+        message3 = null;
     }
     
     @Override
-    public void analysisUpdated(SpectrumAnalyser analyser)
+    public synchronized void analysisUpdated(SpectrumAnalyser analyser)
     {
         if ( !enabled ) return;
        
@@ -151,14 +173,14 @@ public class OscOutputModule implements OutputModule
         {
             message1.clearArguments();
             SpectrumInfo  info = analyser.getSpectrumInfo(0);
-            for ( float f : info.intensity )
+            for ( int i = 0 ; i < info.getIntensityCount() ; i++ )
             {
-                message1.addArgument(f);
+                message1.addArgument(info.getIntensity(i));
             }
             
             try
             {
-                outputPort1.send(bundle1); //  bundle consists of only one messsge
+                send(outputPort1, bundle1, "Spectrum"); //  bundle consists of only one messsge
             } 
             catch (IOException ex)
             {
@@ -171,11 +193,41 @@ public class OscOutputModule implements OutputModule
         if ( outputPort2 != null )
         {
             message2.clearArguments();
-            message2.addArgument(analyser.getSpectrumInfo(0).position);
+            message2.addArgument(analyser.getSpectrumInfo(0).getPosition());
+            
+            try
+            {
+                send(outputPort2, bundle2, "Progress"); //  bundle consists of only one messsge
+            } 
+            catch (IOException ex)
+            {
+                Logger.getLogger(OscOutputModule.class.getName()).log(Level.SEVERE, null, ex);
+                closeSocket();
+                enabled = false;
+            }
+        }
+    }
+ 
+    @Override
+    public synchronized void beatUpdated(BeatTracker tracker)
+    {
+        // called by the thread that runs the detectors
+        if ( !enabled ) return;
+        
+        ensureSocketIsOpen();
+        
+        if ( outputPort3 != null )
+        {
+            message3.clearArguments();
+            message3.addArgument(tracker.getTempo());
+            message3.addArgument(tracker.getConfidence());
+            message3.addArgument(tracker.getPhase());
+            message3.addArgument(tracker.getTimeToNextBeat());
+            message3.addArgument(tracker.getNextBeatTime());
             
             try
             {
-                outputPort2.send(bundle2); //  bundle consists of only one messsge
+                send(outputPort3, bundle3, "Beat"); //  bundle consists of only one messsge
             } 
             catch (IOException ex)
             {
@@ -186,10 +238,42 @@ public class OscOutputModule implements OutputModule
         }
     }
  
+    /**
+     * Sends a bundle and records the flight recorder event of the send.
+     * 
+     * @param port     the port to send the bundle to
+     * @param bundle   the bundle to send
+     * @param channel  the kind of data in the bundle
+     * @throws IOException if the bundle could not be sent
+     */
+    private void send(OSCPortOut port, OSCBundle bundle, String channel) throws IOException
+    {
+        if ( !SEND_EVENT_CHECK.isEnabled() )
+        {
+            port.send(bundle);
+            return;
+        }
+        SendEvent event = new SendEvent();
+        event.begin();
+        port.send(bundle);
+        event.end();
+        if ( event.shouldCommit() )
+        {
+            event.module  = getName();
+            event.channel = channel;
+            // the bundle is only encoded again when the event is recorded
+            event.bytes   = bundle.getByteArray().length;
+            event.commit();
+        }
+    }
+ 
     private boolean        enabled;
     private String         targetAddress, oscTargetAddress;
-    private OSCPortOut     outputPort1, outputPort2;
-    private OSCMessage     message1, message2;
-    private OSCBundle      bundle1, bundle2;
+    private OSCPortOut     outputPort1, outputPort2, outputPort3;
+    private OSCMessage     message1, message2, message3;
+    private OSCBundle      bundle1, bundle2, bundle3;
+
+    // checks if send events are recorded, without creating an event for each bundle
+    private static final SendEvent SEND_EVENT_CHECK = new SendEvent();
 
 }
@@ -1,15 +1,21 @@
 package output;
 
 import analyser.SpectrumAnalyser;
+import detector.BeatTracker;
 import java.io.File;
 
 /**
  * Interface for output modules.
+ * <p>
+ * Output modules receive the analysed frames and, when they are registered
+ * with a {@link BeatTracker}, the tempo and beat predictions.
  * 
  * @author  Stefan Marks
  * @version 1.0 - 15.06.2013: Created
+ * @version 1.1 - 17.10.2026: Tempo and beat predictions
+ *                            Live input
  */
-public interface OutputModule extends SpectrumAnalyser.Listener
+public interface OutputModule extends SpectrumAnalyser.Listener, BeatTracker.Listener
 {
     /**
      * Gets the name of the module.
@@ -41,8 +47,30 @@ public interface OutputModule extends SpectrumAnalyser.Listener
      */
     void audioFileOpened(File file);
     
+    /**
+     * Informs the module that live input was opened.
+     * The input is closed with {@link #audioFileClosed()}.
+     * Modules that treat live input like an audio file need not implement this.
+     */
+    default void liveInputOpened()
+    {
+        // nothing to do here
+    }
+    
     /**
      * Informs the module that the audio file was closed.
      */
     void audioFileClosed(); 
+
+    /**
+     * Informs the module that the beat tracker has been updated.
+     * Modules that do not output the tempo and beat predictions need not implement this.
+     * 
+     * @param tracker  the beat tracker
+     */
+    @Override
+    default void beatUpdated(BeatTracker tracker)
+    {
+        // nothing to do here
+    }
 }
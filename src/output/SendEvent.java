@@ -0,0 +1,34 @@
+package output;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of an output module sending or writing data.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+@Name("AudioSpectrumAnalyser.OutputSend")
+@Label("Output Send")
+@Description("An output module sent or wrote data")
+@Category({"Audio Spectrum Analyser", "Output"})
+@StackTrace(false)
+class SendEvent extends Event
+{
+    @Label("Module")
+    String  module;
+
+    @Label("Channel")
+    @Description("Kind of data sent")
+    String  channel;
+
+    @Label("Bytes")
+    @DataAmount
+    int     bytes;
+}
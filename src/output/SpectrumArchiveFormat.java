@@ -0,0 +1,100 @@
+package output;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of the compressed spectrum archives written by {@link FileSpectrumOutputModule}.
+ * <p>
+ * An archive stores the frames in blocks of a fixed number of frames. Within a block,
+ * the frames are stored in columns, band by band, as differences of the intensities
+ * quantised to a fixed precision (see {@link ArchiveBlock}), and the block is compressed
+ * with Deflate (see {@link java.util.zip.Deflater}). Each block can be decompressed on its own.
+ * <p>
+ * All values are little-endian. The file consists of
+ * <ul>
+ * <li>the header, the same as in {@link SpectrumFileFormat} except for the fields
+ *     magic <code>"ASPA"</code>, reserved (uint16) instead of the encoding,
+ *     frames per block (uint32) instead of the frame size
+ *     and precision (float32) instead of the quantisation maximum,</li>
+ * <li>the blocks, each with a header of {@link #BLOCK_HEADER_SIZE} bytes:
+ *     magic <code>"ASPB"</code>, number of frames (uint32), first frame number (int64),
+ *     time of the first frame in ms (int32), time of the last frame in ms (int32),
+ *     size of the encoded block (uint32), size of the compressed block (uint32),
+ *     followed by the compressed block,</li>
+ * <li>the block index: for each block, its offset in the file (int64), first frame number (int64),
+ *     time of the first and of the last frame in ms (int32 each),</li>
+ * <li>the trailer, the same size as in {@link SpectrumFileFormat}:
+ *     offset of the index (int64), number of frames (int64), frames per block (uint32),
+ *     number of blocks (uint32), magic <code>"ASPI"</code>, reserved (uint32).</li>
+ * </ul>
+ * All blocks except the last one contain the same number of frames, so the block
+ * of a frame position is known without a search. If the archive was not closed properly,
+ * the blocks can be found through their headers (see {@link SpectrumFileReader}).
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public final class SpectrumArchiveFormat
+{
+    /** Magic number at the start of the file */
+    public static final int MAGIC             = 0x41505341; // "ASPA"
+    /** Magic number at the start of a block */
+    public static final int BLOCK_MAGIC       = 0x42505341; // "ASPB"
+    /** Version of the format */
+    public static final int VERSION           = 1;
+    /** Size of the header of a block in bytes */
+    public static final int BLOCK_HEADER_SIZE = 32;
+    /** Size of an entry of the block index in bytes */
+    public static final int INDEX_ENTRY_SIZE  = 24;
+    /** Default number of frames per block */
+    public static final int DEFAULT_BLOCK_FRAMES = 1024;
+    /** Default quantisation step of the intensities, 1% of the range of the logarithmic spectrum shaper */
+    public static final float DEFAULT_PRECISION  = 0.01f;
+    /** Default file name extension */
+    public static final String EXTENSION      = ".spa";
+
+    private SpectrumArchiveFormat()
+    {
+        // constants and static methods only
+    }
+
+    /**
+     * Creates the header of an archive.
+     *
+     * @param sampleRate         the sample rate of the analysed stream
+     * @param hopSize            the number of samples per analysis step
+     * @param centreFrequencies  the centre frequencies of the bands
+     * @param featureWords       the number of feature words per frame
+     * @param blockFrames        the number of frames per block
+     * @param precision          the quantisation step of the intensities
+     * @param shaper             the name of the spectrum shaper
+     * @return the header, ready to be written
+     */
+    public static ByteBuffer createHeader(float sampleRate, int hopSize, float[] centreFrequencies,
+                                          int featureWords, int blockFrames, float precision, String shaper)
+    {
+        byte[] name = shaper.getBytes(StandardCharsets.UTF_8);
+        int    size = SpectrumFileFormat.pad(40 + centreFrequencies.length * 4 + name.length);
+        ByteBuffer header = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putShort((short) VERSION);
+        header.putShort((short) 0);
+        header.putInt(size);
+        header.putInt(blockFrames);
+        header.putFloat(sampleRate);
+        header.putInt(hopSize);
+        header.putInt(centreFrequencies.length);
+        header.putInt(featureWords);
+        header.putFloat(precision);
+        header.putInt(name.length);
+        for ( float frequency : centreFrequencies )
+        {
+            header.putFloat(frequency);
+        }
+        header.put(name);
+        header.position(0);
+        return header;
+    }
+}
@@ -0,0 +1,202 @@
+package output;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of the binary spectrum files written by {@link FileSpectrumOutputModule}.
+ * <p>
+ * All values are little-endian. The file consists of
+ * <ul>
+ * <li>the header:
+ *     magic <code>"ASPF"</code>, version (uint16), encoding (uint16, see {@link Encoding}),
+ *     header size (uint32, the offset of the first frame), frame size (uint32),
+ *     sample rate (float32), hop size in samples (uint32), number of bands (uint32),
+ *     number of feature words (uint32), quantisation maximum (float32),
+ *     length of the shaper name (uint32), the centre frequencies of the bands (float32 each),
+ *     the name of the spectrum shaper (UTF-8), padded to a multiple of 8 bytes,</li>
+ * <li>the frames, all of the same size:
+ *     frame number (int64), time in ms (int32), relative position in the stream (float32),
+ *     the feature bitmask (int64 per feature word),
+ *     the intensities of the bands (float32 or uint16 each), padded to a multiple of 8 bytes,</li>
+ * <li>the time index: for every {@link #INDEX_INTERVAL} ms from the start of the index,
+ *     the position (int64, counted in frames) of the first frame at or after that time,
+ *     so a reader finds the frame of a time without a search,</li>
+ * <li>the trailer ({@link #TRAILER_SIZE} bytes): offset of the index (int64), number of frames (int64),
+ *     index interval in ms (uint32), number of index entries (uint32),
+ *     magic <code>"ASPI"</code>, start of the index in ms (int32, the start of the interval
+ *     of the first frame, so the index of a segment of a long stream does not start at 0).</li>
+ * </ul>
+ * A file without a trailer was not closed properly, its frames can still be read
+ * up to the last complete frame (see {@link SpectrumFileReader}).
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public final class SpectrumFileFormat
+{
+    /**
+     * Encoding of the band intensities.
+     */
+    public enum Encoding
+    {
+        /** 32 bit floating point values */
+        FLOAT32(0, 4),
+        /** 16 bit unsigned values, 0 to 65535 for 0 to the quantisation maximum */
+        UINT16(1, 2);
+
+        private Encoding(int code, int size)
+        {
+            this.code = code;
+            this.size = size;
+        }
+
+        /**
+         * Gets the code of the encoding in the header.
+         *
+         * @return the encoding code
+         */
+        public int getCode()
+        {
+            return code;
+        }
+
+        /**
+         * Gets the size of an intensity value.
+         *
+         * @return the size in bytes
+         */
+        public int getValueSize()
+        {
+            return size;
+        }
+
+        /**
+         * Finds the encoding of a code in the header.
+         *
+         * @param code  the encoding code
+         * @return the encoding or <code>null</code> if the code is unknown
+         */
+        public static Encoding fromCode(int code)
+        {
+            for ( Encoding encoding : values() )
+            {
+                if ( encoding.code == code ) return encoding;
+            }
+            return null;
+        }
+
+        private final int code, size;
+    }
+
+    /** Magic number at the start of the file */
+    public static final int MAGIC         = 0x46505341; // "ASPF"
+    /** Magic number at the end of the trailer */
+    public static final int TRAILER_MAGIC = 0x49505341; // "ASPI"
+    /** Version of the format */
+    public static final int VERSION       = 1;
+    /** Size of the trailer in bytes */
+    public static final int TRAILER_SIZE  = 32;
+    /** Time between two entries of the time index in ms */
+    public static final int INDEX_INTERVAL = 100;
+    /** Size of the fixed part of a frame (frame number, time, position) in bytes */
+    public static final int FRAME_PREFIX_SIZE = 16;
+    /** Default file name extension */
+    public static final String EXTENSION  = ".spb";
+
+    private SpectrumFileFormat()
+    {
+        // constants and static methods only
+    }
+
+    /**
+     * Calculates the size of a frame.
+     *
+     * @param encoding      the encoding of the intensities
+     * @param bands         the number of bands
+     * @param featureWords  the number of feature words
+     * @return the frame size in bytes
+     */
+    public static int getFrameSize(Encoding encoding, int bands, int featureWords)
+    {
+        return pad(FRAME_PREFIX_SIZE + featureWords * 8 + bands * encoding.getValueSize());
+    }
+
+    /**
+     * Creates the header of a file.
+     *
+     * @param encoding           the encoding of the intensities
+     * @param sampleRate         the sample rate of the analysed stream
+     * @param hopSize            the number of samples per analysis step
+     * @param centreFrequencies  the centre frequencies of the bands
+     * @param featureWords       the number of feature words per frame
+     * @param quantisationMax    the intensity that is encoded as the maximum uint16 value
+     * @param shaper             the name of the spectrum shaper
+     * @return the header, ready to be written
+     */
+    public static ByteBuffer createHeader(Encoding encoding, float sampleRate, int hopSize,
+                                          float[] centreFrequencies, int featureWords,
+                                          float quantisationMax, String shaper)
+    {
+        byte[] name = shaper.getBytes(StandardCharsets.UTF_8);
+        int    size = pad(40 + centreFrequencies.length * 4 + name.length);
+        ByteBuffer header = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putShort((short) VERSION);
+        header.putShort((short) encoding.getCode());
+        header.putInt(size);
+        header.putInt(getFrameSize(encoding, centreFrequencies.length, featureWords));
+        header.putFloat(sampleRate);
+        header.putInt(hopSize);
+        header.putInt(centreFrequencies.length);
+        header.putInt(featureWords);
+        header.putFloat(quantisationMax);
+        header.putInt(name.length);
+        for ( float frequency : centreFrequencies )
+        {
+            header.putFloat(frequency);
+        }
+        header.put(name);
+        header.position(0);
+        return header;
+    }
+
+    /**
+     * Quantises an intensity to a uint16 value.
+     *
+     * @param value            the intensity
+     * @param quantisationMax  the intensity that is encoded as the maximum value
+     * @return the quantised value (0 to 65535), stored in a <code>short</code>
+     */
+    public static short quantise(float value, float quantisationMax)
+    {
+        float scaled = value / quantisationMax;
+        // also catches NaN
+        if ( !(scaled > 0) ) return 0;
+        return (short) ((scaled >= 1) ? 65535 : (int) (scaled * 65535 + 0.5f));
+    }
+
+    /**
+     * Converts a quantised uint16 value back to an intensity.
+     *
+     * @param value            the quantised value, stored in a <code>short</code>
+     * @param quantisationMax  the intensity that is encoded as the maximum value
+     * @return the intensity
+     */
+    public static float dequantise(short value, float quantisationMax)
+    {
+        return (value & 0xFFFF) * quantisationMax / 65535;
+    }
+
+    /**
+     * Rounds a size up to a multiple of 8 bytes.
+     *
+     * @param size  the size
+     * @return the padded size
+     */
+    static int pad(int size)
+    {
+        return (size + 7) & ~7;
+    }
+}
@@ -0,0 +1,1219 @@
+package output;
+
+import analyser.Channel;
+import analyser.SpectrumInfo;
+import analyser.SpectrumShaper;
+import analyser.SpectrumStore;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reader for the spectrum files written by {@link FileSpectrumOutputModule}.
+ * <p>
+ * The file is memory-mapped. The frames of a binary file (see {@link SpectrumFileFormat})
+ * are views of the mapped file: {@link #getFrame(int)} does not copy or parse anything,
+ * the values are read from the file when they are accessed. Frames are found by their
+ * position in O(1), and by their time through the time index of the file.
+ * <p>
+ * Of a compressed archive (see {@link SpectrumArchiveFormat}), the block that contains
+ * a frame is decompressed when the values of the frame are accessed. The most recently
+ * decompressed block is kept, so reading the frames in order decompresses each block once.
+ * The block of a position is known, the block of a time is found through the block index.
+ * <p>
+ * Text files are mapped as well, but only the start of each line is determined
+ * when the file is opened. The line of a frame is parsed when its values are accessed.
+ * Text files do not contain the sample rate, hop size, shaper and features,
+ * and they can not be larger than 2 GB.
+ * <p>
+ * The frames of binary files can be read by several threads at the same time.
+ * Frames of text files and archives can be read by several threads as well,
+ * but the threads share the parsed line or decompressed block.
+ * Spectrum files do not contain the channel of the intensities,
+ * they are returned as the {@link Channel#LEFT} channel.
+ *
+ * @author  Stefan Marks
+ * @version 1.0 - 17.10.2026: Created
+ */
+public class SpectrumFileReader implements Closeable
+{
+    /**
+     * Opens a binary, archive or text spectrum file.
+     *
+     * @param file  the file to open
+     * @return the reader
+     * @throws IOException if the file can not be read or has an unknown format
+     */
+    public static SpectrumFileReader open(File file) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try
+        {
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(magic, 0);
+            int type = (magic.position() == 4) ? magic.getInt(0) : 0;
+            SpectrumFileReader reader = new SpectrumFileReader(file);
+            if ( type == SpectrumFileFormat.MAGIC )
+            {
+                reader.openBinary(channel);
+            }
+            else if ( type == SpectrumArchiveFormat.MAGIC )
+            {
+                reader.openArchive(channel);
+            }
+            else
+            {
+                reader.openText(channel);
+            }
+            return reader;
+        }
+        finally
+        {
+            // the mappings stay valid when the channel is closed
+            channel.close();
+        }
+    }
+
+    private SpectrumFileReader(File file)
+    {
+        this.file   = file;
+        sampleRate  = 0;
+        hopSize     = 0;
+        shaperName  = null;
+        encoding    = null;
+        index       = new long[0];
+        featureWords = 1;
+    }
+
+    /**
+     * Reads the header, trailer and index of a binary file and maps the frames.
+     *
+     * @param channel  the file channel
+     * @throws IOException if the file can not be read
+     */
+    private void openBinary(FileChannel channel) throws IOException
+    {
+        ByteBuffer fixed = readHeader(channel);
+        int version  = fixed.getShort(4) & 0xFFFF;
+        encoding     = SpectrumFileFormat.Encoding.fromCode(fixed.getShort(6) & 0xFFFF);
+        if ( (version != SpectrumFileFormat.VERSION) || (encoding == null) )
+        {
+            throw new IOException("Unsupported spectrum file version " + version + " in " + file);
+        }
+        int headerSize  = fixed.getInt(8);
+        frameSize       = fixed.getInt(12);
+        quantisationMax = fixed.getFloat(32);
+
+        // the trailer is missing if the file was not closed properly
+        long size     = channel.size();
+        long frameEnd = size;
+        frameCount    = -1;
+        if ( size >= headerSize + SpectrumFileFormat.TRAILER_SIZE )
+        {
+            ByteBuffer trailer = read(channel, size - SpectrumFileFormat.TRAILER_SIZE, SpectrumFileFormat.TRAILER_SIZE);
+            long indexOffset = trailer.getLong(0);
+            int  indexCount  = trailer.getInt(20);
+            if ( (trailer.getInt(24) == SpectrumFileFormat.TRAILER_MAGIC) &&
+                 (indexOffset + indexCount * 8L + SpectrumFileFormat.TRAILER_SIZE == size) )
+            {
+                frameCount    = (int) trailer.getLong(8);
+                indexInterval = trailer.getInt(16);
+                indexStart    = trailer.getInt(28);
+                ByteBuffer entries = read(channel, indexOffset, indexCount * 8);
+                index = new long[indexCount];
+                for ( int i = 0 ; i < indexCount ; i++ )
+                {
+                    index[i] = entries.getLong(i * 8);
+                }
+                frameEnd = indexOffset;
+            }
+        }
+        if ( frameCount < 0 )
+        {
+            frameCount = (int) Math.min(Integer.MAX_VALUE, (frameEnd - headerSize) / frameSize);
+        }
+
+        // map the frames in regions of whole frames, a mapping is limited to 2 GB
+        framesPerRegion = Math.max(1, (1 << 30) / frameSize);
+        int regionCount = (frameCount + framesPerRegion - 1) / framesPerRegion;
+        regions = new ByteBuffer[regionCount];
+        for ( int r = 0 ; r < regionCount ; r++ )
+        {
+            long start  = headerSize + (long) r * framesPerRegion * frameSize;
+            int  frames = Math.min(framesPerRegion, frameCount - r * framesPerRegion);
+            regions[r]  = channel.map(FileChannel.MapMode.READ_ONLY, start, (long) frames * frameSize)
+                                 .order(ByteOrder.LITTLE_ENDIAN);
+        }
+        store = new BinaryFrameStore();
+    }
+
+    /**
+     * Reads the header, trailer and block index of an archive and maps the blocks.
+     * Without a valid trailer, the blocks are found through their headers.
+     *
+     * @param channel  the file channel
+     * @throws IOException if the file can not be read
+     */
+    private void openArchive(FileChannel channel) throws IOException
+    {
+        ByteBuffer fixed = readHeader(channel);
+        int version = fixed.getShort(4) & 0xFFFF;
+        if ( version != SpectrumArchiveFormat.VERSION )
+        {
+            throw new IOException("Unsupported spectrum archive version " + version + " in " + file);
+        }
+        int headerSize = fixed.getInt(8);
+        blockFrames    = fixed.getInt(12);
+        precision      = fixed.getFloat(32);
+        archive        = true;
+
+        // offsets of the blocks and of the end of the last block
+        long   size       = channel.size();
+        long[] offsets    = null;
+        int    blockCount = 0;
+        frameCount        = -1;
+        if ( size >= headerSize + SpectrumFileFormat.TRAILER_SIZE )
+        {
+            ByteBuffer trailer = read(channel, size - SpectrumFileFormat.TRAILER_SIZE, SpectrumFileFormat.TRAILER_SIZE);
+            long indexOffset = trailer.getLong(0);
+            blockCount       = trailer.getInt(20);
+            if ( (trailer.getInt(24) == SpectrumFileFormat.TRAILER_MAGIC) && (trailer.getInt(16) == blockFrames) &&
+                 (indexOffset + (long) blockCount * SpectrumArchiveFormat.INDEX_ENTRY_SIZE
+                              + SpectrumFileFormat.TRAILER_SIZE == size) )
+            {
+                frameCount     = (int) trailer.getLong(8);
+                offsets        = new long[blockCount + 1];
+                blockLastTimes = new int[blockCount];
+                ByteBuffer entries = read(channel, indexOffset, blockCount * SpectrumArchiveFormat.INDEX_ENTRY_SIZE);
+                for ( int i = 0 ; i < blockCount ; i++ )
+                {
+                    offsets[i]        = entries.getLong(i * SpectrumArchiveFormat.INDEX_ENTRY_SIZE);
+                    blockLastTimes[i] = entries.getInt(i * SpectrumArchiveFormat.INDEX_ENTRY_SIZE + 20);
+                }
+                offsets[blockCount] = indexOffset;
+            }
+        }
+        if ( frameCount < 0 )
+        {
+            // find the complete blocks through their headers
+            offsets        = new long[64];
+            blockLastTimes = new int[64];
+            blockCount     = 0;
+            frameCount     = 0;
+            long offset    = headerSize;
+            while ( offset + SpectrumArchiveFormat.BLOCK_HEADER_SIZE <= size )
+            {
+                ByteBuffer block = read(channel, offset, SpectrumArchiveFormat.BLOCK_HEADER_SIZE);
+                long end = offset + SpectrumArchiveFormat.BLOCK_HEADER_SIZE + (block.getInt(28) & 0xFFFFFFFFL);
+                if ( (block.getInt(0) != SpectrumArchiveFormat.BLOCK_MAGIC) || (end > size) ) break;
+                if ( blockCount + 1 >= offsets.length )
+                {
+                    offsets        = Arrays.copyOf(offsets, offsets.length * 2);
+                    blockLastTimes = Arrays.copyOf(blockLastTimes, offsets.length);
+                }
+                offsets[blockCount]        = offset;
+                blockLastTimes[blockCount] = block.getInt(20);
+                frameCount += block.getInt(4);
+                blockCount++;
+                offset = end;
+            }
+            offsets[blockCount] = offset;
+            blockLastTimes = Arrays.copyOf(blockLastTimes, blockCount);
+        }
+
+        // map the blocks in regions of whole blocks, a mapping is limited to 2 GB
+        List<ByteBuffer> mapped = new ArrayList<ByteBuffer>();
+        blockRegions = new int[blockCount];
+        blockStarts  = new int[blockCount];
+        int first = 0;
+        while ( first < blockCount )
+        {
+            int last = first + 1;
+            while ( (last < blockCount) && (offsets[last + 1] - offsets[first] <= (1 << 30)) )
+            {
+                last++;
+            }
+            for ( int i = first ; i < last ; i++ )
+            {
+                blockRegions[i] = mapped.size();
+                blockStarts[i]  = (int) (offsets[i] - offsets[first]);
+            }
+            mapped.add(channel.map(FileChannel.MapMode.READ_ONLY, offsets[first], offsets[last] - offsets[first])
+                              .order(ByteOrder.LITTLE_ENDIAN));
+            first = last;
+        }
+        regions = mapped.toArray(new ByteBuffer[mapped.size()]);
+        store   = new ArchiveFrameStore();
+    }
+
+    /**
+     * Reads the part of the header that binary files and archives have in common:
+     * sample rate, hop size, bands, feature words, centre frequencies and shaper name.
+     *
+     * @param channel  the file channel
+     * @return the fixed part of the header with the format specific fields
+     * @throws IOException if the file can not be read
+     */
+    private ByteBuffer readHeader(FileChannel channel) throws IOException
+    {
+        ByteBuffer fixed = read(channel, 0, 40);
+        sampleRate     = fixed.getFloat(16);
+        hopSize        = fixed.getInt(20);
+        bands          = fixed.getInt(24);
+        featureWords   = fixed.getInt(28);
+        int nameLength = fixed.getInt(36);
+
+        ByteBuffer header = read(channel, 40, bands * 4 + nameLength);
+        frequencies = new float[bands];
+        for ( int i = 0 ; i < bands ; i++ )
+        {
+            frequencies[i] = header.getFloat(i * 4);
+        }
+        byte[] name = new byte[nameLength];
+        header.position(bands * 4);
+        header.get(name);
+        shaperName = new String(name, StandardCharsets.UTF_8);
+        return fixed;
+    }
+
+    /**
+     * Maps a text file and finds the start of each line.
+     *
+     * @param channel  the file channel
+     * @throws IOException if the file can not be read
+     */
+    private void openText(FileChannel channel) throws IOException
+    {
+        long size = channel.size();
+        if ( size > Integer.MAX_VALUE )
+        {
+            throw new IOException("Text spectrum file " + file + " is larger than 2 GB, use the binary format");
+        }
+        ByteBuffer text = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+        // header: "time" and the centre frequencies of the bands ("11Hz")
+        int headerEnd = lineEnd(text, 0);
+        String[] columns = new String(bytes(text, 0, headerEnd), StandardCharsets.US_ASCII).trim().split("\t");
+        if ( (columns.length < 1) || !columns[0].equals("time") )
+        {
+            throw new IOException("Unknown spectrum file format in " + file);
+        }
+        bands       = columns.length - 1;
+        frequencies = new float[bands];
+        for ( int i = 0 ; i < bands ; i++ )
+        {
+            frequencies[i] = Float.parseFloat(columns[i + 1].replace("Hz", ""));
+        }
+
+        long[] starts = new long[1024];
+        int    count  = 0;
+        int    pos    = headerEnd;
+        while ( pos < size )
+        {
+            pos = skipLineBreak(text, pos);
+            if ( pos >= size ) break;
+            if ( count == starts.length )
+            {
+                starts = Arrays.copyOf(starts, count * 2);
+            }
+            starts[count++] = pos;
+            pos = lineEnd(text, pos);
+        }
+        lineStarts = Arrays.copyOf(starts, count);
+        frameCount = count;
+        regions    = new ByteBuffer[] { text };
+        store      = new TextFrameStore();
+    }
+
+    /**
+     * Gets the file.
+     *
+     * @return the file
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Checks if the file is a binary spectrum file or archive.
+     *
+     * @return <code>true</code> if the file is binary,
+     *         <code>false</code> if it is a text file
+     */
+    public boolean isBinary()
+    {
+        return (encoding != null) || archive;
+    }
+
+    /**
+     * Checks if the file is a compressed archive.
+     *
+     * @return <code>true</code> if the file is an archive
+     */
+    public boolean isArchive()
+    {
+        return archive;
+    }
+
+    /**
+     * Gets the encoding of the intensities of a binary file.
+     *
+     * @return the encoding or <code>null</code> for a text file or archive
+     */
+    public SpectrumFileFormat.Encoding getEncoding()
+    {
+        return encoding;
+    }
+
+    /**
+     * Gets the sample rate of the analysed stream.
+     *
+     * @return the sample rate in Hz or 0 if the file does not contain it
+     */
+    public float getSampleRate()
+    {
+        return sampleRate;
+    }
+
+    /**
+     * Gets the number of samples per analysis step.
+     *
+     * @return the hop size or 0 if the file does not contain it
+     */
+    public int getHopSize()
+    {
+        return hopSize;
+    }
+
+    /**
+     * Gets the time between two frames according to the header of the file.
+     *
+     * @return the hop period in ms or 0 if the file does not contain it
+     */
+    public double getHopPeriod()
+    {
+        return (sampleRate > 0) ? hopSize * 1000.0 / sampleRate : 0;
+    }
+
+    /**
+     * Gets the name of the spectrum shaper of the intensities.
+     *
+     * @return the name of the shaper (see {@link SpectrumShaper#getName()})
+     *         or <code>null</code> if the file does not contain it
+     */
+    public String getShaperName()
+    {
+        return shaperName;
+    }
+
+    /**
+     * Gets the number of bands per frame.
+     *
+     * @return the number of bands
+     */
+    public int getBandCount()
+    {
+        return bands;
+    }
+
+    /**
+     * Gets the centre frequencies of the bands.
+     *
+     * @return the centre frequencies in Hz
+     */
+    public float[] getCentreFrequencies()
+    {
+        return frequencies.clone();
+    }
+
+    /**
+     * Gets the number of 64 bit words with feature bits per frame.
+     *
+     * @return the number of feature words
+     */
+    public int getFeatureWordCount()
+    {
+        return featureWords;
+    }
+
+    /**
+     * Gets the quantisation step of the intensities of an archive.
+     *
+     * @return the precision or 0 if the file is not an archive
+     */
+    public float getPrecision()
+    {
+        return precision;
+    }
+
+    /**
+     * Gets the number of compressed blocks of an archive.
+     *
+     * @return the number of blocks or 0 if the file is not an archive
+     */
+    public int getBlockCount()
+    {
+        return archive ? blockLastTimes.length : 0;
+    }
+
+    /**
+     * Gets the number of frames per block of an archive.
+     * All blocks except the last one contain this number of frames.
+     *
+     * @return the number of frames per block or 0 if the file is not an archive
+     */
+    public int getBlockFrames()
+    {
+        return blockFrames;
+    }
+
+    /**
+     * Gets the number of frames in the file.
+     *
+     * @return the number of frames
+     */
+    public int getFrameCount()
+    {
+        return frameCount;
+    }
+
+    /**
+     * Gets a store with all frames of the file, the slot index is the position of the frame.
+     * The store is read-only.
+     *
+     * @return the store
+     */
+    public SpectrumStore getStore()
+    {
+        return store;
+    }
+
+    /**
+     * Gets a view of a frame.
+     *
+     * @param position  the position of the frame in the file (0...{@link #getFrameCount()}-1)
+     * @return the spectrum information of the frame
+     */
+    public SpectrumInfo getFrame(int position)
+    {
+        checkPosition(position);
+        return new SpectrumInfo(store, position);
+    }
+
+    /**
+     * Gets the time of a frame.
+     *
+     * @param position  the position of the frame in the file
+     * @return the time of the frame in ms
+     */
+    public int getTime(int position)
+    {
+        checkPosition(position);
+        return store.getSampleIdx(position);
+    }
+
+    /**
+     * Finds the first frame at or after a time.
+     * With the time index of a binary file, this only looks at the frames
+     * of one index interval, with the block index of an archive, only the frames
+     * of one block are searched, otherwise, the times of all frames are searched.
+     *
+     * @param time  the time in ms
+     * @return the position of the frame or {@link #getFrameCount()} if all frames are earlier
+     */
+    public int findFrame(int time)
+    {
+        int from = 0;
+        int to   = frameCount;
+        if ( index.length > 0 )
+        {
+            int entry = Math.max(0, Math.floorDiv(time - indexStart, indexInterval));
+            if ( entry >= index.length ) return frameCount;
+            from = (int) index[entry];
+            // all frames of this interval come before the next entry
+            to   = (entry + 1 < index.length) ? (int) index[entry + 1] : frameCount;
+            while ( (from < to) && (store.getSampleIdx(from) < time) )
+            {
+                from++;
+            }
+            return from;
+        }
+        if ( archive )
+        {
+            // the first block that ends at or after the time
+            int block = Arrays.binarySearch(blockLastTimes, time);
+            if ( block < 0 ) block = -block - 1;
+            while ( (block > 0) && (blockLastTimes[block - 1] == time) )
+            {
+                block--;
+            }
+            if ( block >= blockLastTimes.length ) return frameCount;
+            from = block * blockFrames;
+            to   = Math.min(from + blockFrames, frameCount);
+        }
+        // binary search, the times increase with the frames
+        while ( from < to )
+        {
+            int mid = (from + to) >>> 1;
+            if ( store.getSampleIdx(mid) < time )
+            {
+                from = mid + 1;
+            }
+            else
+            {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Releases the mapped file.
+     * The mapping itself is released by the garbage collector,
+     * frames must not be accessed any more.
+     */
+    @Override
+    public void close()
+    {
+        regions = new ByteBuffer[0];
+        if ( store instanceof ArchiveFrameStore )
+        {
+            ((ArchiveFrameStore) store).release();
+        }
+    }
+
+    private void checkPosition(int position)
+    {
+        if ( (position < 0) || (position >= frameCount) )
+        {
+            throw new IndexOutOfBoundsException("Frame " + position + " of " + frameCount);
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while ( buffer.hasRemaining() )
+        {
+            if ( channel.read(buffer, position + buffer.position()) < 0 )
+            {
+                throw new IOException("Unexpected end of spectrum file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int lineEnd(ByteBuffer text, int pos)
+    {
+        int end = text.limit();
+        while ( (pos < end) && (text.get(pos) != '\n') && (text.get(pos) != '\r') )
+        {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipLineBreak(ByteBuffer text, int pos)
+    {
+        int end = text.limit();
+        while ( (pos < end) && ((text.get(pos) == '\n') || (text.get(pos) == '\r')) )
+        {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static byte[] bytes(ByteBuffer text, int from, int to)
+    {
+        byte[] result = new byte[to - from];
+        for ( int i = 0 ; i < result.length ; i++ )
+        {
+            result[i] = text.get(from + i);
+        }
+        return result;
+    }
+
+    /**
+     * Read-only store with the frames of a binary file.
+     * All values are read from the mapped file when they are accessed.
+     */
+    private class BinaryFrameStore extends SpectrumStore
+    {
+        BinaryFrameStore()
+        {
+            super(1, Layout.TIME_MAJOR, true);
+            valueOffset = SpectrumFileFormat.FRAME_PREFIX_SIZE + featureWords * 8;
+        }
+
+        private ByteBuffer region(int slot)
+        {
+            return regions[slot / framesPerRegion];
+        }
+
+        private int offset(int slot)
+        {
+            return (slot % framesPerRegion) * frameSize;
+        }
+
+        private float value(ByteBuffer region, int offset, int band)
+        {
+            if ( encoding == SpectrumFileFormat.Encoding.FLOAT32 )
+            {
+                return region.getFloat(offset + valueOffset + band * 4);
+            }
+            return SpectrumFileFormat.dequantise(region.getShort(offset + valueOffset + band * 2), quantisationMax);
+        }
+
+        @Override
+        public int getSlotCount()
+        {
+            return frameCount;
+        }
+
+        @Override
+        public int getBandCount()
+        {
+            return bands;
+        }
+
+        @Override
+        public int getBinCount()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getFrame(int slot)
+        {
+            return region(slot).getLong(offset(slot));
+        }
+
+        @Override
+        public int getSampleIdx(int slot)
+        {
+            return region(slot).getInt(offset(slot) + 8);
+        }
+
+        @Override
+        public float getPosition(int slot)
+        {
+            return region(slot).getFloat(offset(slot) + 12);
+        }
+
+        @Override
+        public int getFeatureWordCount()
+        {
+            return Math.max(1, featureWords);
+        }
+
+        @Override
+        public long getFeatures(int slot)
+        {
+            return getFeatureWord(slot, 0);
+        }
+
+        @Override
+        public long getFeatureWord(int slot, int word)
+        {
+            return ((word >= 0) && (word < featureWords))
+                   ? region(slot).getLong(offset(slot) + SpectrumFileFormat.FRAME_PREFIX_SIZE + word * 8) : 0;
+        }
+
+        @Override
+        public boolean hasChannel(int slot, Channel channel)
+        {
+            return channel == Channel.LEFT;
+        }
+
+        @Override
+        public Channel getPrimaryChannel(int slot)
+        {
+            return Channel.LEFT;
+        }
+
+        @Override
+        public SpectrumShaper getRawShaper(int slot)
+        {
+            return null;
+        }
+
+        @Override
+        public float getIntensity(Channel channel, int slot, int band)
+        {
+            return (channel == Channel.LEFT) ? value(region(slot), offset(slot), band) : 0;
+        }
+
+        @Override
+        public void getIntensities(Channel channel, int slot, float[] target)
+        {
+            ByteBuffer region = region(slot);
+            int        offset = offset(slot);
+            for ( int band = 0 ; band < bands ; band++ )
+            {
+                target[band] = (channel == Channel.LEFT) ? value(region, offset, band) : 0;
+            }
+        }
+
+        @Override
+        public void getBandHistory(Channel channel, int band, int fromSlot, int count, float[] target, int offset)
+        {
+            for ( int i = 0 ; i < count ; i++ )
+            {
+                target[offset + i] = getIntensity(channel, fromSlot + i, band);
+            }
+        }
+
+        @Override
+        public float getIntensityRaw(Channel channel, int slot, int bin)
+        {
+            return 0;
+        }
+
+        @Override
+        public void getIntensitiesRaw(Channel channel, int slot, int fromBin, int count, float[] target)
+        {
+            Arrays.fill(target, 0, count, 0);
+        }
+
+        // offset of the intensities in a frame
+        private final int valueOffset;
+    }
+
+    /**
+     * Read-only store with the frames of a text file.
+     * The line of a frame is parsed when its values are accessed,
+     * the most recently parsed line is kept.
+     */
+    private class TextFrameStore extends SpectrumStore
+    {
+        TextFrameStore()
+        {
+            super(1, Layout.TIME_MAJOR, false);
+            values     = new float[bands];
+            parsedSlot = -1;
+        }
+
+        /**
+         * Parses the line of a frame, if it is not the most recently parsed one.
+         *
+         * @param slot  the position of the frame
+         */
+        private void parse(int slot)
+        {
+            if ( slot == parsedSlot ) return;
+            ByteBuffer text = regions[0];
+            int pos = (int) lineStarts[slot];
+            int end = lineEnd(text, pos);
+            int column = 0;
+            while ( pos <= end )
+            {
+                int next = pos;
+                while ( (next < end) && (text.get(next) != '\t') )
+                {
+                    next++;
+                }
+                float value = parseFloat(text, pos, next);
+                if ( column == 0 )
+                {
+                    time = Math.round(value * 1000);
+                }
+                else if ( column <= bands )
+                {
+                    values[column - 1] = value;
+                }
+                column++;
+                pos = next + 1;
+            }
+            Arrays.fill(values, Math.max(0, Math.min(bands, column - 1)), bands, 0);
+            parsedSlot = slot;
+        }
+
+        @Override
+        public int getSlotCount()
+        {
+            return frameCount;
+        }
+
+        @Override
+        public int getBandCount()
+        {
+            return bands;
+        }
+
+        @Override
+        public int getBinCount()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getFrame(int slot)
+        {
+            return slot;
+        }
+
+        @Override
+        public synchronized int getSampleIdx(int slot)
+        {
+            parse(slot);
+            return time;
+        }
+
+        @Override
+        public float getPosition(int slot)
+        {
+            return (frameCount > 1) ? (float) slot / (frameCount - 1) : 0;
+        }
+
+        @Override
+        public int getFeatureWordCount()
+        {
+            return 1;
+        }
+
+        @Override
+        public long getFeatures(int slot)
+        {
+            return 0;
+        }
+
+        @Override
+        public long getFeatureWord(int slot, int word)
+        {
+            return 0;
+        }
+
+        @Override
+        public boolean hasChannel(int slot, Channel channel)
+        {
+            return channel == Channel.LEFT;
+        }
+
+        @Override
+        public Channel getPrimaryChannel(int slot)
+        {
+            return Channel.LEFT;
+        }
+
+        @Override
+        public SpectrumShaper getRawShaper(int slot)
+        {
+            return null;
+        }
+
+        @Override
+        public synchronized float getIntensity(Channel channel, int slot, int band)
+        {
+            if ( channel != Channel.LEFT ) return 0;
+            parse(slot);
+            return values[band];
+        }
+
+        @Override
+        public synchronized void getIntensities(Channel channel, int slot, float[] target)
+        {
+            parse(slot);
+            for ( int band = 0 ; band < bands ; band++ )
+            {
+                target[band] = (channel == Channel.LEFT) ? values[band] : 0;
+            }
+        }
+
+        @Override
+        public void getBandHistory(Channel channel, int band, int fromSlot, int count, float[] target, int offset)
+        {
+            for ( int i = 0 ; i < count ; i++ )
+            {
+                target[offset + i] = getIntensity(channel, fromSlot + i, band);
+            }
+        }
+
+        @Override
+        public float getIntensityRaw(Channel channel, int slot, int bin)
+        {
+            return 0;
+        }
+
+        @Override
+        public void getIntensitiesRaw(Channel channel, int slot, int fromBin, int count, float[] target)
+        {
+            Arrays.fill(target, 0, count, 0);
+        }
+
+        // values of the most recently parsed line
+        private final float[] values;
+        private int           time;
+        private int           parsedSlot;
+    }
+
+    /**
+     * Read-only store with the frames of an archive.
+     * The block of a frame is decompressed when its values are accessed,
+     * the most recently decompressed block is kept.
+     */
+    private class ArchiveFrameStore extends SpectrumStore
+    {
+        ArchiveFrameStore()
+        {
+            super(1, Layout.TIME_MAJOR, false);
+            block        = new ArchiveBlock(blockFrames, bands, featureWords);
+            encoded      = new byte[block.getMaxEncodedSize()];
+            compressed   = new byte[0];
+            inflater     = new Inflater();
+            decodedBlock = -1;
+        }
+
+        /**
+         * Decompresses the block of a frame, if it is not the most recently decompressed one.
+         *
+         * @param slot  the position of the frame
+         * @return the index of the frame in the block
+         */
+        private int decode(int slot)
+        {
+            int blockIdx = slot / blockFrames;
+            if ( blockIdx != decodedBlock )
+            {
+                ByteBuffer region = regions[blockRegions[blockIdx]];
+                int offset = blockStarts[blockIdx];
+                int frames = region.getInt(offset + 4);
+                int size   = region.getInt(offset + 24);
+                int length = region.getInt(offset + 28);
+                if ( compressed.length < length )
+                {
+                    compressed = new byte[length];
+                }
+                ByteBuffer data = region.duplicate();
+                data.position(offset + SpectrumArchiveFormat.BLOCK_HEADER_SIZE);
+                data.get(compressed, 0, length);
+                inflater.reset();
+                inflater.setInput(compressed, 0, length);
+                try
+                {
+                    if ( (size > encoded.length) || (inflater.inflate(encoded, 0, size) != size) )
+                    {
+                        throw new DataFormatException("size mismatch");
+                    }
+                    block.decode(encoded, frames);
+                }
+                catch ( DataFormatException | IllegalArgumentException e )
+                {
+                    decodedBlock = -1;
+                    throw new IllegalStateException("Corrupt block " + blockIdx + " in " + file, e);
+                }
+                decodedBlock = blockIdx;
+            }
+            return slot - blockIdx * blockFrames;
+        }
+
+        /**
+         * Releases the decompressor.
+         */
+        synchronized void release()
+        {
+            inflater.end();
+            decodedBlock = -1;
+        }
+
+        @Override
+        public int getSlotCount()
+        {
+            return frameCount;
+        }
+
+        @Override
+        public int getBandCount()
+        {
+            return bands;
+        }
+
+        @Override
+        public int getBinCount()
+        {
+            return 0;
+        }
+
+        @Override
+        public synchronized long getFrame(int slot)
+        {
+            return block.getFrame(decode(slot));
+        }
+
+        @Override
+        public synchronized int getSampleIdx(int slot)
+        {
+            return block.getTime(decode(slot));
+        }
+
+        @Override
+        public synchronized float getPosition(int slot)
+        {
+            return block.getPosition(decode(slot));
+        }
+
+        @Override
+        public int getFeatureWordCount()
+        {
+            return Math.max(1, featureWords);
+        }
+
+        @Override
+        public long getFeatures(int slot)
+        {
+            return getFeatureWord(slot, 0);
+        }
+
+        @Override
+        public synchronized long getFeatureWord(int slot, int word)
+        {
+            return block.getFeatureWord(decode(slot), word);
+        }
+
+        @Override
+        public boolean hasChannel(int slot, Channel channel)
+        {
+            return channel == Channel.LEFT;
+        }
+
+        @Override
+        public Channel getPrimaryChannel(int slot)
+        {
+            return Channel.LEFT;
+        }
+
+        @Override
+        public SpectrumShaper getRawShaper(int slot)
+        {
+            return null;
+        }
+
+        @Override
+        public synchronized float getIntensity(Channel channel, int slot, int band)
+        {
+            if ( channel != Channel.LEFT ) return 0;
+            return block.getIntensity(decode(slot), band, precision);
+        }
+
+        @Override
+        public synchronized void getIntensities(Channel channel, int slot, float[] target)
+        {
+            int i = decode(slot);
+            for ( int band = 0 ; band < bands ; band++ )
+            {
+                target[band] = (channel == Channel.LEFT) ? block.getIntensity(i, band, precision) : 0;
+            }
+        }
+
+        @Override
+        public void getBandHistory(Channel channel, int band, int fromSlot, int count, float[] target, int offset)
+        {
+            for ( int i = 0 ; i < count ; i++ )
+            {
+                target[offset + i] = getIntensity(channel, fromSlot + i, band);
+            }
+        }
+
+        @Override
+        public float getIntensityRaw(Channel channel, int slot, int bin)
+        {
+            return 0;
+        }
+
+        @Override
+        public void getIntensitiesRaw(Channel channel, int slot, int fromBin, int count, float[] target)
+        {
+            Arrays.fill(target, 0, count, 0);
+        }
+
+        // the most recently decompressed block
+        private final ArchiveBlock block;
+        private final byte[]       encoded;
+        private byte[]             compressed;
+        private final Inflater     inflater;
+        private int                decodedBlock;
+    }
+
+    /**
+     * Parses a decimal number written by {@link FixedPointFormat} without creating a string.
+     * Other notations are passed to {@link Float#parseFloat(String)}.
+     *
+     * @param text  the text
+     * @param from  the index of the first character
+     * @param to    the index after the last character
+     * @return the value
+     */
+    static float parseFloat(ByteBuffer text, int from, int to)
+    {
+        boolean negative = (from < to) && (text.get(from) == '-');
+        int     pos      = negative ? from + 1 : from;
+        long    digits   = 0;
+        int     decimals = -1;
+        int     count    = 0;
+        for ( ; pos < to ; pos++ )
+        {
+            byte c = text.get(pos);
+            if ( (c >= '0') && (c <= '9') && (count < 18) )
+            {
+                digits = digits * 10 + (c - '0');
+                count++;
+                if ( decimals >= 0 ) decimals++;
+            }
+            else if ( (c == '.') && (decimals < 0) )
+            {
+                decimals = 0;
+            }
+            else
+            {
+                // NaN, Infinity, exponents, too many digits
+                return Float.parseFloat(new String(bytes(text, from, to), StandardCharsets.US_ASCII).trim());
+            }
+        }
+        if ( count == 0 ) return 0;
+        // dividing the exact integer by an exact power of ten rounds only once
+        double value = (decimals > 0) ? digits / POWERS_OF_TEN[decimals] : digits;
+        return (float) (negative ? -value : value);
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    private final File                          file;
+    private SpectrumFileFormat.Encoding         encoding;
+    private float                               sampleRate;
+    private int                                 hopSize;
+    private String                              shaperName;
+    private int                                 bands;
+    private float[]                             frequencies;
+    private int                                 featureWords;
+    private float                               quantisationMax;
+    private int                                 frameCount;
+    private int                                 frameSize;
+    // mapped frames of a binary file, or the whole text file
+    private volatile ByteBuffer[]               regions;
+    private int                                 framesPerRegion;
+    // time index of a binary file: first frame of each interval
+    private long[]                              index;
+    private int                                 indexInterval, indexStart;
+    // start of each frame line of a text file
+    private long[]                              lineStarts;
+    // archive: quantisation step, blocks with their region, offset in the region and last time
+    private boolean                             archive;
+    private float                               precision;
+    private int                                 blockFrames;
+    private int[]                               blockRegions, blockStarts;
+    private int[]                               blockLastTimes;
+    private SpectrumStore                       store;
+}